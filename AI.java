@@ -1,12 +1,14 @@
 package tablut;
 
 
-import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import static java.lang.Math.*;
 
 import static tablut.Square.sq;
 import static tablut.Piece.*;
+import static tablut.Utils.flightRecording;
 
 /** A Player that automatically generates moves.
  *  @author Dhruv Krishnaswamy
@@ -27,6 +29,23 @@ class AI extends Player {
      * A magnitude greater than a normal value.
      */
     private static final int INFTY = Integer.MAX_VALUE;
+    /**
+     * The default search depth.
+     */
+    static final int DEFAULT_DEPTH = 1;
+    /**
+     * Searches check for interruption once every INTERRUPT_CHECK_MASK + 1
+     * positions.
+     */
+    private static final long INTERRUPT_CHECK_MASK = 1023;
+    /**
+     * Under a move limit, the number of moves left below which positions
+     * are scored increasingly in favor of the side that wins at the
+     * limit, and the amount by which each fewer move left increases the
+     * score.  The game goes to the side that made the last move allowed
+     * (see Board.makeMove), so time is on that side.
+     */
+    private static final int LIMIT_HORIZON = 20, LIMIT_PRESSURE = 10;
 
     /**
      * A new AI with no piece or controller (intended to produce
@@ -36,23 +55,47 @@ class AI extends Player {
         this(null, null);
     }
 
+    /**
+     * A new AI template that searches to DEPTH.
+     */
+    AI(int depth) {
+        this(null, null, depth);
+    }
 
     /**
      * A new AI playing PIECE under control of CONTROLLER.
      */
     AI(Piece piece, Controller controller) {
+        this(piece, controller, DEFAULT_DEPTH);
+    }
+
+    /**
+     * A new AI playing PIECE under control of CONTROLLER that searches
+     * to DEPTH.
+     */
+    AI(Piece piece, Controller controller, int depth) {
         super(piece, controller);
+        _depth = Math.max(1, depth);
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        AI result = new AI(piece, controller, _depth);
+        result._useNetwork = _useNetwork;
+        return result;
     }
 
     @Override
     String myMove() {
-        return "";
-
+        TaflBoard tafl = _controller.taflBoard();
+        String move;
+        if (tafl != null) {
+            move = tafl.geometry().moveName(findMove(tafl.copy()));
+        } else {
+            move = findMove().toString();
+        }
+        _controller.reportMove(move);
+        return move;
     }
 
     @Override
@@ -60,22 +103,168 @@ class AI extends Player {
         return false;
     }
 
+    @Override
+    void setDeadline(long deadline) {
+        _deadline = deadline;
+    }
+
     /**
      * Return a move for me from the current position, assuming there
-     * is a move.
+     * is a move.  With a deadline (see setDeadline), searches to
+     * successively greater depths until it passes, keeping the move of
+     * the deepest search completed; the search to depth 1 always
+     * completes.
      */
     private Move findMove() {
-        Board b = new Board();
+        Board b = new Board(board());
+        SearchProgress progress = _progress;
+        long deadline = _deadline;
+        _deadline = 0;
+        _stats.beginMove();
+        Move best = null;
+        if (progress == null && deadline == 0) {
+            best = bestMove(b, maxDepth(b));
+        } else {
+            for (int depth = 1; depth <= maxDepth(b); depth += 1) {
+                try {
+                    best = bestMove(b, depth, depth == 1 ? 0 : deadline);
+                } catch (CancellationException excp) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw excp;
+                    }
+                    break;
+                }
+                if (progress != null) {
+                    progress.progress(depth, best, _lastValue, _nodes);
+                }
+            }
+        }
+        _stats.endMove();
+        return best;
+    }
 
+    /**
+     * Return a move for me on BOARD, a board of any size, assuming there
+     * is one, searching as for findMove() with the same evaluation
+     * (see Evaluation.score(TaflBoard)).  Moves are as for Geometry.
+     */
+    private int findMove(TaflBoard board) {
+        long deadline = _deadline;
+        _deadline = 0;
+        _stats.beginMove();
+        int depth = Math.max(1, Math.min(_depth - _reduction,
+                                         board.movesLeft()));
+        int[][] buffers = new int[depth][board.maxMoves()];
+        int best = -1;
+        for (int d = deadline == 0 ? depth : 1; d <= depth; d += 1) {
+            long nodes = _nodes, cutoffs = _cutoffs,
+                firstCutoffs = _firstCutoffs;
+            SearchEvent event =
+                flightRecording() ? new SearchEvent() : null;
+            if (event != null) {
+                event.begin();
+            }
+            _searchDeadline = d == 1 ? 0 : deadline;
+            try {
+                _lastValue = findMove(board, d, buffers, true,
+                                      board.turn() == TaflBoard.WHITE_SIDE
+                                      ? 1 : -1, -INFTY, INFTY);
+            } catch (CancellationException excp) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw excp;
+                }
+                break;
+            } finally {
+                _searchDeadline = 0;
+            }
+            best = _lastFoundTaflMove;
+            _stats.endIteration(d, _nodes - nodes, _cutoffs - cutoffs,
+                                _firstCutoffs - firstCutoffs);
+            if (event != null && event.shouldCommit()) {
+                event.depth = d;
+                event.nodes = _nodes - nodes;
+                event.score = _lastValue;
+                event.move = best < 0 ? null
+                    : board.geometry().moveName(best);
+                event.commit();
+            }
+        }
+        _stats.endMove();
+        return best;
+    }
 
-        if (myPiece() == BLACK) {
-            findMove(b, maxDepth(b), true, -1, INFTY, -INFTY);
-        } else {
-            findMove(b, maxDepth(b), true, 1, INFTY, -INFTY);
+    /**
+     * Return the best move for the side to move on BOARD found by a
+     * search to DEPTH, or null if there is none, leaving BOARD unchanged.
+     * Its value (positive favoring white) is then given by lastValue().
+     */
+    Move bestMove(Board board, int depth) {
+        return bestMove(board, depth, 0);
+    }
+
+    /**
+     * As for bestMove(BOARD, DEPTH), but if DEADLINE is positive and
+     * System.currentTimeMillis() reaches it before the search is done,
+     * abandon the search, leaving BOARD unchanged, and throw a
+     * CancellationException.
+     */
+    Move bestMove(Board board, int depth, long deadline) {
+        long nodes = _nodes, cutoffs = _cutoffs,
+            firstCutoffs = _firstCutoffs;
+        SearchEvent event = flightRecording() ? new SearchEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        board.setNetwork(_useNetwork ? Network.standard() : null);
+        _lastFoundMove = null;
+        _searchDeadline = deadline;
+        try {
+            _lastValue = findMove(board, depth, true,
+                                  board.turn() == BLACK ? -1 : 1,
+                                  -INFTY, INFTY);
+        } finally {
+            _searchDeadline = 0;
+        }
+        _stats.endIteration(depth, _nodes - nodes, _cutoffs - cutoffs,
+                            _firstCutoffs - firstCutoffs);
+        if (event != null && event.shouldCommit()) {
+            event.depth = depth;
+            event.nodes = _nodes - nodes;
+            event.score = _lastValue;
+            event.move = _lastFoundMove == null ? null
+                : _lastFoundMove.toString();
+            event.commit();
         }
         return _lastFoundMove;
     }
 
+    /**
+     * Return the value found by the last search.
+     */
+    int lastValue() {
+        return _lastValue;
+    }
+
+    @Override
+    long nodeCount() {
+        return _nodes;
+    }
+
+    @Override
+    void reduceEffort(int levels) {
+        _reduction = Math.max(0, levels);
+    }
+
+    @Override
+    SearchStats stats() {
+        return _stats;
+    }
+
+    @Override
+    void setProgress(SearchProgress progress) {
+        _progress = progress;
+    }
+
     /**
      * The move found by the last call to one of the ...FindMove methods
      * below.
@@ -93,52 +282,123 @@ class AI extends Player {
 
     private int findMove(Board board, int depth, boolean saveMove,
                          int sense, int alpha, int beta) {
+        _nodes += 1;
+        if ((_nodes & INTERRUPT_CHECK_MASK) == 0
+            && (Thread.currentThread().isInterrupted()
+                || _searchDeadline > 0
+                   && System.currentTimeMillis() >= _searchDeadline)) {
+            throw new CancellationException("search interrupted");
+        }
         if (depth == 0 || board.winner() != null) {
             return staticScore(board);
         }
-        if (sense == 1)  {
-            int value = -INFTY;
-            for (Move m : board.legalMoves(WHITE)) {
-                board.makeMove(m);
-                int res = findMove(board, depth - 1, false,
-                            -sense, alpha, beta);
+        List<Move> moves = board.legalMoves(sense == 1 ? WHITE : BLACK);
+        if (moves.isEmpty()) {
+            return -sense * WINNING_VALUE;
+        }
+        int value = -sense * INFTY;
+        boolean first = true;
+        for (Move m : moves) {
+            board.makeMove(m);
+            int res;
+            try {
+                res = findMove(board, depth - 1, false, -sense, alpha, beta);
+            } finally {
                 board.undo();
-                value = Math.max(alpha, value);
-                if (value >= res && saveMove) {
+            }
+            if (sense * res > sense * value) {
+                value = res;
+                if (saveMove) {
                     _lastFoundMove = m;
                 }
+            }
+            if (sense == 1) {
                 alpha = Math.max(alpha, value);
-                if (alpha >= beta) {
-                    break;
+            } else {
+                beta = Math.min(beta, value);
+            }
+            if (alpha >= beta) {
+                _cutoffs += 1;
+                if (first) {
+                    _firstCutoffs += 1;
                 }
+                break;
             }
-            return value;
-        } else {
-            int value = INFTY;
-            for (Move b : board.legalMoves(BLACK)) {
-                board.makeMove(b);
-                int res = findMove(board, depth - 1, false,
-                        -sense, alpha, beta);
+            first = false;
+        }
+        return value;
+    }
+
+    /**
+     * The move found by the last call to findMove on a TaflBoard with
+     * SAVEMOVE, or -1.
+     */
+    private int _lastFoundTaflMove;
+
+    /**
+     * As for findMove(BOARD, DEPTH, SAVEMOVE, SENSE, ALPHA, BETA) on a
+     * Board, but on the TaflBoard BOARD, recording the move found in
+     * _lastFoundTaflMove.  BUFFERS holds at least DEPTH arrays of
+     * BOARD.maxMoves() moves, one for each level.
+     */
+    private int findMove(TaflBoard board, int depth, int[][] buffers,
+                         boolean saveMove, int sense, int alpha, int beta) {
+        _nodes += 1;
+        if ((_nodes & INTERRUPT_CHECK_MASK) == 0
+            && (Thread.currentThread().isInterrupted()
+                || _searchDeadline > 0
+                   && System.currentTimeMillis() >= _searchDeadline)) {
+            throw new CancellationException("search interrupted");
+        }
+        if (depth == 0 || board.winner() >= 0) {
+            return staticScore(board);
+        }
+        int[] moves = buffers[depth - 1];
+        int n = board.legalMoves(moves);
+        if (n == 0) {
+            return -sense * WINNING_VALUE;
+        }
+        int value = -sense * INFTY;
+        for (int k = 0; k < n; k += 1) {
+            board.makeMove(moves[k]);
+            int res;
+            try {
+                res = findMove(board, depth - 1, buffers, false, -sense,
+                               alpha, beta);
+            } finally {
                 board.undo();
-                value = Math.min(beta, value);
-                if (res >= value && saveMove) {
-                    _lastFoundMove = b;
+            }
+            if (sense * res > sense * value) {
+                value = res;
+                if (saveMove) {
+                    _lastFoundTaflMove = moves[k];
                 }
+            }
+            if (sense == 1) {
+                alpha = Math.max(alpha, value);
+            } else {
                 beta = Math.min(beta, value);
-                if (alpha >= beta) {
-                    break;
+            }
+            if (alpha >= beta) {
+                _cutoffs += 1;
+                if (k == 0) {
+                    _firstCutoffs += 1;
                 }
+                break;
             }
-            return value;
         }
+        return value;
     }
+
     /**
      * Return a heuristically determined maximum search depth
-     * based on characteristics of BOARD.
+     * based on characteristics of BOARD.  No search goes past the move
+     * limit, where the game ends.
      * @param board : this is a board object
      */
-    private static int maxDepth(Board board) {
-        return 1;
+    private int maxDepth(Board board) {
+        return Math.max(1, Math.min(_depth - _reduction,
+                                    board.movesLeft()));
     }
     /**
      * Return a king position.
@@ -159,104 +419,125 @@ class AI extends Player {
      * @param board : this is a board object
      */
     private int staticScore(Board board) {
-        double score;
-        final int increm = 50;
-        score =  numpieces(board) + unblocked(board) + shortdistedge(board);
-        //return (int) score;
-        return 2;
-    }
-    /** Determining the number of pieces of black and white and their ratio.
-     * @param board  : this is a board object
-     * @return This returns a double */
-    public double numpieces(Board board) {
-        double score = 0;
-        int blackpieces = 0;
-        int whitepieces = 0;
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; i < 9; i++) {
-                if (board.get(sq(i, j)) == WHITE
-                        || board.get(sq(i, j)) == KING) {
-                    whitepieces++;
-                }   else if (board.get(sq(i, j)) == BLACK) {
-                    blackpieces++;
-                }
-            }
+        if (board.winner() == WHITE) {
+            return WINNING_VALUE;
+        } else if (board.winner() == BLACK) {
+            return -WINNING_VALUE;
         }
-        score = whitepieces - blackpieces;
-        return score;
+        int score = board.network() != null ? board.networkScore()
+            : _evaluation.score(board);
+        return score + limitPressure(board);
     }
-    /** This returns the score for the no of black pieces.
-     * rook moves way from king
-     * @param board : this is a board object
-     * @param inc : increm */
-    public double tworookmovesking(Board board, double inc) {
-        double score = 0;
-        for (int j = 0; j < 4; j++) {
-            if (board.get(board.kingPosition().rookMove(j, 2)) == BLACK) {
-                score += inc;
-            }
-        }
-        return score;
-    }
-    /** This returns the shortest distance from the king.
-     * to an edge
-     * @param board : : this is a board object  */
-    public double shortdistedge(Board board) {
-        double score = 0;
-        HashSet<Double> distances = new HashSet<Double>();
-        for (int i = 0; i < 9; i++) {
-            for (int j = 0; i < 9; i++) {
-                if (sq(i, j).isEdge()) {
-                    double dis = Math.sqrt(Math.pow((i
-                            - board.kingPosition().col()), 2)
-                            + Math.pow((j - board.kingPosition().row()), 2));
-                    distances.add(dis);
-                }
-            }
-        }
-        double min = 1000;
-        for (double x : distances) {
-            if (x < min) {
-                min = x;
-            }
-        }
-        if (min < 3) {
-            score = score + min;
+
+    /**
+     * Return a heuristic value for BOARD, a board of any size, as for
+     * staticScore(Board).
+     */
+    private int staticScore(TaflBoard board) {
+        if (board.winner() == TaflBoard.WHITE_SIDE) {
+            return WINNING_VALUE;
+        } else if (board.winner() == TaflBoard.BLACK_SIDE) {
+            return -WINNING_VALUE;
         }
-        return score;
+        return _evaluation.score(board)
+            + limitPressure(board.movesLeft(),
+                            board.turn() == TaflBoard.WHITE_SIDE
+                            ? WHITE : BLACK);
     }
+
     /**
-     * Move FROM-TO, assuming this is a legal move.
-     *
-     * @param board : takes a board
-     * @return integer
-     *
-     */
-    public int unblocked(Board board) {
-        int numrookmoves = 0;
-        for (Move x : board.legalMoves(KING)) {
-            if (x.to().isEdge()) {
-                return WILL_WIN_VALUE;
-            }
-        }
-        return numrookmoves;
+     * Return the part of the heuristic value of BOARD (positive favoring
+     * white) due to its move limit: nothing while more than
+     * LIMIT_HORIZON moves are left, and otherwise LIMIT_PRESSURE for
+     * each move short of it, in favor of the side that wins at the limit.
+     * That is the side that makes the last move, the side to move iff an
+     * odd number of moves are left.
+     * @param board : this is a board object
+     */
+    static int limitPressure(Board board) {
+        return limitPressure(board.movesLeft(), board.turn());
     }
+
     /**
-     * Move FROM-TO, assuming this is a legal move.
-     *
-     * @param board : takes a board.
-     * @return int
-     *
-     */
-    public int blackaroundking(Board board) {
-        int black = 0;
-        for (int i = 0; i < 4; i++) {
-            Square b  = board.kingPosition().rookMove(i, 2);
-            if (board.get(b) == BLACK) {
-                black++;
-            }
+     * Return the part of the heuristic value of a position with LEFT
+     * moves left under its move limit and TURN to move, as for
+     * limitPressure(Board).
+     */
+    private static int limitPressure(int left, Piece turn) {
+        if (left >= LIMIT_HORIZON) {
+            return 0;
         }
-        return -10 * black;
+        Piece winner = left % 2 == 1 ? turn : turn.opponent();
+        int pressure = LIMIT_PRESSURE * (LIMIT_HORIZON - left);
+        return winner == WHITE ? pressure : -pressure;
+    }
+
+    @Override
+    void useNetwork(boolean on) {
+        _useNetwork = on;
     }
 
+    @Override
+    String evaluation() {
+        return _useNetwork ? "nnue (" + Network.kernelName() + ")"
+            : "classic";
+    }
+
+    /**
+     * True iff I evaluate positions with the network.
+     */
+    private volatile boolean _useNetwork;
+
+    /**
+     * The depth to which I search.
+     */
+    private final int _depth;
+
+    /**
+     * The evaluation of positions at the ends of my searches.
+     */
+    private final Evaluation _evaluation = Evaluation.standard();
+
+    /**
+     * The number of plies by which to reduce my search (see reduceEffort).
+     */
+    private int _reduction;
+
+    /**
+     * Time (as by System.currentTimeMillis()) by which my next move is
+     * to be found, or 0 if none (see setDeadline).
+     */
+    private long _deadline;
+
+    /**
+     * Time at which the search under way is abandoned, or 0 if none.
+     */
+    private long _searchDeadline;
+
+    /**
+     * The value of the position found by the last search.
+     */
+    private int _lastValue;
+
+    /**
+     * The number of positions I have searched.
+     */
+    private long _nodes;
+
+    /**
+     * The number of beta cutoffs in my searches, and the number of those
+     * caused by the first move tried.
+     */
+    private long _cutoffs, _firstCutoffs;
+
+    /**
+     * Statistics of my searches.
+     */
+    private final SearchStats _stats = new SearchStats();
+
+    /**
+     * Where to report the progress of my searches, or null.
+     */
+    private volatile SearchProgress _progress;
+
 }
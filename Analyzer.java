@@ -0,0 +1,231 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Batch analysis of the positions in a file.  A text file holds one
+ *  position per line in the format of Board.encodedBoard() (blank lines
+ *  and lines starting with '#' are skipped); a binary position file (see
+ *  Position) holds packed positions; and a binary game file (see
+ *  GameWriter) supplies every position, before each move, of each of its
+ *  games.  Each position is searched by an AI on one of several worker
+ *  threads, and for each one a line
+ *  <pre>
+ *     N MOVE VALUE DEPTH NODES MILLIS
+ *  </pre>
+ *  is printed, in input order, where N numbers positions from 1 and MOVE
+ *  is "-" when the side to move has none.  Malformed positions, and
+ *  those whose searches fail, produce "N error MESSAGE" instead, as does
+ *  an illegal move in a game file, which ends its game.  A reader thread
+ *  feeds the workers through a bounded queue of pending results, so that
+ *  only a few positions are in memory at once.
+ *  @author Dhruv Krishnaswamy
+ */
+class Analyzer {
+
+    /** Number of pending positions allowed per worker. */
+    private static final int QUEUE_PER_THREAD = 4;
+
+    /** An analyzer that searches each position to DEPTH or, if MILLIS is
+     *  positive, to successively greater depths until MILLIS milliseconds
+     *  have passed, abandoning the search under way then and reporting
+     *  the deepest one completed, using THREADS workers. */
+    Analyzer(int depth, long millis, int threads) {
+        _depth = Math.max(1, depth);
+        _millis = millis;
+        _threads = Math.max(1, threads);
+    }
+
+    /** Analyze the positions in FILE, printing results on OUT.  Returns
+     *  the number of positions analyzed. */
+    long analyze(Path file, PrintStream out) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        BlockingQueue<Future<String>> pending =
+            new ArrayBlockingQueue<>(QUEUE_PER_THREAD * _threads);
+        IOException[] failure = new IOException[1];
+        Thread reader = new Thread(() -> {
+            try {
+                read(file, (position, problem) ->
+                     pending.put(workers.submit(
+                         () -> position == null ? "error " + problem
+                         : search(position))));
+            } catch (IOException excp) {
+                failure[0] = excp;
+            } catch (RuntimeException excp) {
+                failure[0] = new IOException(excp.toString(), excp);
+            } catch (InterruptedException excp) {
+                return;
+            } finally {
+                try {
+                    pending.put(END);
+                } catch (InterruptedException excp) {
+                    /* Ignore InterruptedException. */
+                }
+            }
+        }, "analyzer-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        long count = 0;
+        try {
+            while (true) {
+                Future<String> next = pending.take();
+                if (next == END) {
+                    break;
+                }
+                count += 1;
+                out.printf("%d %s%n", count, result(next));
+            }
+            reader.join();
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("analysis interrupted");
+        } finally {
+            workers.shutdownNow();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return count;
+    }
+
+    /** Return the result line computed by RESULT, waiting for it, or an
+     *  error line if its search failed. */
+    private static String result(Future<String> result)
+        throws InterruptedException {
+        try {
+            return result.get();
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            return "error "
+                + (cause.getMessage() == null ? cause.toString()
+                   : cause.getMessage());
+        }
+    }
+
+    /** A receiver of positions. */
+    private interface PositionSink {
+        /** Receive POSITION or, if it is null, a malformed position
+         *  described by PROBLEM. */
+        void accept(Position position, String problem)
+            throws InterruptedException;
+    }
+
+    /** Send each position in FILE, in order, to SINK. */
+    private static void read(Path file, PositionSink sink)
+        throws IOException, InterruptedException {
+        if (startsWith(file, GameWriter.MAGIC)) {
+            Board board = new Board();
+            try (GameReader games = new GameReader(file)) {
+                while (games.next()) {
+                    board.init();
+                    for (int k = 0; k < games.plies(); k += 1) {
+                        Move move = games.move(k);
+                        if (!board.isLegal(move)) {
+                            sink.accept(null,
+                                        String.format("illegal move %s in"
+                                                      + " game %d", move,
+                                                      games.games()));
+                            break;
+                        }
+                        sink.accept(board.position(), null);
+                        board.makeMove(move);
+                    }
+                }
+            }
+        } else if (startsWith(file, Position.MAGIC)) {
+            try (DataInputStream in = new DataInputStream(
+                     new BufferedInputStream(Files.newInputStream(file)))) {
+                in.skipBytes(Position.MAGIC.length);
+                long size = Files.size(file) - Position.MAGIC.length;
+                if (size % Position.BYTES != 0) {
+                    throw new IOException("truncated position file");
+                }
+                for (long n = size / Position.BYTES; n > 0; n -= 1) {
+                    sink.accept(Position.read(in), null);
+                }
+            }
+        } else {
+            try (BufferedReader lines =
+                 Files.newBufferedReader(file, StandardCharsets.US_ASCII)) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    try {
+                        sink.accept(Position.parse(line), null);
+                    } catch (IllegalArgumentException excp) {
+                        sink.accept(null, excp.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /** Return true iff FILE starts with MAGIC. */
+    private static boolean startsWith(Path file, byte[] magic)
+        throws IOException {
+        byte[] head = new byte[magic.length];
+        try (InputStream in = Files.newInputStream(file)) {
+            if (in.readNBytes(head, 0, head.length) != head.length) {
+                return false;
+            }
+        }
+        return Arrays.equals(head, magic);
+    }
+
+    /** Search POSITION and return the result line (without its position
+     *  number). */
+    private String search(Position position) {
+        Board board = new Board();
+        board.setPosition(position);
+        AI ai = new AI();
+        long start = System.currentTimeMillis();
+        Move best = ai.bestMove(board, _depth);
+        int value = ai.lastValue(), depth = _depth;
+        if (_millis > 0) {
+            long deadline = start + _millis;
+            while (best != null) {
+                try {
+                    best = ai.bestMove(board, depth + 1, deadline);
+                } catch (CancellationException excp) {
+                    break;
+                }
+                value = ai.lastValue();
+                depth += 1;
+            }
+        }
+        return String.format("%s %d %d %d %d",
+                             best == null ? "-" : best, value, depth,
+                             ai.nodeCount(),
+                             System.currentTimeMillis() - start);
+    }
+
+    /** Marks the end of the pending results. */
+    private static final Future<String> END =
+        CompletableFuture.completedFuture(null);
+
+    /** Minimum search depth. */
+    private final int _depth;
+    /** Time allowed per position, or 0 to search to _depth only. */
+    private final long _millis;
+    /** Number of worker threads. */
+    private final int _threads;
+}
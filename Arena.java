@@ -0,0 +1,259 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static tablut.Piece.*;
+
+/** A headless runner for matches between two automated engines.  Games
+ *  are played concurrently, one per pool worker, on their own headless
+ *  Controllers, so that nothing reads the standard input or writes to a
+ *  view.  Games come in pairs: both games of a pair start from the same
+ *  few random opening plies, with the engines' colors swapped.
+ *  @author Dhruv Krishnaswamy
+ */
+class Arena {
+
+    /** Number of random plies played before the engines take over. */
+    static final int OPENING_PLIES = 4;
+
+    /** Number of plies after which a game is scored as a draw. */
+    static final int MAX_PLIES = 200;
+
+    /** Indices of the outcomes in the result table. */
+    static final int WIN = 0, LOSS = 1, DRAW = 2;
+
+    /** A new arena for matches between the engines described by ENGINE
+     *  and OPPONENT (as for Controller.engine), playing up to THREADS
+     *  games at once. */
+    Arena(String engine, String opponent, int threads) {
+        _specs = new String[] { engine, opponent };
+        _templates = new Player[] {
+            Controller.engine(engine), Controller.engine(opponent)
+        };
+        _threads = Math.max(1, threads);
+    }
+
+    /** Record every game played on RECORDER (none if null). */
+    void setRecorder(GameWriter recorder) {
+        _recorder = recorder;
+    }
+
+    /** Set the seed from which opening variations are drawn to SEED. */
+    void setSeed(long seed) {
+        _seed = seed;
+    }
+
+    /** Play GAMES games, adding their results to my totals. */
+    void play(int games) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int g = 0; g < games; g += 1) {
+                int game = g;
+                pending.add(pool.submit(() -> playGame(game)));
+            }
+            for (Future<?> done : pending) {
+                done.get();
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("arena game failed: "
+                                            + excp.getCause());
+        } finally {
+            pool.shutdownNow();
+            _wallNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Play pairs of games, feeding each pair's result to TEST, until TEST
+     *  reaches a decision or MAXGAMES games have been played.  Adds the
+     *  results to my totals. */
+    void play(int maxGames, SPRT test) {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        CompletionService<Double> pairs =
+            new ExecutorCompletionService<>(pool);
+        long start = System.nanoTime();
+        int maxPairs = maxGames / 2, submitted = 0, inFlight = 0;
+        try {
+            while (true) {
+                while (inFlight < 2 * _threads && submitted < maxPairs
+                       && !test.decided()) {
+                    int first = 2 * submitted;
+                    pairs.submit(() -> playGame(first) + playGame(first + 1));
+                    submitted += 1;
+                    inFlight += 1;
+                }
+                if (inFlight == 0) {
+                    break;
+                }
+                test.addPair(pairs.take().get());
+                inFlight -= 1;
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("arena game failed: "
+                                            + excp.getCause());
+        } finally {
+            pool.shutdownNow();
+            _wallNanos += System.nanoTime() - start;
+        }
+    }
+
+    /** Return the number of games in which engine ENGINE (0 or 1),
+     *  playing COLOR, had OUTCOME (WIN, LOSS, or DRAW). */
+    long count(int engine, Piece color, int outcome) {
+        return _results.get(slot(engine, color, outcome));
+    }
+
+    /** Return the total number of games played. */
+    long games() {
+        return _games.sum();
+    }
+
+    /** Print a table of results and throughput on OUT. */
+    void report(PrintStream out) {
+        out.printf("%-24s %-6s %7s %7s %7s%n",
+                   "Engine", "Color", "Wins", "Losses", "Draws");
+        for (int e = 0; e < 2; e += 1) {
+            String name = (e == 0 ? "A: " : "B: ") + _specs[e];
+            for (Piece color : new Piece[] { BLACK, WHITE }) {
+                out.printf("%-24s %-6s %7d %7d %7d%n", name, color.toName(),
+                           count(e, color, WIN), count(e, color, LOSS),
+                           count(e, color, DRAW));
+            }
+        }
+        double secs = _wallNanos / 1e9;
+        double thinkSecs = _thinkNanos.sum() / 1e9;
+        out.printf("%d games in %.1f s (%.2f games/s), %.0f nodes/s%n",
+                   games(), secs, secs > 0 ? games() / secs : 0.0,
+                   thinkSecs > 0 ? _nodes.sum() / thinkSecs : 0.0);
+    }
+
+    /** Play game number GAME, record its result, and return engine 0's
+     *  score (1 for a win, 1/2 for a draw, 0 for a loss).  Engine 0 takes
+     *  black in even-numbered games and white in odd-numbered ones, and
+     *  games 2k and 2k + 1 share their opening. */
+    private double playGame(int game) {
+        Controller control = new Controller(new NullReporter());
+        control.setSeed(_seed + game);
+        int blackEngine = game % 2, whiteEngine = 1 - blackEngine;
+        Player black = _templates[blackEngine].create(BLACK, control);
+        Player white = _templates[whiteEngine].create(WHITE, control);
+
+        Board board = control.board();
+        GameRecord record = new GameRecord(false);
+        playOpening(board, new Random(_seed + game / 2), record);
+        Piece winner = playOut(board, white, black, record);
+        if (_recorder != null) {
+            record.setWinner(winner);
+            try {
+                _recorder.write(record);
+            } catch (IOException excp) {
+                throw new IllegalStateException("could not record game: "
+                                                + excp.getMessage());
+            }
+        }
+        _nodes.add(white.nodeCount() + black.nodeCount());
+        _games.increment();
+
+        record(blackEngine, BLACK, winner);
+        record(whiteEngine, WHITE, winner);
+        if (winner == null) {
+            return 0.5;
+        }
+        return (winner == BLACK) == (blackEngine == 0) ? 1 : 0;
+    }
+
+    /** Play OPENING_PLIES random moves on BOARD, chosen using RAND from
+     *  among the moves that do not end the game, adding them to RECORD. */
+    static void playOpening(Board board, Random rand, GameRecord record) {
+        for (int ply = 0; ply < OPENING_PLIES; ply += 1) {
+            List<Move> moves = board.legalMoves(board.turn());
+            Move played = null;
+            while (played == null && !moves.isEmpty()) {
+                Move m = moves.remove(rand.nextInt(moves.size()));
+                board.makeMove(m);
+                if (board.winner() == null) {
+                    played = m;
+                } else {
+                    board.undo();
+                }
+            }
+            if (played == null) {
+                return;
+            }
+            record.add(played);
+        }
+    }
+
+    /** Play the game on BOARD to its end between WHITE and BLACK, adding
+     *  the moves to RECORD, and return the winner, or null for a draw.  A
+     *  side with no legal moves or that offers an illegal one loses. */
+    private Piece playOut(Board board, Player white, Player black,
+                          GameRecord record) {
+        while (board.winner() == null) {
+            Piece side = board.turn();
+            if (board.moveCount() >= MAX_PLIES) {
+                return null;
+            }
+            if (!board.hasMove(side)) {
+                return side.opponent();
+            }
+            Player player = side == WHITE ? white : black;
+            long start = System.nanoTime();
+            Move move = Move.mv(player.myMove());
+            _thinkNanos.add(System.nanoTime() - start);
+            if (move == null || !board.isLegal(move)) {
+                return side.opponent();
+            }
+            board.makeMove(move);
+            record.add(move);
+        }
+        return board.winner();
+    }
+
+    /** Record the outcome for ENGINE playing COLOR in a game won by
+     *  WINNER (null for a draw). */
+    private void record(int engine, Piece color, Piece winner) {
+        int outcome =
+            winner == null ? DRAW : winner == color ? WIN : LOSS;
+        _results.incrementAndGet(slot(engine, color, outcome));
+    }
+
+    /** Return the index in _results of OUTCOME for ENGINE playing COLOR. */
+    private static int slot(int engine, Piece color, int outcome) {
+        return (engine * 2 + (color == WHITE ? 1 : 0)) * 3 + outcome;
+    }
+
+    /** The engine descriptions, as given to Controller.engine. */
+    private final String[] _specs;
+    /** Templates for the two engines. */
+    private final Player[] _templates;
+    /** Number of games played at once. */
+    private final int _threads;
+    /** Seed for opening variations. */
+    private long _seed = System.nanoTime();
+    /** Counts of outcomes, indexed by slot. */
+    private final AtomicLongArray _results = new AtomicLongArray(12);
+    /** Number of games played. */
+    private final LongAdder _games = new LongAdder();
+    /** Total positions searched by the engines. */
+    private final LongAdder _nodes = new LongAdder();
+    /** Total time spent by the engines choosing moves. */
+    private final LongAdder _thinkNanos = new LongAdder();
+    /** Where games are recorded, or null. */
+    private GameWriter _recorder;
+    /** Total elapsed time of calls to play. */
+    private long _wallNanos;
+}
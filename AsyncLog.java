@@ -0,0 +1,208 @@
+package tablut;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/** A log of lines written asynchronously.  Lines are placed in a bounded
+ *  ring buffer, and a background thread writes them out in batches,
+ *  flushing them according to the log's Durability.  A full buffer makes
+ *  writers wait rather than losing lines, and close() writes out
+ *  everything buffered before returning.  A log not closed by the time
+ *  the program exits (by System.exit or a signal) is closed by a
+ *  shutdown hook, so that no buffered lines are lost.
+ *  @author Dhruv Krishnaswamy
+ */
+class AsyncLog implements AutoCloseable {
+
+    /** How promptly logged lines reach the file. */
+    enum Durability {
+        /** Lines are flushed every flush interval and on closing. */
+        BUFFERED,
+        /** Each batch of lines is flushed to the operating system. */
+        FLUSHED,
+        /** Each batch of lines is flushed and forced to the device. */
+        SYNCED
+    }
+
+    /** Default number of lines in the buffer. */
+    static final int DEFAULT_CAPACITY = 4096;
+
+    /** Default time between flushes of a BUFFERED log, in
+     *  milliseconds. */
+    static final long DEFAULT_FLUSH_MILLIS = 200;
+
+    /** A log on the file named FILENAME, with the given DURABILITY,
+     *  flushing a BUFFERED log every FLUSHMILLIS milliseconds. */
+    static AsyncLog open(String fileName, Durability durability,
+                         long flushMillis) throws IOException {
+        FileOutputStream out = new FileOutputStream(fileName);
+        return new AsyncLog(out, out, durability, flushMillis,
+                            DEFAULT_CAPACITY);
+    }
+
+    /** A BUFFERED log on OUT with the default flush interval. */
+    AsyncLog(OutputStream out) {
+        this(out, null, Durability.BUFFERED, DEFAULT_FLUSH_MILLIS,
+             DEFAULT_CAPACITY);
+    }
+
+    /** A log on OUT, buffering up to CAPACITY lines, with the given
+     *  DURABILITY, flushing a BUFFERED log every FLUSHMILLIS
+     *  milliseconds.  If FILE is non-null, it is the file underlying
+     *  OUT, used to force SYNCED lines to the device. */
+    AsyncLog(OutputStream out, FileOutputStream file, Durability durability,
+             long flushMillis, int capacity) {
+        _out = new BufferedWriter(
+            new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        _file = file;
+        _durability = durability;
+        _flushMillis = Math.max(1, flushMillis);
+        _lines = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        _writer = new Thread(this::writeLines, "log-writer");
+        _writer.setDaemon(true);
+        _writer.start();
+        _closer = new Thread(this::close, "log-closer");
+        Runtime.getRuntime().addShutdownHook(_closer);
+    }
+
+    /** Append LINE (without its terminator), waiting for room in the
+     *  buffer if necessary.  Once writing has failed, lines are
+     *  dropped. */
+    void println(String line) {
+        if (_closed) {
+            throw new IllegalStateException("log is closed");
+        }
+        enqueue(line);
+    }
+
+    /** Append the line given by FORMAT and ARGS, as for String.format. */
+    void printf(String format, Object... args) {
+        println(String.format(format, args));
+    }
+
+    /** Write out all buffered lines, close the file, and stop the writer
+     *  thread.  Further lines may not be logged. */
+    @Override
+    public synchronized void close() {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        if (Thread.currentThread() != _closer) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(_closer);
+            } catch (IllegalStateException excp) {
+                /* Already shutting down: the hook will find us closed. */
+            }
+        }
+        try {
+            enqueue(END);
+            _writer.join();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+        if (_error != null) {
+            System.err.printf("Error writing log: %s%n", _error.getMessage());
+        }
+    }
+
+    /** Add LINE to the buffer, waiting for room, unless writing fails or
+     *  the writer thread stops first, in which case LINE is dropped.
+     *  The writer is checked every flush interval while waiting, since
+     *  once it stops nothing will make room. */
+    private void enqueue(String line) {
+        try {
+            while (_error == null && _writer.isAlive()) {
+                if (_lines.offer(line, _flushMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Body of the writer thread: write lines in batches until END. */
+    private void writeLines() {
+        List<String> batch = new ArrayList<>();
+        long lastFlush = System.currentTimeMillis();
+        boolean done = false;
+        try {
+            while (!done) {
+                String first =
+                    _lines.poll(_flushMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    _lines.drainTo(batch);
+                }
+                for (String line : batch) {
+                    if (line == END) {
+                        done = true;
+                        break;
+                    }
+                    _out.write(line);
+                    _out.write(System.lineSeparator());
+                }
+                long now = System.currentTimeMillis();
+                if (done || (!batch.isEmpty()
+                             && _durability != Durability.BUFFERED)
+                    || now - lastFlush >= _flushMillis) {
+                    flush();
+                    lastFlush = now;
+                }
+                batch.clear();
+            }
+        } catch (IOException excp) {
+            _error = excp;
+            _lines.clear();
+        } catch (InterruptedException excp) {
+            return;
+        } finally {
+            try {
+                _out.close();
+            } catch (IOException excp) {
+                _error = _error == null ? excp : _error;
+            }
+        }
+    }
+
+    /** Flush written lines, forcing them to the device if SYNCED. */
+    private void flush() throws IOException {
+        _out.flush();
+        if (_durability == Durability.SYNCED && _file != null) {
+            _file.getFD().sync();
+        }
+    }
+
+    /** Marks the end of the lines in _lines. */
+    private static final String END = new String("");
+
+    /** Where lines are written. */
+    private final Writer _out;
+    /** The file underlying _out, or null. */
+    private final FileOutputStream _file;
+    /** When lines are flushed. */
+    private final Durability _durability;
+    /** Time between flushes of a BUFFERED log. */
+    private final long _flushMillis;
+    /** Lines waiting to be written. */
+    private final BlockingQueue<String> _lines;
+    /** The thread that writes lines. */
+    private final Thread _writer;
+    /** True once close() has been called. */
+    private volatile boolean _closed;
+    /** Shutdown hook that closes me if I am still open at exit. */
+    private final Thread _closer;
+    /** The first error in writing, if any. */
+    private volatile IOException _error;
+}
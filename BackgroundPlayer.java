@@ -0,0 +1,105 @@
+package tablut;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** An automated Player for the GUI whose searches run on a dedicated
+ *  search thread rather than on the thread that runs the game, reporting
+ *  their progress to the GUI as they go.  The GUI may cancel a search
+ *  under way (as when the user quits), in which case the player's move
+ *  is "quit".
+ *  @author Dhruv Krishnaswamy
+ */
+class BackgroundPlayer extends Player {
+
+    /** A template for players that run the searches of players created
+     *  from ENGINE in the background, reporting to PROGRESS (the GUI). */
+    BackgroundPlayer(Player engine, SearchProgress progress) {
+        super(engine.myPiece(), engine._controller);
+        _engine = engine;
+        _progress = progress;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new BackgroundPlayer(_engine.create(piece, controller),
+                                    _progress);
+    }
+
+    @Override
+    Player withEngine(Player engine) {
+        return new BackgroundPlayer(engine, _progress);
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    String myMove() {
+        _engine.setProgress(_progress);
+        Future<String> search = SEARCHES.submit(_engine::myMove);
+        _progress.searching(search);
+        try {
+            return search.get();
+        } catch (CancellationException excp) {
+            return "quit";
+        } catch (InterruptedException excp) {
+            search.cancel(true);
+            Thread.currentThread().interrupt();
+            return "quit";
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException("search failed: "
+                                            + excp.getCause());
+        } finally {
+            _progress.searching(null);
+        }
+    }
+
+    @Override
+    void newGame() {
+        _engine.newGame();
+    }
+
+    @Override
+    boolean playsSize(int size) {
+        return _engine.playsSize(size);
+    }
+
+    @Override
+    long nodeCount() {
+        return _engine.nodeCount();
+    }
+
+    @Override
+    SearchStats stats() {
+        return _engine.stats();
+    }
+
+    @Override
+    void useNetwork(boolean on) {
+        _engine.useNetwork(on);
+    }
+
+    @Override
+    String evaluation() {
+        return _engine.evaluation();
+    }
+
+    /** The thread on which all searches run. */
+    private static final ExecutorService SEARCHES =
+        Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ai-search");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    /** The player whose searches I run. */
+    private final Player _engine;
+    /** Where progress is reported; the GUI may cancel searches. */
+    private final SearchProgress _progress;
+}
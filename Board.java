@@ -11,6 +11,8 @@ import java.util.Formatter;
 import static tablut.Piece.*;
 import static tablut.Square.*;
 import static tablut.Move.mv;
+import static tablut.Utils.error;
+import static tablut.Utils.flightRecording;
 
 
 /**
@@ -25,6 +27,12 @@ class Board {
      */
     static final int SIZE = 9;
 
+    /**
+     * One in this many moves and undos is recorded as a BoardEvent when
+     * those events are enabled.  A power of 2.
+     */
+    static final int EVENT_SAMPLE_INTERVAL = 256;
+
     /**
      * The throne (or castle) square and its four surrounding squares..
      */
@@ -69,24 +77,60 @@ class Board {
 
 
     /**
-     * Copies MODEL into me.
+     * Copies MODEL into me.  The copy shares no mutable state with MODEL,
+     * so it may be used as a scratch board (e.g., for playouts).
      */
     void copy(Board model) {
-        init();
-        for (int i = 0; i < SIZE; i++) {
-            for (int j = 0; j < SIZE; j++) {
-                this._board[i][j] = model._board[i][j];
-            }
+        if (model == this) {
+            return;
+        }
+        _board = new Piece[SIZE][];
+        for (int i = 0; i < SIZE; i += 1) {
+            _board[i] = model._board[i].clone();
         }
-
-        this._board = model._board;
         this._turn = model._turn;
         this._winner = model._winner;
         this._repeated = model._repeated;
         this._lim = model._lim;
         this._moveCount = model._moveCount;
         this._kingpos = model._kingpos;
-        this.boars = model.boars;
+        this._occupiedLo = model._occupiedLo;
+        this._occupiedHi = model._occupiedHi;
+        this._packed = model._packed.clone();
+        this.boars = new Stack<Position>();
+        this.boars.addAll(model.boars);
+        this._history = new PositionCounts(model._history);
+        this._accumulator = model._accumulator == null ? null
+            : model._accumulator.copy();
+        this._earlier = model._earlier;
+    }
+
+    /**
+     * Sets me to the position of MODEL, reusing my storage, as a cheap
+     * scratch board for a playout.  Only the pieces, turn, winner, move
+     * count, and limit are copied; I keep no network accumulator and
+     * cannot be undone past MODEL's position.  Repetitions of MODEL's
+     * earlier positions are found by consulting MODEL's history, so MODEL
+     * must not change while I am in use.
+     */
+    void copyForPlayout(Board model) {
+        for (int i = 0; i < SIZE; i += 1) {
+            System.arraycopy(model._board[i], 0, _board[i], 0, SIZE);
+        }
+        System.arraycopy(model._packed, 0, _packed, 0, _packed.length);
+        _turn = model._turn;
+        _winner = model._winner;
+        _repeated = model._repeated;
+        _lim = model._lim;
+        _moveCount = model._moveCount;
+        _kingpos = model._kingpos;
+        _occupiedLo = model._occupiedLo;
+        _occupiedHi = model._occupiedHi;
+        boars.clear();
+        boars.push(model.boars.peek());
+        _history.clear();
+        _earlier = model._history;
+        _accumulator = null;
     }
 
     /**
@@ -95,13 +139,14 @@ class Board {
     void init() {
         _turn = BLACK;
         _winner = null;
-        clearUndo();
         _board = new Piece[SIZE][SIZE];
         for (int i = 0; i < SIZE; i++) {
             for (int j = 0; j < SIZE; j++) {
                 this._board[i][j] = EMPTY;
             }
         }
+        _occupiedLo = _occupiedHi = 0;
+        _packed = new long[3];
         for (Square s : INITIAL_ATTACKERS) {
             put(BLACK, s);
         }
@@ -110,11 +155,57 @@ class Board {
             put(WHITE, def);
         }
         put(KING, THRONE);
-        boars.add(encodedBoard());
+        clearUndo();
+        refreshAccumulator();
+    }
+
+    /**
+     * Set up the position ENCODED, in the format of encodedBoard(), with
+     * no undo history and no winner.
+     */
+    void setPosition(String encoded) {
+        setPosition(Position.parse(encoded));
+    }
+
+    /**
+     * Set up POSITION, with no undo history and no winner.
+     */
+    void setPosition(Position position) {
+        restore(position);
+        _winner = null;
+        clearUndo();
+        refreshAccumulator();
+    }
+
+    /**
+     * Return the current position, packed.
+     */
+    Position position() {
+        return new Position(_packed[0], _packed[1],
+                            _turn == WHITE ? _packed[2] | Position.TURN_BIT
+                            : _packed[2]);
+    }
+
+    /**
+     * Set the pieces and turn to those of POSITION, leaving the undo
+     * history, winner, and network accumulator alone.
+     */
+    private void restore(Position position) {
+        for (Square sq : SQUARE_LIST) {
+            _board[sq.col()][sq.row()] = position.get(sq);
+        }
+        _packed[0] = position.word(0);
+        _packed[1] = position.word(1);
+        _packed[2] = position.word(2) & ~Position.TURN_BIT;
+        _turn = position.turn();
+        _kingpos = kingPosition();
+        computeOccupancy();
     }
 
     /**
      * Set the move limit to LIM.  It is an error if 2*LIM <= moveCount().
+     * Each side may then make at most LIM moves; the side that would have
+     * to make one more loses.
      *
      * @param n : This is the number of moves.
      */
@@ -126,6 +217,22 @@ class Board {
         }
     }
 
+    /**
+     * Return the move limit, or 0 if there is none.
+     */
+    int moveLimit() {
+        return _lim;
+    }
+
+    /**
+     * Return the number of moves (by both sides) that may yet be made
+     * under the move limit, or Integer.MAX_VALUE if there is none.
+     */
+    int movesLeft() {
+        return _lim == 0 ? Integer.MAX_VALUE
+            : Math.max(0, 2 * _lim - _moveCount);
+    }
+
     /**
      * Return a Piece representing whose move it is (WHITE or BLACK).
      */
@@ -150,15 +257,19 @@ class Board {
 
     /**
      * Record current position and set winner() next mover if the current
-     * position is a repeat.
+     * position is a repeat.  The position is recorded either way, so that
+     * undo() can always retract it.
      */
     private void checkRepeated() {
-        String state = encodedBoard();
-        if (boars.search(state) == -1) {
-            boars.add(state);
-        } else {
-            _winner = _turn.opponent();
+        Position state = position();
+        if (_winner == null
+            && (_history.count(state) > 0
+                || _earlier != null && _earlier.count(state) > 0)) {
+            _winner = _turn;
+            _repeated = true;
         }
+        boars.push(state);
+        _history.add(state);
     }
 
 
@@ -214,10 +325,31 @@ class Board {
      * Set square S to P.
      */
     final void put(Piece p, Square s) {
+        Piece old = _board[s.col()][s.row()];
         _board[s.col()][s.row()] = p;
         if (p == KING) {
             _kingpos = s;
         }
+        int k = s.index();
+        if (p == EMPTY) {
+            _occupiedLo &= ~(k < 64 ? 1L << k : 0);
+            _occupiedHi &= ~(k < 64 ? 0 : 1L << k);
+        } else {
+            _occupiedLo |= k < 64 ? 1L << k : 0;
+            _occupiedHi |= k < 64 ? 0 : 1L << k;
+        }
+        int shift = 2 * (k % Position.SQUARES_PER_WORD);
+        _packed[k / Position.SQUARES_PER_WORD] =
+            (_packed[k / Position.SQUARES_PER_WORD] & ~(3L << shift))
+            | ((long) p.ordinal() << shift);
+        if (_accumulator != null) {
+            if (old != EMPTY) {
+                _accumulator.remove(old, s);
+            }
+            if (p != EMPTY) {
+                _accumulator.add(p, s);
+            }
+        }
     }
 
     /**
@@ -245,24 +377,9 @@ class Board {
         if (!from.isRookMove(to)) {
             return false;
         }
-        int direc = from.direction(to);
-        if (from.row() == to.row()) {
-            int dist = Math.abs(from.col() - to.col());
-            for (int a = 1; a <= dist; a++) {
-                if (get(from.rookMove(direc, a)) != EMPTY) {
-                    return false;
-                }
-            }
-        }
-        if (from.col() == to.col()) {
-            int dist = Math.abs(from.row() - to.row());
-            for (int b = 1; b <= dist; b++) {
-                if (get(from.rookMove(direc, b)) != EMPTY) {
-                    return false;
-                }
-            }
-        }
-        return true;
+        int k = from.index() * NUM_SQUARES + to.index();
+        return (PATH_LO[k] & _occupiedLo) == 0
+            && (PATH_HI[k] & _occupiedHi) == 0;
     }
 
 
@@ -270,60 +387,55 @@ class Board {
      * Return true iff FROM is a valid starting square for a move.
      */
     boolean isLegal(Square from) {
-
-        if (get(from) == KING && _turn == WHITE) {
-            return true;
-        } else {
-            return get(from).side() == _turn;
-        }
+        return get(from).side() == _turn;
     }
 
     /**
-     * Return true iff FROM-TO is a valid move.
+     * Return true iff FROM-TO is a valid move for whatever piece is on
+     * FROM, ignoring whose turn it is.
      */
     boolean isLegal(Square from, Square to) {
-
-        if (to == THRONE) {
-            if (get(from) != KING) {
-                return false;
-            }
-        }
-        if (from.col() >= SIZE || from.row() >= SIZE) {
-            return false;
-        }
-        if (to.col() >= SIZE || to.row() >= SIZE) {
-            return false;
-        }
-
-        if (!isUnblockedMove(from, to)) {
-            return false;
-        }
-        return true;
+        return (to != THRONE || get(from) == KING)
+            && isUnblockedMove(from, to);
     }
 
     /**
-     * Return true iff MOVE is a legal move in the current
-     * position.
+     * Return true iff MOVE is a legal move in the current position for
+     * the side to move.  This takes a few array accesses and two
+     * tests against the occupancy masks.
      */
     boolean isLegal(Move move) {
-        return isLegal(move.from(), move.to());
+        Square from = move.from(), to = move.to();
+        Piece p = get(from);
+        if (p.side() != _turn || (to == THRONE && p != KING)) {
+            return false;
+        }
+        int k = from.index() * NUM_SQUARES + to.index();
+        return (PATH_LO[k] & _occupiedLo) == 0
+            && (PATH_HI[k] & _occupiedHi) == 0;
     }
 
     /**
      * Move FROM-TO, assuming this is a legal move.
      */
     void makeMove(Square from, Square to) {
-        assert isLegal(from, to);
-
-        if (!isLegal(from)) {
-            throw new IllegalArgumentException();
+        Move move = mv(from, to);
+        if (move == null || !isLegal(move)) {
+            throw error("illegal move");
+        }
+        if (movesLeft() == 0) {
+            throw error("move limit reached");
+        }
+        BoardEvent event = sampleEvent();
+        if (_accumulator != null) {
+            _accumulator.push();
         }
         put(get(from), to);
         put(EMPTY, from);
         for (int x = 0; x < 4; x++) {
-            Square c = to.rookMove(x, 2);
-            if (c != null) {
-                capture(to, c);
+            if (to.rookMove(x, 2) != null
+                && CaptureRules.capture(GEOMETRY, _pieces, to.index(), x)) {
+                _winner = BLACK;
             }
         }
         if ((get(to.col(), to.row()) == KING) && to.isEdge()) {
@@ -331,53 +443,40 @@ class Board {
         }
 
         _moveCount++;
-        checkRepeated();
         _turn = _turn.opponent();
+        checkRepeated();
+        if (_winner == null && movesLeft() == 0) {
+            _winner = _turn.opponent();
+        }
+        commitEvent(event, "makeMove");
     }
 
     /**
-     * Move FROM-TO, assuming this is a legal move.
-     *
-     * @param s : takes a board string to decode.
-     * @return string of decoded board
-     *
+     * Return a started BoardEvent for the current operation if it is one
+     * of the sampled operations (one in EVENT_SAMPLE_INTERVAL), and
+     * otherwise null.
      */
-    Piece[][] decode(String s) {
-
-        char[] arr = s.toCharArray();
-        int a = 0;
-        int b = 0;
-        Piece[][] newb1 = new Piece[SIZE][SIZE];
-        for (int i = 1; i < arr.length; i++) {
-            Piece c = convPiece(arr[i]);
-
-            newb1[a][b] = c;
-            if (a == SIZE - 1) {
-                b += 1;
-                a = 0;
-            } else {
-                a++;
-            }
+    private BoardEvent sampleEvent() {
+        if (!flightRecording()) {
+            return null;
+        }
+        _operations += 1;
+        if ((_operations & (EVENT_SAMPLE_INTERVAL - 1)) != 0) {
+            return null;
         }
-        return newb1;
+        BoardEvent event = new BoardEvent();
+        event.begin();
+        return event;
     }
 
     /**
-     * Move FROM-TO, assuming this is a legal move.
-     *
-     * @param c : takes a char to convert to piece.
-     * @return Piece
-     *
+     * Commit EVENT (if not null) as recording OPERATION.
      */
-    Piece convPiece(char c) {
-        if (c == 'W') {
-            return WHITE;
-        } else if (c == 'B') {
-            return BLACK;
-        } else if (c == '-') {
-            return EMPTY;
-        } else {
-            return KING;
+    private void commitEvent(BoardEvent event, String operation) {
+        if (event != null && event.shouldCommit()) {
+            event.operation = operation;
+            event.moveCount = _moveCount;
+            event.commit();
         }
     }
 
@@ -388,167 +487,31 @@ class Board {
         makeMove(move.from(), move.to());
     }
 
-    /**
-     * Capture the piece between SQ0 and SQ2, assuming a piece just moved to
-     * SQ0 and the necessary conditions are satisfied.
-     */
-    private void capture(Square sq0, Square sq2) {
-        assert sq0.between(sq2) != null;
-        assert sq2 != null;
-        Piece p2 = get(sq2.col(), sq2.row());
-        Square middlesq = sq0.between(sq2);
-        Piece pMiddle = get(middlesq.col(), middlesq.row());
-        Piece p0 = get(sq0.col(), sq0.row());
-        if (Square.exists(sq0.col(), sq2.row())
-                && Square.exists(sq2.col(), sq2.row())) {
-            if (sq2 != THRONE && middlesq
-                    != THRONE && sq0 != THRONE) {
-                if (p2.side() == p0.side()) {
-                    if (pMiddle == p0.opponent()) {
-                        put(EMPTY, middlesq);
-                    }
-                } else if (p0 == KING || p2 == KING) {
-                    if (p0 == WHITE || p2 == WHITE) {
-                        if (pMiddle == BLACK) {
-                            put(EMPTY, middlesq);
-                        }
-                    }
-                }
-            }
-            if (pMiddle == KING) {
-                if ((p0 == BLACK || p2 == BLACK)
-                        && (sq2 == THRONE || sq0 == THRONE)) {
-                    if (get(sq0.diag1(sq2).col(),
-                            sq0.diag1(sq2).row()) == BLACK
-                            && get(sq0.diag2(sq2).col(),
-                            sq0.diag2(sq2).row()) == BLACK) {
-                        put(EMPTY, middlesq);
-                        _winner = BLACK;
-                    }
-                } else if (p0 == BLACK && p2 == BLACK) {
-                    if ((get(sq0.diag1(sq2).col(),
-                            sq0.diag1(sq2).row()) == BLACK
-                            || get(sq0.diag2(sq2).col(),
-                            sq0.diag2(sq2).row()) == BLACK)
-                            && (sq0.diag1(sq2) == THRONE
-                            || sq0.diag2(sq2) == THRONE)) {
-                        put(EMPTY, middlesq);
-                        _winner = BLACK;
-                    }
-                }
-            }
-            capture2(sq0, sq2);
-        }
-    }
-    /** This method is continuing capture.
-     * @param sq0 square0
-     * @param sq2 square2
-     * */
-    private void capture2(Square sq0, Square sq2) {
-        Piece p2 = get(sq2.col(), sq2.row());
-        Square middlesq = sq0.between(sq2);
-        Piece pMiddle = get(middlesq.col(), middlesq.row());
-        Piece p0 = get(sq0.col(), sq0.row());
-        Piece sThrone = get(STHRONE.col(), STHRONE.row());
-        Piece nThrone = get(NTHRONE.col(), NTHRONE.row());
-        Piece wThrone = get(WTHRONE.col(), WTHRONE.row());
-        Piece eThrone = get(ETHRONE.col(), ETHRONE.row());
-        if (sq2 == THRONE && p2 == KING
-                || p0 == KING && sq0 == THRONE) {
-            if (p0 == BLACK && pMiddle == WHITE
-                    || p2 == BLACK && pMiddle == WHITE) {
-                if (nThrone == BLACK && wThrone
-                        == BLACK && sThrone == BLACK
-                        || wThrone == BLACK && sThrone
-                        == BLACK && eThrone == BLACK
-                        || sThrone == BLACK && eThrone
-                        == BLACK && nThrone == BLACK
-                        || eThrone == BLACK && nThrone
-                        == BLACK && wThrone == BLACK) {
-                    put(EMPTY, middlesq);
-                }
-            }
-        }
-        if (p0 == BLACK && p2
-                == BLACK && pMiddle == WHITE) {
-            put(EMPTY, middlesq);
-        }
-        if (p0 == WHITE && p2
-                == WHITE && pMiddle == BLACK) {
-            put(EMPTY, middlesq);
-        }
-        if (p0 == BLACK && p2 == BLACK && pMiddle
-                == KING && middlesq != THRONE) {
-            if (middlesq != WTHRONE || middlesq != ETHRONE
-                    || middlesq != STHRONE || middlesq != NTHRONE) {
-                put(EMPTY, middlesq);
-                _winner = BLACK;
-            }
-        }
-        capture3(sq0, sq2);
-    }
-
-    /** This method is continuing capture2.
-     * @param sq0 square0
-     * @param sq2 square2
-     * */
-    public void capture3(Square sq0, Square sq2) {
-        Piece p2 = get(sq2.col(), sq2.row());
-        Square middlesq = sq0.between(sq2);
-        Piece pMiddle = get(middlesq.col(), middlesq.row());
-        Piece p0 = get(sq0.col(), sq0.row());
-        Piece sThrone = get(STHRONE.col(), STHRONE.row());
-        Piece nThrone = get(NTHRONE.col(), NTHRONE.row());
-        Piece wThrone = get(WTHRONE.col(), WTHRONE.row());
-        Piece eThrone = get(ETHRONE.col(), ETHRONE.row());
-        if (sq0 == THRONE || sq2 == THRONE) {
-            if (sq0 == THRONE && p0 == KING) {
-                if (pMiddle == p2.opponent()) {
-                    put(EMPTY, middlesq);
-                }
-            } else if (sq2 == THRONE && p2 == KING) {
-                if (p0 == WHITE && pMiddle == p0.opponent()) {
-                    put(EMPTY, middlesq);
-                }
-            }
-        }
-        if (pMiddle == KING && middlesq == THRONE) {
-            if (wThrone == BLACK && eThrone == BLACK
-                    && sThrone == BLACK && nThrone == BLACK) {
-                put(EMPTY, middlesq);
-                _winner = BLACK;
-            }
-        }
-        if (sq2 == THRONE && get(ETHRONE) == KING
-                && get(WTHRONE) == WHITE
-                && get(STHRONE) == WHITE) {
-            if (p0 == BLACK && pMiddle == WHITE) {
-                put(EMPTY, middlesq);
-            }
-            if (p0 == WHITE && pMiddle == BLACK) {
-                put(EMPTY, middlesq);
-            }
-        }
-    }
     /**
      * Undo one move.  Has no effect on the initial board.
      */
     void undo() {
         if (_moveCount > 0) {
+            BoardEvent event = sampleEvent();
             undoPosition();
-            this._turn = convPiece(boars.peek().charAt(0)).opponent();
+            this._winner = null;
+            commitEvent(event, "undo");
         }
     }
 
     /**
      * Remove record of current position in the set of positions encountered,
-     * unless it is a repeated position or we are at the first move.
+     * unless we are at the first move.
      */
     private void undoPosition() {
-        if (!_repeated && moveCount() > 0) {
-            boars.pop();
-            this._board = decode(boars.peek());
+        if (moveCount() > 0) {
+            _history.remove(boars.pop());
+            _repeated = false;
+            restore(boars.peek());
             _moveCount = _moveCount - 1;
+            if (_accumulator != null) {
+                _accumulator.pop();
+            }
         }
     }
 
@@ -561,20 +524,29 @@ class Board {
         while (!boars.isEmpty()) {
             boars.pop();
         }
+        _history.clear();
+        _earlier = null;
+        boars.push(position());
+        _history.add(boars.peek());
         _moveCount = 0;
         _repeated = false;
+        if (_accumulator != null) {
+            _accumulator.forget();
+        }
     }
 
     /**
      * Return a new mutable list of all legal moves on the current board for
-     * SIDE (ignoring whose turn it is at the moment).
+     * SIDE (ignoring whose turn it is at the moment).  The king moves for
+     * WHITE; legalMoves(KING) gives the king's moves alone.
      */
     List<Move> legalMoves(Piece side) {
         ArrayList<Square> squa = new ArrayList<Square>();
 
         for (int i = 0; i < SIZE; i++) {
             for (int j = 0; j < SIZE; j++) {
-                if (get(i, j) == side) {
+                if (get(i, j) == side
+                        || (side == WHITE && get(i, j) == KING)) {
                     squa.add(sq(i, j));
                 }
             }
@@ -593,16 +565,74 @@ class Board {
     }
 
     /**
-     * Return true iff SIDE has a legal move.
+     * Return true iff SIDE has a legal move (ignoring whose turn it is),
+     * as if by !legalMoves(SIDE).isEmpty(), but stopping at the first
+     * move found without making a list.
      */
     boolean hasMove(Piece side) {
-
-        if (legalMoves(side).size() > 0) {
-            return true;
+        for (Square sq : SQUARE_LIST) {
+            if (moves(side, sq) && mobility(sq, true) > 0) {
+                return true;
+            }
         }
         return false;
     }
 
+    /**
+     * Return the number of legal moves of SIDE (ignoring whose turn it
+     * is), as if by legalMoves(SIDE).size(), but without making them.
+     */
+    int mobility(Piece side) {
+        int n = 0;
+        for (Square sq : SQUARE_LIST) {
+            if (moves(side, sq)) {
+                n += mobility(sq, false);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Return the number of squares to which the piece on FROM may move,
+     * ignoring whose turn it is (0 if FROM is empty).
+     */
+    int mobility(Square from) {
+        return get(from) == EMPTY ? 0 : mobility(from, false);
+    }
+
+    /**
+     * Return true iff the piece on SQ moves for SIDE in the sense of
+     * legalMoves(SIDE).
+     */
+    private boolean moves(Piece side, Square sq) {
+        Piece p = get(sq);
+        return p == side || (side == WHITE && p == KING);
+    }
+
+    /**
+     * Return the number of squares to which the (non-empty) piece on
+     * FROM may move, or, if FIRST, 1 as soon as one is found.
+     */
+    private int mobility(Square from, boolean first) {
+        boolean king = get(from) == KING;
+        int n = 0;
+        for (int dir = 0; dir < 4; dir += 1) {
+            for (int k = 1; ; k += 1) {
+                Square to = from.rookMove(dir, k);
+                if (to == null || get(to) != EMPTY) {
+                    break;
+                }
+                if (king || to != THRONE) {
+                    n += 1;
+                    if (first) {
+                        return n;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
     @Override
     public String toString() {
         return toString(true);
@@ -656,12 +686,78 @@ class Board {
      * of characters: the toString values of the current turn and Pieces.
      */
     String encodedBoard() {
-        char[] result = new char[Square.SQUARE_LIST.size() + 1];
-        result[0] = turn().toString().charAt(0);
+        return position().toString();
+    }
+
+    /**
+     * Set the occupancy masks from _board.
+     */
+    private void computeOccupancy() {
+        _occupiedLo = _occupiedHi = 0;
         for (Square sq : SQUARE_LIST) {
-            result[sq.index() + 1] = get(sq).toString().charAt(0);
+            if (get(sq) != EMPTY) {
+                int k = sq.index();
+                _occupiedLo |= k < 64 ? 1L << k : 0;
+                _occupiedHi |= k < 64 ? 0 : 1L << k;
+            }
         }
-        return new String(result);
+    }
+
+    /**
+     * Evaluate positions with NETWORK (none if null), keeping its
+     * accumulator up to date as the position changes.
+     */
+    void setNetwork(Network network) {
+        if (network == network()) {
+            return;
+        }
+        _accumulator = network == null ? null : network.accumulator();
+        refreshAccumulator();
+    }
+
+    /**
+     * Return the network set by setNetwork, or null if none.
+     */
+    Network network() {
+        return _accumulator == null ? null : _accumulator.network();
+    }
+
+    /**
+     * Return the value of the current position according to network(),
+     * which must not be null.
+     */
+    int networkScore() {
+        return _accumulator.network().score(_accumulator);
+    }
+
+    /**
+     * Recompute the accumulator (if any) from the current position,
+     * discarding its saved states.
+     */
+    private void refreshAccumulator() {
+        if (_accumulator == null) {
+            return;
+        }
+        _accumulator.clear();
+        for (Square sq : SQUARE_LIST) {
+            Piece p = get(sq);
+            if (p != EMPTY) {
+                _accumulator.add(p, sq);
+            }
+        }
+    }
+
+    /**
+     * Return an immutable copy of the current position, suitable for
+     * handing to other threads (e.g., a display).
+     */
+    Snapshot snapshot() {
+        Piece[] contents = new Piece[SQUARE_LIST.size()];
+        for (Square sq : SQUARE_LIST) {
+            contents[sq.index()] = get(sq);
+        }
+        return new Snapshot(contents, _turn, _winner, _repeated,
+                            _moveCount);
     }
 
     /**
@@ -701,9 +797,89 @@ class Board {
     private Square _kingpos;
 
     /**
-     * Hashet of encoded boards.
+     * My squares as seen by CaptureRules.
+     */
+    private final CaptureRules.Pieces _pieces = new CaptureRules.Pieces() {
+        @Override
+        public Piece get(int sq) {
+            return _board[sq % SIZE][sq / SIZE];
+        }
+
+        @Override
+        public void capture(int sq) {
+            put(EMPTY, Square.sq(sq));
+        }
+    };
+
+    /**
+     * The geometry of my squares, for CaptureRules.
+     */
+    private static final Geometry GEOMETRY = Geometry.of(SIZE);
+
+    /**
+     * The occupied squares, as bits: square k is bit k of _occupiedLo if
+     * k < 64, and otherwise bit k - 64 of _occupiedHi.
+     */
+    private long _occupiedLo, _occupiedHi;
+
+    /**
+     * The pieces of the current position, as in the words of a Position
+     * without its turn bit.
+     */
+    private long[] _packed = new long[3];
+
+    /**
+     * For each rook move FROM-TO, PATH_LO[k] and PATH_HI[k], where
+     * k = FROM.index() * NUM_SQUARES + TO.index(), hold the squares that
+     * must be empty for the move (those after FROM, through TO) in the
+     * form of _occupiedLo and _occupiedHi.
+     */
+    private static final long[] PATH_LO = new long[NUM_SQUARES * NUM_SQUARES],
+        PATH_HI = new long[NUM_SQUARES * NUM_SQUARES];
+
+    static {
+        for (Square from : SQUARE_LIST) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                long lo = 0, hi = 0;
+                for (int n = 1; from.rookMove(dir, n) != null; n += 1) {
+                    Square to = from.rookMove(dir, n);
+                    int k = to.index();
+                    lo |= k < 64 ? 1L << k : 0;
+                    hi |= k < 64 ? 0 : 1L << k;
+                    PATH_LO[from.index() * NUM_SQUARES + k] = lo;
+                    PATH_HI[from.index() * NUM_SQUARES + k] = hi;
+                }
+            }
+        }
+    }
+
+    /**
+     * The positions since the last clearUndo, the current one on top.
+     */
+    private Stack<Position> boars = new Stack<Position>();
+
+    /**
+     * The positions in boars, counted for finding repetitions.
+     */
+    private PositionCounts _history = new PositionCounts();
+
+    /**
+     * The history of the board I was copied from for a playout, whose
+     * positions also count as repetitions, or null (see copyForPlayout).
+     */
+    private PositionCounts _earlier;
+
+    /**
+     * Hidden-layer sums of the network evaluating this board, or null if
+     * none (see setNetwork).
+     */
+    private Network.Accumulator _accumulator;
+
+    /**
+     * Number of moves and undos done on this board while recording, for
+     * sampling BoardEvents.
      */
-    private Stack<String> boars = new Stack<String>();
+    private int _operations;
 
     /**
      * This is a variable which stores the capture counts of black.
@@ -0,0 +1,323 @@
+package tablut;
+
+import java.util.Arrays;
+
+import static tablut.Evaluation.*;
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Utils.*;
+
+/** A batch of up to capacity() positions laid out as parallel primitive
+ *  arrays (structure of arrays), for computing the same quantities of
+ *  many positions at once.  The contents of square k of position b are
+ *  the Piece ordinal cells()[k * capacity() + b], so that each square of
+ *  consecutive positions is contiguous, and the king's column and row
+ *  (or NO_KING) are kingCols()[b] and kingRows()[b].  The bulk
+ *  operations fill one int per position and use jdk.incubator.vector
+ *  (see VectorBatchKernel) when the program is run with --add-modules
+ *  jdk.incubator.vector, and otherwise plain loops, like Network.
+ *  @author Dhruv Krishnaswamy
+ */
+class BoardBatch {
+
+    /** Column and row recorded for the king of a position without one;
+     *  far enough from every square that no piece is near it. */
+    static final short NO_KING = -100;
+
+    /** An empty batch with room for CAPACITY positions. */
+    BoardBatch(int capacity) {
+        if (capacity <= 0) {
+            throw error("batch capacity must be positive");
+        }
+        _capacity = capacity;
+        _cells = new short[NUM_SQUARES * capacity];
+        _kingCols = new short[capacity];
+        _kingRows = new short[capacity];
+        _whiteToMove = new boolean[capacity];
+    }
+
+    /** Return the number of positions I can hold. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Return the number of positions I hold. */
+    int size() {
+        return _size;
+    }
+
+    /** Remove all positions. */
+    void clear() {
+        _size = 0;
+    }
+
+    /** Add the current position of BOARD, returning its index. */
+    int add(Board board) {
+        return add(board.position());
+    }
+
+    /** Add POSITION, returning its index. */
+    int add(Position position) {
+        if (_size == _capacity) {
+            throw error("batch is full");
+        }
+        int b = _size;
+        _kingCols[b] = _kingRows[b] = NO_KING;
+        for (Square sq : Square.SQUARE_LIST) {
+            Piece p = position.get(sq);
+            _cells[sq.index() * _capacity + b] = (short) p.ordinal();
+            if (p == KING) {
+                _kingCols[b] = (short) sq.col();
+                _kingRows[b] = (short) sq.row();
+            }
+        }
+        _whiteToMove[b] = position.turn() == WHITE;
+        _size += 1;
+        return b;
+    }
+
+    /** Return the contents of SQ in position B. */
+    Piece get(int b, Square sq) {
+        return PIECES[_cells[sq.index() * _capacity + b]];
+    }
+
+    /** Return the side to move in position B. */
+    Piece turn(int b) {
+        return _whiteToMove[b] ? WHITE : BLACK;
+    }
+
+    /** Set WHITE[b] to the number of white soldiers and BLACK[b] to the
+     *  number of black pieces of each position b. */
+    void material(int[] white, int[] black) {
+        KERNEL.count(this, 0, _size, WHITE.ordinal(), white);
+        KERNEL.count(this, 0, _size, BLACK.ordinal(), black);
+    }
+
+    /** Set RESULT[b] to the distance from the king to the nearest edge
+     *  in each position b (0 if there is no king). */
+    void kingEdgeDistance(int[] result) {
+        KERNEL.kingEdgeDistance(this, 0, _size, result);
+    }
+
+    /** Set ADJACENT[b] to the number of black pieces next to the king
+     *  and NEAR[b] to the number within two squares (in both directions)
+     *  of it in each position b. */
+    void kingAttackers(int[] adjacent, int[] near) {
+        KERNEL.kingAttackers(this, 0, _size, adjacent, near);
+    }
+
+    /** Set RESULT[b] to the number of legal moves of SIDE in each
+     *  position b, as by Board.mobility(SIDE). */
+    void mobility(Piece side, int[] result) {
+        if (side == WHITE) {
+            int[] king = new int[_size];
+            KERNEL.mobility(this, 0, _size, WHITE.ordinal(), false, result);
+            KERNEL.mobility(this, 0, _size, KING.ordinal(), false, king);
+            for (int b = 0; b < _size; b += 1) {
+                result[b] += king[b];
+            }
+        } else {
+            KERNEL.mobility(this, 0, _size, side.ordinal(), false, result);
+        }
+    }
+
+    /** Store the features of each position b (see Evaluation.features)
+     *  in FEATURES[b * NUM_FEATURES .. (b + 1) * NUM_FEATURES - 1]. */
+    void features(int[] features) {
+        int[][] columns = new int[NUM_FEATURES][_size];
+        KERNEL.count(this, 0, _size, WHITE.ordinal(), columns[WHITE_PIECES]);
+        KERNEL.count(this, 0, _size, BLACK.ordinal(), columns[BLACK_PIECES]);
+        KERNEL.kingEdgeDistance(this, 0, _size, columns[KING_EDGE_DISTANCE]);
+        KERNEL.kingAttackers(this, 0, _size, columns[KING_BLACK_ADJACENT],
+                             columns[KING_BLACK_NEAR]);
+        KERNEL.mobility(this, 0, _size, KING.ordinal(), false,
+                        columns[KING_MOBILITY]);
+        KERNEL.mobility(this, 0, _size, KING.ordinal(), true,
+                        columns[KING_OPEN_LINES]);
+        KERNEL.mobility(this, 0, _size, WHITE.ordinal(), false,
+                        columns[WHITE_MOBILITY]);
+        KERNEL.mobility(this, 0, _size, BLACK.ordinal(), false,
+                        columns[BLACK_MOBILITY]);
+        for (int b = 0; b < _size; b += 1) {
+            columns[WHITE_TO_MOVE][b] = _whiteToMove[b] ? 1 : 0;
+            for (int k = 0; k < NUM_FEATURES; k += 1) {
+                features[b * NUM_FEATURES + k] = columns[k][b];
+            }
+        }
+    }
+
+    /** Return my squares' contents (see the class comment). */
+    short[] cells() {
+        return _cells;
+    }
+
+    /** Return my kings' columns. */
+    short[] kingCols() {
+        return _kingCols;
+    }
+
+    /** Return my kings' rows. */
+    short[] kingRows() {
+        return _kingRows;
+    }
+
+    /** Return the name of the implementation of the bulk operations in
+     *  use. */
+    static String kernelName() {
+        return KERNEL.name();
+    }
+
+    /** The bulk operations on positions FROM to TO-1 of a batch, with
+     *  vector and scalar implementations.  Each stores its result for
+     *  position b in element b of its int arrays. */
+    abstract static class Kernel {
+        /** Count the squares holding the Piece with ordinal CODE in
+         *  BATCH into RESULT. */
+        abstract void count(BoardBatch batch, int from, int to, int code,
+                            int[] result);
+
+        /** Store the king's distance to the nearest edge (0 if none) in
+         *  BATCH into RESULT. */
+        abstract void kingEdgeDistance(BoardBatch batch, int from, int to,
+                                       int[] result);
+
+        /** Count the black pieces next to and within two squares of the
+         *  king in BATCH into ADJACENT and NEAR. */
+        abstract void kingAttackers(BoardBatch batch, int from, int to,
+                                    int[] adjacent, int[] near);
+
+        /** Count the squares to which the pieces with ordinal CODE in
+         *  BATCH may move (only edge squares if EDGES) into RESULT.  Only
+         *  the king may stop on the throne. */
+        abstract void mobility(BoardBatch batch, int from, int to,
+                               int code, boolean edges, int[] result);
+
+        /** Return the name of this implementation. */
+        abstract String name();
+    }
+
+    /** The bulk operations in plain loops. */
+    static class ScalarKernel extends Kernel {
+        @Override
+        void count(BoardBatch batch, int from, int to, int code,
+                   int[] result) {
+            short[] cells = batch.cells();
+            int cap = batch.capacity();
+            Arrays.fill(result, from, to, 0);
+            for (int k = 0; k < NUM_SQUARES; k += 1) {
+                for (int b = from; b < to; b += 1) {
+                    if (cells[k * cap + b] == code) {
+                        result[b] += 1;
+                    }
+                }
+            }
+        }
+
+        @Override
+        void kingEdgeDistance(BoardBatch batch, int from, int to,
+                              int[] result) {
+            int last = Board.SIZE - 1;
+            for (int b = from; b < to; b += 1) {
+                int c = batch.kingCols()[b], r = batch.kingRows()[b];
+                result[b] = Math.max(0, Math.min(Math.min(c, last - c),
+                                                 Math.min(r, last - r)));
+            }
+        }
+
+        @Override
+        void kingAttackers(BoardBatch batch, int from, int to,
+                           int[] adjacent, int[] near) {
+            short[] cells = batch.cells();
+            int cap = batch.capacity();
+            Arrays.fill(adjacent, from, to, 0);
+            Arrays.fill(near, from, to, 0);
+            for (Square sq : Square.SQUARE_LIST) {
+                int base = sq.index() * cap;
+                for (int b = from; b < to; b += 1) {
+                    if (cells[base + b] != BLACK_CODE) {
+                        continue;
+                    }
+                    int dc = Math.abs(sq.col() - batch.kingCols()[b]),
+                        dr = Math.abs(sq.row() - batch.kingRows()[b]);
+                    if (dc + dr == 1) {
+                        adjacent[b] += 1;
+                    }
+                    if (dc <= 2 && dr <= 2) {
+                        near[b] += 1;
+                    }
+                }
+            }
+        }
+
+        @Override
+        void mobility(BoardBatch batch, int from, int to, int code,
+                      boolean edges, int[] result) {
+            short[] cells = batch.cells();
+            int cap = batch.capacity();
+            Arrays.fill(result, from, to, 0);
+            for (Square sq : Square.SQUARE_LIST) {
+                for (int b = from; b < to; b += 1) {
+                    if (cells[sq.index() * cap + b] != code) {
+                        continue;
+                    }
+                    for (int dir = 0; dir < 4; dir += 1) {
+                        for (int n = 1; ; n += 1) {
+                            Square t = sq.rookMove(dir, n);
+                            if (t == null
+                                || cells[t.index() * cap + b] != EMPTY_CODE) {
+                                break;
+                            }
+                            if (counts(t, code, edges)) {
+                                result[b] += 1;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+    }
+
+    /** Return true iff a move to T by the piece with ordinal CODE counts
+     *  for Kernel.mobility with EDGES. */
+    static boolean counts(Square t, int code, boolean edges) {
+        return (code == KING_CODE || t != Board.THRONE)
+            && (!edges || t.isEdge());
+    }
+
+    /** Return the vector kernel if the vector API is available, and
+     *  otherwise the scalar kernel. */
+    private static Kernel kernel() {
+        try {
+            return (Kernel) Class.forName("tablut.VectorBatchKernel")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return new ScalarKernel();
+        }
+    }
+
+    /** Ordinals of the Pieces, as held in cells. */
+    static final int EMPTY_CODE = EMPTY.ordinal(),
+        BLACK_CODE = BLACK.ordinal(), KING_CODE = KING.ordinal();
+
+    /** The Pieces, by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** The kernel in use. */
+    private static final Kernel KERNEL = kernel();
+
+    /** Number of positions I can hold. */
+    private final int _capacity;
+    /** Number of positions I hold. */
+    private int _size;
+    /** Contents of the squares (see the class comment). */
+    private final short[] _cells;
+    /** Columns and rows of the kings, or NO_KING. */
+    private final short[] _kingCols, _kingRows;
+    /** True for positions with white to move. */
+    private final boolean[] _whiteToMove;
+}
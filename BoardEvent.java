@@ -0,0 +1,30 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Java Flight Recorder event recording a sample of the moves made and
+ *  undone on Boards (one in every Board.EVENT_SAMPLE_INTERVAL), with
+ *  their durations, since recording every one would distort searches
+ *  (disabled by default; see CommandEvent).
+ *  @author Dhruv Krishnaswamy
+ */
+@Name("tablut.BoardOperation")
+@Label("Board Operation")
+@Category("Tablut")
+@Description("A sampled move or undo on a board")
+@Enabled(false)
+class BoardEvent extends Event {
+
+    /** The operation: "makeMove" or "undo". */
+    @Label("Operation")
+    String operation;
+
+    /** The number of moves made on the board afterward. */
+    @Label("Move Count")
+    int moveCount;
+}
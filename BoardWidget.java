@@ -2,18 +2,32 @@ package tablut;
 
 import ucb.gui2.Pad;
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.Font;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import static tablut.Piece.*;
 import static tablut.Square.sq;
 
 
-/** A widget that displays a Tablut game.
+/** A widget that displays a Tablut game.  The game thread hands it
+ *  immutable Snapshots of the board through an atomic reference, so
+ *  neither painting nor updating ever waits for the other.  The grid and
+ *  throne are drawn once into a background image and each kind of piece
+ *  once into a sprite, so that painting is a matter of copying images.
+ *  On each update, only the squares that changed (the move and any
+ *  captures) are repainted, and a moved piece slides to its new square.
  *  @author Dhruv Krishnaswamy
  */
 class BoardWidget extends Pad {
@@ -41,6 +55,15 @@ class BoardWidget extends Pad {
         SQUARE_SIDE = 30,
         BOARD_SIDE = SQUARE_SIDE * SIZE + 2 * OFFSET + MARGIN;
 
+    /** Space between a piece and the edges of its square (in pixels). */
+    static final int PIECE_INSET = 3;
+
+    /** Duration of the animation of a move, and time between its frames
+     *  (in milliseconds). */
+    static final int
+        ANIMATION_MILLIS = 150,
+        FRAME_MILLIS = 15;
+
     /** The font in which to render the "K" in the king. */
     static final Font KING_FONT = new Font("Serif", Font.BOLD, 18);
     /** The font for labeling rows and columns. */
@@ -53,11 +76,12 @@ class BoardWidget extends Pad {
 
     /** A graphical representation of a Tablut board that sends commands
      *  derived from mouse clicks to COMMANDS.  */
-    BoardWidget(ArrayBlockingQueue<String> commands) {
+    BoardWidget(BlockingQueue<String> commands) {
         _commands = commands;
         setMouseHandler("click", this::mouseClicked);
         setPreferredSize(BOARD_SIDE, BOARD_SIDE);
         _acceptingMoves = false;
+        _animator = new Timer(FRAME_MILLIS, e -> animate());
     }
 
     /** Draw the bare board G.  */
@@ -78,15 +102,86 @@ class BoardWidget extends Pad {
 
     }
 
-    @Override
-    public synchronized void paintComponent(Graphics2D g) {
-        drawGrid(g);
-        Square.SQUARE_LIST.iterator().forEachRemaining(s -> drawPiece(g, s));
+    /** Return the image of the bare board, drawing it the first time. */
+    private BufferedImage background() {
+        if (_background == null) {
+            _background = new BufferedImage(BOARD_SIDE, BOARD_SIDE,
+                                            BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = _background.createGraphics();
+            drawGrid(g);
+            g.dispose();
+        }
+        return _background;
     }
 
-    /** Draw the contents of S on G. */
-    private void drawPiece(Graphics2D g, Square s) {
+    /** Return the image of PIECE (not EMPTY), drawing it the first
+     *  time. */
+    private static BufferedImage sprite(Piece piece) {
+        BufferedImage image = SPRITES[piece.ordinal()];
+        if (image == null) {
+            int side = SQUARE_SIDE - 2 * PIECE_INSET;
+            image = new BufferedImage(side + 1, side + 1,
+                                      BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = image.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                               RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(piece == BLACK ? BLACK_COLOR : WHITE_COLOR);
+            g.fillOval(0, 0, side, side);
+            g.setColor(GRID_LINE_COLOR);
+            g.setStroke(new BasicStroke(1));
+            g.drawOval(0, 0, side, side);
+            if (piece == KING) {
+                g.setFont(KING_FONT);
+                FontMetrics metrics = g.getFontMetrics();
+                g.drawString("K", (side - metrics.stringWidth("K")) / 2,
+                             (side + metrics.getAscent()
+                              - metrics.getDescent()) / 2);
+            }
+            g.dispose();
+            SPRITES[piece.ordinal()] = image;
+        }
+        return image;
+    }
+
+    @Override
+    public void paintComponent(Graphics2D g) {
+        Snapshot board = _board.get();
+        Animation moving = _animation;
+        g.drawImage(background(), 0, 0, null);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, BOARD_SIDE, BOARD_SIDE);
+        }
+        int col0 = col(clip.x), col1 = col(clip.x + clip.width - 1),
+            row0 = row(clip.y + clip.height - 1), row1 = row(clip.y);
+        for (int c = col0; c <= col1; c += 1) {
+            for (int r = row0; r <= row1; r += 1) {
+                Square s = sq(c, r);
+                if (moving == null || s != moving._to) {
+                    drawPiece(g, board, s);
+                }
+            }
+        }
+        if (moving != null) {
+            double t = moving.fraction(System.currentTimeMillis());
+            int x = (int) Math.round(cx(moving._from)
+                                     + t * (cx(moving._to)
+                                            - cx(moving._from))),
+                y = (int) Math.round(cy(moving._from)
+                                     + t * (cy(moving._to)
+                                            - cy(moving._from)));
+            g.drawImage(sprite(moving._piece), x + PIECE_INSET,
+                        y + PIECE_INSET, null);
+        }
+    }
 
+    /** Draw the contents of S on BOARD on G. */
+    private void drawPiece(Graphics2D g, Snapshot board, Square s) {
+        Piece piece = board.get(s);
+        if (piece != EMPTY) {
+            g.drawImage(sprite(piece), cx(s) + PIECE_INSET,
+                        cy(s) + PIECE_INSET, null);
+        }
     }
 
     /** Handle a click on S. */
@@ -97,7 +192,7 @@ class BoardWidget extends Pad {
     }
 
     /** Handle mouse click event E. */
-    private synchronized void mouseClicked(String unused, MouseEvent e) {
+    private void mouseClicked(String unused, MouseEvent e) {
         int xpos = e.getX(), ypos = e.getY();
         int x = (xpos - OFFSET - MARGIN) / SQUARE_SIDE,
             y = (OFFSET - ypos) / SQUARE_SIDE + SIZE - 1;
@@ -107,10 +202,95 @@ class BoardWidget extends Pad {
         }
     }
 
-    /** Revise the displayed board according to BOARD. */
-    synchronized void update(Board board) {
-        _board.copy(board);
-        repaint();
+    /** Revise the displayed board according to BOARD, repainting only
+     *  the squares that differ from the board displayed before, and
+     *  animating the piece moved, if there is one.  An animation still
+     *  under way is cut short, and its path repainted too.  Returns the
+     *  region repainted, or null if nothing changed. */
+    Rectangle update(Snapshot board) {
+        Snapshot old = _board.getAndSet(board);
+        Rectangle dirty = changedRegion(old, board);
+        if (dirty == null) {
+            return null;
+        }
+        Animation previous = _animation;
+        if (previous != null) {
+            dirty = dirty.union(path(previous._from, previous._to));
+        }
+        Square[] slide = slide(old, board);
+        if (slide != null) {
+            _animation = new Animation(board.get(slide[1]), slide[0],
+                                       slide[1], System.currentTimeMillis());
+            SwingUtilities.invokeLater(_animator::start);
+        } else {
+            _animation = null;
+        }
+        me.repaint(dirty.x, dirty.y, dirty.width + 1, dirty.height + 1);
+        return dirty;
+    }
+
+    /** Return the smallest rectangle containing the squares whose
+     *  contents differ between OLD and BOARD, or null if there are
+     *  none. */
+    Rectangle changedRegion(Snapshot old, Snapshot board) {
+        Rectangle dirty = null;
+        for (Square s : Square.SQUARE_LIST) {
+            if (old.get(s) != board.get(s)) {
+                Rectangle r = path(s, s);
+                dirty = dirty == null ? r : dirty.union(r);
+            }
+        }
+        return dirty;
+    }
+
+    /** Return the squares { FROM, TO } of the piece that moved from FROM
+     *  to TO if BOARD follows OLD by that one move, and otherwise
+     *  null. */
+    static Square[] slide(Snapshot old, Snapshot board) {
+        if (board.moveCount() != old.moveCount() + 1) {
+            return null;
+        }
+        Square to = null;
+        for (Square s : Square.SQUARE_LIST) {
+            if (old.get(s) == EMPTY && board.get(s) != EMPTY) {
+                if (to != null) {
+                    return null;
+                }
+                to = s;
+            }
+        }
+        if (to == null) {
+            return null;
+        }
+        for (Square s : Square.SQUARE_LIST) {
+            if (old.get(s) == board.get(to)
+                && board.get(s) == EMPTY && s.isRookMove(to)) {
+                return new Square[] { s, to };
+            }
+        }
+        return null;
+    }
+
+    /** Show the next frame of the current animation, if any. */
+    private void animate() {
+        Animation moving = _animation;
+        if (moving == null) {
+            _animator.stop();
+            return;
+        }
+        if (moving.fraction(System.currentTimeMillis()) >= 1) {
+            _animation = null;
+            _animator.stop();
+        }
+        Rectangle path = path(moving._from, moving._to);
+        me.repaint(path.x, path.y, path.width + 1, path.height + 1);
+    }
+
+    /** Return the smallest rectangle containing squares FROM and TO, and
+     *  so the path of a piece sliding between them. */
+    private Rectangle path(Square from, Square to) {
+        return new Rectangle(cx(from), cy(from), SQUARE_SIDE, SQUARE_SIDE)
+            .union(new Rectangle(cx(to), cy(to), SQUARE_SIDE, SQUARE_SIDE));
     }
 
     /** Turn on move collection iff COLLECTING, and clear any current
@@ -145,12 +325,63 @@ class BoardWidget extends Pad {
         return cy(s.row());
     }
 
+    /** Return the column containing x-pixel coordinate X, clamped to the
+     *  board. */
+    private int col(int x) {
+        return Math.max(0, Math.min(SIZE - 1,
+                                    Math.floorDiv(x - OFFSET - MARGIN,
+                                                  SQUARE_SIDE)));
+    }
+
+    /** Return the row containing y-pixel coordinate Y, clamped to the
+     *  board. */
+    private int row(int y) {
+        return Math.max(0, Math.min(SIZE - 1,
+                                    SIZE - 1 - Math.floorDiv(y - OFFSET,
+                                                             SQUARE_SIDE)));
+    }
+
+    /** A piece sliding from one square to another. */
+    private static class Animation {
+        /** PIECE sliding from FROM to TO, starting at time START. */
+        Animation(Piece piece, Square from, Square to, long start) {
+            _piece = piece;
+            _from = from;
+            _to = to;
+            _start = start;
+        }
+
+        /** Return the fraction of the slide done at time NOW (0 to 1). */
+        double fraction(long now) {
+            return Math.min(1.0, (now - _start) / (double) ANIMATION_MILLIS);
+        }
+
+        /** The moving piece. */
+        private final Piece _piece;
+        /** Where it started and where it is going. */
+        private final Square _from, _to;
+        /** When it started. */
+        private final long _start;
+    }
+
+    /** Images of the pieces, indexed by Piece.ordinal(), drawn when
+     *  first needed. */
+    private static final BufferedImage[] SPRITES =
+        new BufferedImage[Piece.values().length];
+
     /** Queue on which to post move commands (from mouse clicks). */
-    private ArrayBlockingQueue<String> _commands;
+    private BlockingQueue<String> _commands;
     /** Board being displayed. */
-    private final Board _board = new Board();
+    private final AtomicReference<Snapshot> _board =
+        new AtomicReference<>(new Board().snapshot());
+    /** Image of the bare board, or null until first needed. */
+    private BufferedImage _background;
+    /** The move being animated, or null. */
+    private volatile Animation _animation;
+    /** Timer that shows the frames of animations. */
+    private final Timer _animator;
 
     /** True iff accepting moves from user. */
-    private boolean _acceptingMoves;
+    private volatile boolean _acceptingMoves;
 
 }
@@ -0,0 +1,170 @@
+package tablut;
+
+import static tablut.Piece.*;
+
+/** The capture rules of Tablut as Board has always played them, shared by
+ *  Board and TaflBoard so that the two agree on every game.  Squares are
+ *  numbered as by Geometry (on the 9x9 board, as by Square.index()), and
+ *  each board presents its contents through a Pieces.  The throne and its
+ *  four neighbors are special: a white piece next to the throne is taken
+ *  against the king on it only when black holds three of the throne's
+ *  neighbors, and the king on the throne is taken only when surrounded
+ *  on all four sides, and next to it only with black on both squares
+ *  diagonally beside the capturing line.  Elsewhere, the king falls to
+ *  two black pieces like any other piece.  The rules are applied in three
+ *  passes per direction, each seeing the captures of the last.
+ *  @author Dhruv Krishnaswamy
+ */
+final class CaptureRules {
+
+    /** A board as seen by the capture rules. */
+    interface Pieces {
+        /** Return the contents of square SQ. */
+        Piece get(int sq);
+
+        /** Remove the piece on SQ, which has been captured. */
+        void capture(int sq);
+    }
+
+    /** Make on BOARD, whose geometry is GEOMETRY, the captures of the
+     *  piece next to TO in direction DIR by the piece that just moved to
+     *  TO, assuming that there is a square two steps from TO in that
+     *  direction.  Returns true iff the king is captured. */
+    static boolean capture(Geometry geometry, Pieces board, int to,
+                           int dir) {
+        int middle = geometry.step(to, dir),
+            beyond = geometry.step(middle, dir);
+        boolean king = firstPass(geometry, board, to, middle, beyond, dir);
+        king |= secondPass(geometry, board, to, middle, beyond);
+        king |= thirdPass(geometry, board, to, middle, beyond);
+        return king;
+    }
+
+    /** Apply the rules away from the throne and for the king next to it
+     *  to the piece on MIDDLE between SQ0 and SQ2, in direction DIR from
+     *  SQ0, on BOARD with GEOMETRY.  Returns true iff the king is
+     *  captured. */
+    private static boolean firstPass(Geometry geometry, Pieces board,
+                                     int sq0, int middle, int sq2,
+                                     int dir) {
+        int throne = geometry.throne();
+        Piece p0 = board.get(sq0), p2 = board.get(sq2),
+            pMiddle = board.get(middle);
+        if (sq2 != throne && middle != throne && sq0 != throne) {
+            if (p2.side() == p0.side()) {
+                if (pMiddle == p0.opponent()) {
+                    take(board, middle);
+                }
+            } else if ((p0 == KING || p2 == KING)
+                       && (p0 == WHITE || p2 == WHITE) && pMiddle == BLACK) {
+                take(board, middle);
+            }
+        }
+        if (pMiddle != KING) {
+            return false;
+        }
+        int diag1 = geometry.step(middle, (dir + 1) & 3),
+            diag2 = geometry.step(middle, (dir + 3) & 3);
+        if ((p0 == BLACK || p2 == BLACK)
+            && (sq2 == throne || sq0 == throne)) {
+            if (get(board, diag1) == BLACK && get(board, diag2) == BLACK) {
+                take(board, middle);
+                return true;
+            }
+        } else if (p0 == BLACK && p2 == BLACK) {
+            if ((get(board, diag1) == BLACK || get(board, diag2) == BLACK)
+                && (diag1 == throne || diag2 == throne)) {
+                take(board, middle);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Apply the rules for the king on the throne as an ally and for two
+     *  pieces of one side to the piece on MIDDLE between SQ0 and SQ2 on
+     *  BOARD with GEOMETRY.  Returns true iff the king is captured. */
+    private static boolean secondPass(Geometry geometry, Pieces board,
+                                      int sq0, int middle, int sq2) {
+        int throne = geometry.throne();
+        Piece p0 = board.get(sq0), p2 = board.get(sq2),
+            pMiddle = board.get(middle);
+        if ((sq2 == throne && p2 == KING || p0 == KING && sq0 == throne)
+            && (p0 == BLACK || p2 == BLACK) && pMiddle == WHITE
+            && blackAroundThrone(geometry, board) >= 3) {
+            take(board, middle);
+        }
+        if (p0 == BLACK && p2 == BLACK && pMiddle == WHITE
+            || p0 == WHITE && p2 == WHITE && pMiddle == BLACK) {
+            take(board, middle);
+        }
+        if (p0 == BLACK && p2 == BLACK && pMiddle == KING
+            && middle != throne) {
+            take(board, middle);
+            return true;
+        }
+        return false;
+    }
+
+    /** Apply the rules for pieces moving to or against the throne and for
+     *  the king on it to the piece on MIDDLE between SQ0 and SQ2 on BOARD
+     *  with GEOMETRY.  Returns true iff the king is captured. */
+    private static boolean thirdPass(Geometry geometry, Pieces board,
+                                     int sq0, int middle, int sq2) {
+        int throne = geometry.throne();
+        Piece p0 = board.get(sq0), p2 = board.get(sq2),
+            pMiddle = board.get(middle);
+        boolean king = false;
+        if (sq0 == throne && p0 == KING) {
+            if (pMiddle == p2.opponent()) {
+                take(board, middle);
+            }
+        } else if (sq2 == throne && p2 == KING) {
+            if (p0 == WHITE && pMiddle == BLACK) {
+                take(board, middle);
+            }
+        }
+        if (pMiddle == KING && middle == throne
+            && blackAroundThrone(geometry, board) == 4) {
+            take(board, middle);
+            king = true;
+        }
+        if (sq2 == throne
+            && board.get(geometry.step(throne, EAST)) == KING
+            && board.get(geometry.step(throne, WEST)) == WHITE
+            && board.get(geometry.step(throne, SOUTH)) == WHITE
+            && (p0 == BLACK && pMiddle == WHITE
+                || p0 == WHITE && pMiddle == BLACK)) {
+            take(board, middle);
+        }
+        return king;
+    }
+
+    /** Return the number of black pieces next to the throne of GEOMETRY
+     *  on BOARD. */
+    private static int blackAroundThrone(Geometry geometry, Pieces board) {
+        int n = 0;
+        for (int d = 0; d < 4; d += 1) {
+            if (board.get(geometry.step(geometry.throne(), d)) == BLACK) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Return the contents of SQ on BOARD, or EMPTY if SQ < 0, off the
+     *  board. */
+    private static Piece get(Pieces board, int sq) {
+        return sq < 0 ? EMPTY : board.get(sq);
+    }
+
+    /** Capture the piece on SQ of BOARD, if any. */
+    private static void take(Pieces board, int sq) {
+        if (board.get(sq) != EMPTY) {
+            board.capture(sq);
+        }
+    }
+
+    /** Directions, as for Geometry.rayStart. */
+    private static final int EAST = 1, SOUTH = 2, WEST = 3;
+}
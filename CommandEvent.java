@@ -0,0 +1,33 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Java Flight Recorder event recording the execution of one command
+ *  by a Controller, with its duration.  Like the other Tablut events
+ *  (SearchEvent, BoardEvent), it is disabled by default, costing next to
+ *  nothing, and is enabled for a recording with, e.g.,
+ *  <pre>
+ *     java -XX:StartFlightRecording:+tablut.Command#enabled=true,...
+ *  </pre>
+ *  @author Dhruv Krishnaswamy
+ */
+@Name("tablut.Command")
+@Label("Command")
+@Category("Tablut")
+@Description("Execution of a command by a game controller")
+@Enabled(false)
+class CommandEvent extends Event {
+
+    /** The kind of command: its first word, or "move". */
+    @Label("Command Type")
+    String type;
+
+    /** True iff the command was rejected as erroneous. */
+    @Label("Rejected")
+    boolean rejected;
+}
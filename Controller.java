@@ -1,14 +1,13 @@
 package tablut;
 
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
-import java.util.function.Consumer;
 
 import static tablut.Utils.*;
-import static tablut.Square.*;
 import static tablut.Piece.*;
 
 /** The input/output and GUI controller for play of Tablut.
@@ -24,13 +23,25 @@ final class Controller {
      *  non-null, copies all commands to it. If STRICT, exits the
      *  program with non-zero code on receiving an erroneous move from a
      *  player. */
-    Controller(View view, PrintStream logFile, Reporter reporter,
+    Controller(View view, AsyncLog logFile, Reporter reporter,
                Player manualPlayerTemplate, Player autoPlayerTemplate,
                boolean strict) {
+        this(view, logFile, reporter, manualPlayerTemplate,
+             autoPlayerTemplate, strict, new Scanner(System.in), System.out);
+    }
+
+    /** As for the constructor above, but reading commands from INPUT and
+     *  writing prompts and board dumps to OUTPUT rather than the standard
+     *  input and output.  This allows several Controllers, each playing
+     *  its own game, to share one program (see GameServer). */
+    Controller(View view, AsyncLog logFile, Reporter reporter,
+               Player manualPlayerTemplate, Player autoPlayerTemplate,
+               boolean strict, Scanner input, PrintStream output) {
         _view = view;
         _playing = false;
         _logFile = logFile;
-        _input = new Scanner(System.in);
+        _input = input;
+        _output = output;
         _autoPlayerTemplate = autoPlayerTemplate;
         _manualPlayerTemplate = manualPlayerTemplate;
         _nonPlayer = manualPlayerTemplate.create(EMPTY, this);
@@ -40,19 +51,50 @@ final class Controller {
         _strict = strict;
     }
 
+    /** A headless Controller for a game between automated players that
+     *  the caller drives itself (see Arena), reporting to REPORTER.  It
+     *  has no view or log, never reads input, and discards its output.
+     *  Its players are as for a text game with white automated, so that
+     *  commands such as auto, manual, and stats act as usual, but they
+     *  are never asked for moves. */
+    Controller(Reporter reporter) {
+        this(new NullView(), null, reporter, new TextPlayer(), new AI(),
+             false, null, new PrintStream(OutputStream.nullOutputStream()));
+    }
+
     /** Play Tablut. */
     void play() {
         _playing = true;
         _winner = null;
         _board.init();
+        if (_tafl != null) {
+            _tafl.init();
+        }
+        startGame();
+        announceNewGame();
+        try {
+            playCommands();
+        } finally {
+            endGame();
+            closeLog();
+        }
+    }
+
+    /** Read and execute commands until the end of play. */
+    private void playCommands() {
         while (_playing) {
             _view.update(this);
             String command;
             if (_winner == null) {
-                if (_board.turn() == WHITE) {
-                    command = _white.myMove();
-                } else {
-                    command = _black.myMove();
+                Player player = turn() == WHITE ? _white : _black;
+                long start = System.nanoTime();
+                command = player.myMove();
+                if (!player.isManual()) {
+                    AI_MOVE_LATENCY.record(System.nanoTime() - start);
+                }
+                if (_reportStats && player.stats() != null) {
+                    reportNote("%s search: %s", turn().toName(),
+                               player.stats().lastMove());
                 }
             } else {
                 command = _nonPlayer.myMove();
@@ -65,21 +107,64 @@ final class Controller {
             } catch (IllegalArgumentException excp) {
                 reportError("Error: %s%n", excp.getMessage());
                 if (_strict) {
+                    closeLog();
                     System.exit(1);
                 }
             }
         }
+    }
+
+    /** Write out and close the log, if any. */
+    private void closeLog() {
         if (_logFile != null) {
             _logFile.close();
         }
     }
 
     /** Return the current board.  The value returned should not be
-     *  modified. */
+     *  modified.  It is the board of the game in progress unless that is
+     *  played on another size (see taflBoard). */
     Board board() {
         return _board;
     }
 
+    /** Return the board of the game in progress if it is not played on
+     *  the standard Board.SIZE x Board.SIZE board (see the size command),
+     *  and otherwise null.  The value returned should not be modified. */
+    TaflBoard taflBoard() {
+        return _tafl;
+    }
+
+    /** Return the number of squares on a side of the board in play. */
+    int size() {
+        return _tafl == null ? Board.SIZE : _tafl.geometry().size();
+    }
+
+    /** Return the number of moves (by both sides) that may yet be made
+     *  under the move limit in the game in progress, on whichever board
+     *  it is played, or Integer.MAX_VALUE if there is no limit. */
+    int movesLeft() {
+        return _tafl == null ? _board.movesLeft() : _tafl.movesLeft();
+    }
+
+    /** Return the position in play, as by Board.encodedBoard(). */
+    String encodedBoard() {
+        return _tafl == null ? _board.encodedBoard() : _tafl.encoded();
+    }
+
+    /** Return the side to move in the game in play. */
+    private Piece turn() {
+        if (_tafl == null) {
+            return _board.turn();
+        }
+        return _tafl.turn() == TaflBoard.WHITE_SIDE ? WHITE : BLACK;
+    }
+
+    /** Return the winner of the current game, or null if none. */
+    Piece winner() {
+        return _winner;
+    }
+
     /** Return a random integer in the range 0 inclusive to U, exclusive.
      *  Available for use by AIs that use random selections in some cases.
      *  Once setRandomSeed is called with a particular value, this method
@@ -99,9 +184,12 @@ final class Controller {
      *  prompts for the line.  Trims the returned line (if any) of all
      *  leading and trailing whitespace. First issues a prompt iff PROMPT. */
     String readLine(boolean prompt) {
+        if (_input == null) {
+            return null;
+        }
         if (prompt) {
-            System.out.print("> ");
-            System.out.flush();
+            _output.print("> ");
+            _output.flush();
         }
         if (_input.hasNextLine()) {
             return _input.nextLine().trim();
@@ -122,6 +210,7 @@ final class Controller {
 
     /** Report error by calling reportError(FORMAT, ARGS) on my reporter. */
     void reportError(String format, Object... args) {
+        ERRORS.increment();
         _reporter.reportError(format, args);
     }
 
@@ -130,8 +219,9 @@ final class Controller {
         _reporter.reportNote(format, args);
     }
 
-    /** Report move by calling reportMove(MOVE) on my reporter. */
-    void reportMove(Move move) {
+    /** Report move by calling reportMove(MOVE), the text of a move, on my
+     *  reporter. */
+    void reportMove(String move) {
         _reporter.reportMove(move);
     }
 
@@ -139,85 +229,322 @@ final class Controller {
      *  as for String.format. */
     void logComment(String format, Object... args) {
         if (_logFile != null) {
-            _logFile.printf("# " + format + "%n", args);
-            _logFile.flush();
-        }
-    }
-
-    /** A Command is pair (<pattern>, <processor>), where <pattern> is a
-     *  Matcher that matches instances of a particular command, and
-     *  <processor> is a functional object whose .accept method takes a
-     *  successfully matched Matcher and performs some operation. */
-    private static class Command {
-        /** A new Command that matches PATN (a regular expression) and uses
-         *  PROCESSOR to process commands that match the pattern. */
-        Command(String patn, Consumer<Matcher> processor) {
-            _matcher = Pattern.compile(patn).matcher("");
-            _processor = processor;
-        }
-
-        /** A Matcher matching my pattern. */
-        protected final Matcher _matcher;
-        /** The function object that implements my command. */
-        protected final Consumer<Matcher> _processor;
-    }
-
-    /** A list of Commands describing the valid textual commands to the
-     *  Tablut program and the methods to process them. */
-    private Command[] _commands = {
-        new Command("quit$", this::doQuit),
-        new Command("new$", this::doNew),
-        new Command("seed\\s+(\\d+)$", this::doSeed),
-        new Command("dump$", this::doDump),
-        new Command("undo$", this::doUndo),
-        new Command("manual\\s+(white|black)$", this::doManual),
-        new Command("auto\\s+(white|black)$", this::doAuto),
-        new Command("limit\\s+(\\d+)$", this::doLimit),
-        new Command("toggle\\s+" + SQ + "$", this::doToggle),
-        new Command(Move.MOVE_PATTERN.pattern(), this::doMove)
-    };
-
-    /** A Matcher whose Pattern matches comments. */
-    private static final Matcher COMMENT = Pattern.compile("#.*").matcher("");
+            _logFile.printf("# " + format, args);
+        }
+    }
+
+    /** The regular expression for an engine description (see engine),
+     *  as a group. */
+    static final String ENGINE =
+        "(ai(?::\\d+(?::(?:classic|nnue))?)?|mcts(?::\\d+){0,3})";
+
+    /** A Pattern matching a whole engine description. */
+    private static final Pattern ENGINE_PATTERN = Pattern.compile(ENGINE);
+
+    /** The most words in any valid command. */
+    private static final int MAX_WORDS = 3;
 
     /** Check that CMND is one of the valid Tablut commands and execute it, if
-     *  so, raising an IllegalArgumentException otherwise. */
-    private void executeCommand(String cmnd) {
+     *  so, raising an IllegalArgumentException otherwise, recording a
+     *  CommandEvent when they are enabled.  Replayer also executes
+     *  commands here. */
+    void executeCommand(String cmnd) {
         if (_logFile != null) {
             _logFile.println(cmnd);
-            _logFile.flush();
         }
+        COMMANDS.increment();
+        if (flightRecording()) {
+            dispatchRecorded(cmnd);
+        } else {
+            dispatch(cmnd);
+        }
+    }
+
+    /** Execute CMND as for dispatch, recording a CommandEvent. */
+    private void dispatchRecorded(String cmnd) {
+        CommandEvent event = new CommandEvent();
+        event.begin();
+        try {
+            dispatch(cmnd);
+        } catch (IllegalArgumentException excp) {
+            event.rejected = true;
+            throw excp;
+        } finally {
+            if (event.shouldCommit()) {
+                event.type = commandType(cmnd);
+                event.commit();
+            }
+        }
+    }
+
+    /** Return the kind of command CMND is: "move" if it looks like a
+     *  move on a board of some size, and otherwise its first word in
+     *  lower case ("" if none). */
+    static String commandType(String cmnd) {
+        String[] words = cmnd.trim().split("\\s+", 2);
+        if (LARGEST.move(words[0], 0, words[0].length()) >= 0) {
+            return "move";
+        }
+        return words[0].toLowerCase();
+    }
 
-        COMMENT.reset(cmnd);
-        cmnd = COMMENT.replaceFirst("").trim().toLowerCase();
+    /** Execute CMND if it is one of the valid Tablut commands, raising an
+     *  IllegalArgumentException otherwise.  Commands are recognized in one
+     *  pass: CMND is split into words up to any comment, and the command
+     *  is chosen by its first characters, without regular expressions or
+     *  copies of the line.  Letters may be in either case. */
+    private void dispatch(String cmnd) {
 
-        if (cmnd.isEmpty()) {
+        int end = cmnd.indexOf('#');
+        int n = splitWords(cmnd, end < 0 ? cmnd.length() : end);
+        if (n == 0) {
             return;
         }
-        for (Command parser : _commands) {
-            parser._matcher.reset(cmnd);
-            if (parser._matcher.matches()) {
-                parser._processor.accept(parser._matcher);
-                return;
+        int start = _wordStart[0], len = _wordEnd[0] - start;
+        if (n == 1 && len >= 4 && Character.isDigit(cmnd.charAt(start + 1))) {
+            if (_tafl != null) {
+                int move = _tafl.geometry().move(cmnd, start, _wordEnd[0]);
+                if (move >= 0) {
+                    doMove(move);
+                    return;
+                }
+            } else {
+                Move move = Move.mv(cmnd, start, _wordEnd[0]);
+                if (move != null) {
+                    doMove(move);
+                    return;
+                }
             }
+        } else if (n <= MAX_WORDS) {
+            switch (Character.toLowerCase(cmnd.charAt(start))) {
+            case 'q':
+                if (n == 1 && isWord(cmnd, 0, "quit")) {
+                    doQuit();
+                    return;
+                }
+                break;
+            case 'n':
+                if (n == 1 && isWord(cmnd, 0, "new")) {
+                    doNew();
+                    return;
+                }
+                break;
+            case 'd':
+                if (n == 1 && isWord(cmnd, 0, "dump")) {
+                    doDump();
+                    return;
+                }
+                break;
+            case 'u':
+                if (n == 1 && isWord(cmnd, 0, "undo")) {
+                    doUndo();
+                    return;
+                }
+                break;
+            case 's':
+                if (n == 2 && isWord(cmnd, 0, "seed") && isNumber(cmnd, 1)) {
+                    doSeed(word(cmnd, 1));
+                    return;
+                }
+                if (n == 2 && isWord(cmnd, 0, "size") && isNumber(cmnd, 1)) {
+                    doSize(word(cmnd, 1));
+                    return;
+                }
+                if (isWord(cmnd, 0, "stats")
+                    && (n == 1 || n == 2 && (isWord(cmnd, 1, "on")
+                                             || isWord(cmnd, 1, "off")))) {
+                    doStats(n == 1 ? null : isWord(cmnd, 1, "on"));
+                    return;
+                }
+                break;
+            case 'e':
+                if (isWord(cmnd, 0, "eval")
+                    && (n == 1 || n == 2 && (isWord(cmnd, 1, "classic")
+                                             || isWord(cmnd, 1, "nnue")))) {
+                    doEval(n == 1 ? null : isWord(cmnd, 1, "nnue"));
+                    return;
+                }
+                break;
+            case 'l':
+                if (n == 2 && isWord(cmnd, 0, "limit") && isNumber(cmnd, 1)) {
+                    doLimit(word(cmnd, 1));
+                    return;
+                }
+                break;
+            case 'm':
+                if (n == 2 && isWord(cmnd, 0, "manual")
+                    && color(cmnd, 1) != null) {
+                    doManual(color(cmnd, 1));
+                    return;
+                }
+                break;
+            case 'a':
+                if (isWord(cmnd, 0, "auto") && n >= 2
+                    && color(cmnd, 1) != null) {
+                    String spec = n == 3 ? word(cmnd, 2) : null;
+                    if (spec == null
+                        || ENGINE_PATTERN.matcher(spec).matches()) {
+                        doAuto(color(cmnd, 1), spec);
+                        return;
+                    }
+                }
+                break;
+            case 't':
+                if (n == 2 && isWord(cmnd, 0, "toggle")
+                    && _wordEnd[1] - _wordStart[1] == 2) {
+                    Square sq = Square.sq(cmnd, _wordStart[1]);
+                    if (sq != null) {
+                        doToggle(sq);
+                        return;
+                    }
+                }
+                break;
+            default:
+                break;
+            }
+        }
+        throw error("Bad command: %s",
+                    cmnd.substring(0, end < 0 ? cmnd.length() : end).trim()
+                    .toLowerCase());
+    }
+
+    /** Record in _wordStart and _wordEnd the bounds of the
+     *  whitespace-separated words of CMND before index END (up to
+     *  MAX_WORDS of them), and return the number of words, which is
+     *  MAX_WORDS + 1 if there are more than MAX_WORDS. */
+    private int splitWords(String cmnd, int end) {
+        int n = 0;
+        int k = 0;
+        while (true) {
+            while (k < end && Character.isWhitespace(cmnd.charAt(k))) {
+                k += 1;
+            }
+            if (k == end) {
+                return n;
+            }
+            if (n == MAX_WORDS) {
+                return n + 1;
+            }
+            _wordStart[n] = k;
+            while (k < end && !Character.isWhitespace(cmnd.charAt(k))) {
+                k += 1;
+            }
+            _wordEnd[n] = k;
+            n += 1;
         }
-        throw error("Bad command: %s", cmnd);
+    }
+
+    /** Return true iff word K of CMND is KEYWORD, ignoring case. */
+    private boolean isWord(String cmnd, int k, String keyword) {
+        return _wordEnd[k] - _wordStart[k] == keyword.length()
+            && cmnd.regionMatches(true, _wordStart[k], keyword, 0,
+                                  keyword.length());
+    }
+
+    /** Return true iff word K of CMND is all digits. */
+    private boolean isNumber(String cmnd, int k) {
+        for (int i = _wordStart[k]; i < _wordEnd[k]; i += 1) {
+            if (!Character.isDigit(cmnd.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return word K of CMND, in lower case. */
+    private String word(String cmnd, int k) {
+        return cmnd.substring(_wordStart[k], _wordEnd[k]).toLowerCase();
+    }
+
+    /** Return the side named by word K of CMND ("white" or "black"), or
+     *  null if it names neither. */
+    private Piece color(String cmnd, int k) {
+        if (isWord(cmnd, k, "white")) {
+            return WHITE;
+        } else if (isWord(cmnd, k, "black")) {
+            return BLACK;
+        }
+        return null;
     }
 
     /** Command "new". */
-    private void doNew(Matcher unused) {
+    private void doNew() {
+        endGame();
         _board.init();
+        if (_tafl != null) {
+            _tafl.init();
+        }
         _winner = null;
+        startGame();
+        announceNewGame();
     }
 
-    /** Command "manual <color>", where <color> is COLOR.group(1). */
-    private void doManual(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
-            _black = _manualPlayerTemplate.create(BLACK, this);
+    /** Tell my players that a new game has begun (see Player.newGame). */
+    private void announceNewGame() {
+        for (Player player : new Player[] { _white, _black }) {
+            if (player != null) {
+                player.newGame();
+            }
+        }
+    }
+
+    /** Count the start of a game among those in progress, unless it has
+     *  already been counted or I am not playing (see play).  Games
+     *  driven only through executeCommand, as by Replayer and Arena, are
+     *  not counted, since nothing ends them when their commands stop. */
+    private void startGame() {
+        if (_playing && !_inGame) {
+            _inGame = true;
+            GAMES_IN_PROGRESS.increment();
+        }
+    }
+
+    /** Count the end of the game in progress, if it has not already been
+     *  counted. */
+    private void endGame() {
+        if (_inGame) {
+            _inGame = false;
+            GAMES_IN_PROGRESS.decrement();
+        }
+    }
+
+    /** Command "size N" where N is the decimal numeral NUM: start a new
+     *  game on a board of N squares on a side (odd, from Geometry.MIN_SIZE
+     *  to Geometry.MAX_SIZE).  Games of the standard size are played on
+     *  board(), and others on taflBoard(). */
+    private void doSize(String num) {
+        int size;
+        try {
+            size = Integer.parseInt(num);
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        Geometry.of(size);
+        for (Player player : new Player[] { _white, _black, _nonPlayer }) {
+            checkSize(player, size);
+        }
+        _tafl = size == Board.SIZE ? null : TaflBoard.create(size);
+        doNew();
+    }
+
+    /** Raise an IllegalArgumentException unless PLAYER (if not null)
+     *  can play on boards of SIZE squares on a side. */
+    private static void checkSize(Player player, int size) {
+        if (player != null && !player.playsSize(size)) {
+            throw error("player cannot play on %dx%d boards", size, size);
+        }
+    }
+
+    /** Command "manual <color>", where <color> is COLOR. */
+    private void doManual(Piece color) {
+        Player player = _manualPlayerTemplate.create(color, this);
+        checkSize(player, size());
+        switch (color) {
+        case BLACK:
+            _black = player;
             break;
-        case "white":
-            _white = _manualPlayerTemplate.create(WHITE, this);
+        case WHITE:
+            _white = player;
             break;
         default:
             assert false;
@@ -225,14 +552,23 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "auto <color>", where <color> is COLOR.group(1). */
-    private void doAuto(Matcher color) {
-        switch (color.group(1)) {
-        case "black":
-            _black = _autoPlayerTemplate.create(BLACK, this);
+    /** Command "auto <color> [<engine>]", where <color> is COLOR
+     *  and the optional <engine> (see engine) is SPEC (null if absent). */
+    private void doAuto(Piece color, String spec) {
+        Player template =
+            spec == null ? _autoPlayerTemplate
+            : _autoPlayerTemplate.withEngine(engine(spec));
+        Player player = template.create(color, this);
+        checkSize(player, size());
+        if (spec == null && _network != null) {
+            player.useNetwork(_network);
+        }
+        switch (color) {
+        case BLACK:
+            _black = player;
             break;
-        case "white":
-            _white = _autoPlayerTemplate.create(WHITE, this);
+        case WHITE:
+            _white = player;
             break;
         default:
             assert false;
@@ -240,11 +576,52 @@ final class Controller {
         _view.update(this);
     }
 
-    /** Command "toggle". The first group of MAT is a square designation.
+    /** Return a template for the automated player described by SPEC:
+     *  either "ai" (alpha-beta search), optionally followed by ":DEPTH"
+     *  or ":DEPTH:EVAL", where EVAL is "classic" (the default) or "nnue"
+     *  (see the eval command), or "mcts", optionally followed by
+     *  ":PLAYOUTS", ":PLAYOUTS:MILLIS" or ":PLAYOUTS:MILLIS:THREADS"
+     *  giving the Monte Carlo budgets per move. */
+    static Player engine(String spec) {
+        String[] parts = spec.split(":");
+        try {
+            switch (parts[0]) {
+            case "ai":
+                if (parts.length <= 2 || parts.length == 3
+                    && (parts[2].equals("classic")
+                        || parts[2].equals("nnue"))) {
+                    AI ai = new AI(parts.length > 1
+                                   ? Integer.parseInt(parts[1])
+                                   : AI.DEFAULT_DEPTH);
+                    ai.useNetwork(parts.length == 3
+                                  && parts[2].equals("nnue"));
+                    return ai;
+                }
+                break;
+            case "mcts":
+                return new MCTS(
+                    parts.length > 1 ? Integer.parseInt(parts[1])
+                    : MCTS.DEFAULT_PLAYOUTS,
+                    parts.length > 2 ? Long.parseLong(parts[2]) : 0,
+                    parts.length > 3 ? Integer.parseInt(parts[3])
+                    : Runtime.getRuntime().availableProcessors());
+            default:
+                break;
+            }
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        throw error("unknown engine: %s", spec);
+    }
+
+    /** Command "toggle SQ".
      *  The contents of the square are modified:
      *  EMPTY -> WHITE -> KING -> BLACK .< ENPTY". Clear Undo information. */
-    private void doToggle(Matcher mat) {
-        Square sq = sq(mat.group(1));
+    private void doToggle(Square sq) {
+        if (_tafl != null) {
+            throw error("toggle is only available on %dx%d boards",
+                        Board.SIZE, Board.SIZE);
+        }
         Piece piece;
         switch (_board.get(sq)) {
         case EMPTY: piece = WHITE; break;
@@ -258,59 +635,159 @@ final class Controller {
     }
 
     /** Command "quit". */
-    private void doQuit(Matcher unused) {
+    private void doQuit() {
+        endGame();
+        logPosition();
         _playing = false;
     }
 
-    /** Command "seed N" where N is the first group of MAT. */
-    private void doSeed(Matcher mat) {
+    /** Command "seed N" where N is the decimal numeral NUM. */
+    private void doSeed(String num) {
         try {
-            setSeed(Long.parseLong(mat.group(1)));
+            setSeed(Long.parseLong(num));
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
-    /** Command "limit N" where N is the first captured group of MAT. */
-    private void doLimit(Matcher mat) {
+    /** Command "stats [on|off]": with no argument (REPORT null), report
+     *  the search statistics of the automated players so far; otherwise
+     *  turn reports after each of their moves on or off as REPORT
+     *  indicates. */
+    private void doStats(Boolean report) {
+        if (report != null) {
+            _reportStats = report;
+            return;
+        }
+        for (Player player : new Player[] { _white, _black }) {
+            if (player.stats() != null) {
+                reportNote("%s: %s", player.myPiece().toName(),
+                           player.stats().totals());
+            }
+        }
+    }
+
+    /** Command "eval [classic|nnue]": with no argument (NETWORK null),
+     *  report which evaluation my automated players use; otherwise make
+     *  them, and those later made automated without naming an engine,
+     *  use the network iff NETWORK.  Other games are unaffected. */
+    private void doEval(Boolean network) {
+        if (network != null) {
+            _network = network;
+        }
+        for (Player player : new Player[] { _white, _black }) {
+            if (network != null) {
+                player.useNetwork(network);
+            } else if (player.evaluation() != null) {
+                reportNote("%s evaluation: %s", player.myPiece().toName(),
+                           player.evaluation());
+            }
+        }
+    }
+
+    /** Command "limit N" where N is the decimal numeral NUM. */
+    private void doLimit(String num) {
         try {
-            _board.setMoveLimit(Integer.parseInt(mat.group(1)));
+            if (_tafl != null) {
+                _tafl.setMoveLimit(Integer.parseInt(num));
+            } else {
+                _board.setMoveLimit(Integer.parseInt(num));
+            }
         } catch (NumberFormatException excp) {
             throw error("number too large");
         }
     }
 
-    /** Execute a move command matched in MAT. */
-    private void doMove(Matcher mat) {
-        _board.makeMove(Move.mv(mat.group(0)));
+    /** Execute MOVE.  The side then to move loses if it has no legal
+     *  move. */
+    private void doMove(Move move) {
+        _board.makeMove(move);
+        MOVES.increment();
         if (_winner == null) {
             _winner = _board.winner();
+            if (_winner == null && !_board.hasMove(_board.turn())) {
+                _winner = _board.turn().opponent();
+            }
+            if (_winner != null) {
+                gameWon(_board.repeatedPosition());
+            }
+        }
+    }
+
+    /** Execute MOVE, a move as for Geometry, on taflBoard(), as for
+     *  doMove(Move). */
+    private void doMove(int move) {
+        if (!_tafl.isLegal(move)) {
+            throw error("illegal move");
+        }
+        _tafl.makeMove(move);
+        MOVES.increment();
+        if (_winner == null) {
+            if (_tafl.winner() >= 0) {
+                _winner = _tafl.winner() == TaflBoard.WHITE_SIDE ? WHITE
+                    : BLACK;
+            } else if (!_tafl.hasMove()) {
+                _winner = turn().opponent();
+            }
             if (_winner != null) {
-                _view.update(this);
-                _reporter.reportNote("%s wins.", _winner.toName());
+                gameWon(false);
             }
         }
     }
 
+    /** Record and announce the win of _winner, by a repeated position iff
+     *  REPEATED. */
+    private void gameWon(boolean repeated) {
+        endGame();
+        GAMES_WON.increment();
+        if (repeated) {
+            REPETITION_GAMES.increment();
+        }
+        logPosition();
+        _view.update(this);
+        _reporter.reportNote("%s wins.", _winner.toName());
+    }
+
+    /** Log the current position and winner as a checkpoint for
+     *  Replayer. */
+    private void logPosition() {
+        logComment("position %s %s", encodedBoard(),
+                   _winner == null ? "-" : _winner);
+    }
+
     /** Dump the contents of the board on standard output. */
-    private void doDump(Matcher unused) {
-        System.out.printf("===%n%s===%n", _board);
+    private void doDump() {
+        _output.printf("===%n%s===%n", _tafl == null ? _board : _tafl);
     }
 
     /** Undo back to before my last move, if there was one (otherwise does
      *  nothing). */
-    private void doUndo(Matcher unused) {
-        if (_board.moveCount() > 1) {
+    private void doUndo() {
+        if (_tafl != null && _tafl.moveCount() > 1) {
+            _tafl.undo();
+            _tafl.undo();
+        } else if (_tafl == null && _board.moveCount() > 1) {
             _board.undo();
             _board.undo();
-            _winner = null;
-            _view.update(this);
+        } else {
+            return;
         }
+        _winner = null;
+        startGame();
+        _view.update(this);
     }
 
     /** The board. */
     private Board _board = new Board();
 
+    /** The board of a game played on another size than _board's, or null
+     *  (see the size command). */
+    private TaflBoard _tafl;
+
+    /** The geometry of the largest boards, on which any move on a board of
+     *  any size parses. */
+    private static final Geometry LARGEST = Geometry.of(Geometry.MAX_SIZE);
+
     /** The winning side of the current game. */
     private Piece _winner;
 
@@ -323,12 +800,58 @@ final class Controller {
     /** My pseudo-random number generator. */
     private Random _randGen = new Random();
 
+    /** Moves made in all games. */
+    private static final LongAdder MOVES =
+        Metrics.REGISTRY.counter("tablut_moves_total", "Moves made.");
+    /** Commands executed in all games. */
+    private static final LongAdder COMMANDS =
+        Metrics.REGISTRY.counter("tablut_commands_total",
+                                 "Commands executed, including moves.");
+    /** Errors reported in all games. */
+    private static final LongAdder ERRORS =
+        Metrics.REGISTRY.counter("tablut_errors_total",
+                                 "Erroneous commands and moves reported.");
+    /** Games under way. */
+    private static final LongAdder GAMES_IN_PROGRESS =
+        Metrics.REGISTRY.gauge("tablut_games_in_progress",
+                               "Games started and not yet won or quit.");
+    /** Games won. */
+    private static final LongAdder GAMES_WON =
+        Metrics.REGISTRY.counter("tablut_games_won_total", "Games won.");
+    /** Games won by repetition. */
+    private static final LongAdder REPETITION_GAMES =
+        Metrics.REGISTRY.counter("tablut_repetition_games_total",
+                                 "Games ended by a repeated position.");
+    /** Time taken by automated players to choose moves. */
+    private static final LatencyHistogram AI_MOVE_LATENCY =
+        Metrics.REGISTRY.histogram("tablut_ai_move_seconds",
+                                   "Time for automated players to move.");
+
+    /** True iff my current game is counted in GAMES_IN_PROGRESS. */
+    private boolean _inGame;
+
+    /** True iff search statistics are reported after each automated
+     *  move. */
+    private boolean _reportStats;
+
+    /** Evaluation set by the eval command (true for the network), or
+     *  null if none. */
+    private Boolean _network;
+
     /** Log file, or null if absent. */
-    private PrintStream _logFile;
+    private AsyncLog _logFile;
 
     /** Input source. */
     private Scanner _input;
 
+    /** Destination of prompts and board dumps. */
+    private PrintStream _output = System.out;
+
+    /** Bounds of the words of the command being executed (see
+     *  splitWords). */
+    private final int[] _wordStart = new int[MAX_WORDS],
+        _wordEnd = new int[MAX_WORDS];
+
     /** The current White and Black players, each created from
      *  _autoPlayerTemplate or _manualPlayerTemplate. */
     private Player _white, _black;
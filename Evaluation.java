@@ -0,0 +1,257 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/** A linear evaluation of Tablut positions: the weighted sum of a few
+ *  integer features of a position (see FEATURES), positive when the
+ *  position favors white.  The weights are fitted to the results of
+ *  recorded games by Tuner and kept in weights files of lines
+ *  <pre>
+ *     FEATURE WEIGHT
+ *  </pre>
+ *  (blank lines and lines starting with '#' are ignored; features not
+ *  mentioned keep their default weights).  The weights used by AIs are
+ *  those of standard(): the file named by setStandard, if any, or else
+ *  the resource WEIGHTS_RESOURCE next to these classes, if present, or
+ *  else DEFAULT_WEIGHTS.
+ *  @author Dhruv Krishnaswamy
+ */
+class Evaluation {
+
+    /** Indices of the features. */
+    static final int
+        WHITE_PIECES = 0, BLACK_PIECES = 1, KING_EDGE_DISTANCE = 2,
+        KING_BLACK_ADJACENT = 3, KING_BLACK_NEAR = 4, KING_MOBILITY = 5,
+        KING_OPEN_LINES = 6, WHITE_MOBILITY = 7, BLACK_MOBILITY = 8,
+        WHITE_TO_MOVE = 9;
+
+    /** Names of the features, by index: the numbers of white soldiers
+     *  and of black pieces; the distance from the king to the nearest
+     *  edge; the numbers of black pieces next to the king and within two
+     *  squares (in both directions) of it; the number of squares to
+     *  which the king may move; the number of those moves that reach an
+     *  edge; the total number of squares to which white's soldiers and
+     *  black's pieces may move; and 1 if white is to move, else 0. */
+    static final String[] FEATURES = {
+        "white", "black", "kingEdgeDistance", "kingBlackAdjacent",
+        "kingBlackNear", "kingMobility", "kingOpenLines", "whiteMobility",
+        "blackMobility", "whiteToMove"
+    };
+
+    /** Number of features. */
+    static final int NUM_FEATURES = FEATURES.length;
+
+    /** Weights used when no weights file is given. */
+    static final int[] DEFAULT_WEIGHTS = {
+        300, -200, -40, -60, -15, 8, 400, 3, -3, 20
+    };
+
+    /** Name of the weights resource loaded by standard(). */
+    static final String WEIGHTS_RESOURCE = "weights.txt";
+
+    /** An evaluation with the given WEIGHTS, one per feature. */
+    Evaluation(int[] weights) {
+        if (weights.length != NUM_FEATURES) {
+            throw error("need %d weights", NUM_FEATURES);
+        }
+        _weights = weights.clone();
+    }
+
+    /** Return the evaluation used by AIs. */
+    static synchronized Evaluation standard() {
+        if (_standard == null) {
+            try (InputStream in = Utils.getResource(WEIGHTS_RESOURCE)) {
+                _standard = read(in);
+            } catch (IOException | IllegalArgumentException excp) {
+                _standard = new Evaluation(DEFAULT_WEIGHTS);
+            }
+        }
+        return _standard;
+    }
+
+    /** Make the weights in FILE those of standard().  Affects AIs
+     *  created afterwards. */
+    static synchronized void setStandard(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            _standard = read(in);
+        }
+    }
+
+    /** Return the evaluation whose weights are read from IN, in the
+     *  format of a weights file. */
+    static Evaluation read(InputStream in) throws IOException {
+        int[] weights = DEFAULT_WEIGHTS.clone();
+        BufferedReader lines =
+            new BufferedReader(new InputStreamReader(in,
+                                                     StandardCharsets.UTF_8));
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            int k = Arrays.asList(FEATURES).indexOf(words[0]);
+            if (words.length != 2 || k < 0) {
+                throw error("bad weights line: %s", line);
+            }
+            try {
+                weights[k] = Integer.parseInt(words[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad weight: %s", line);
+            }
+        }
+        return new Evaluation(weights);
+    }
+
+    /** Write my weights on OUT in the format of a weights file, headed
+     *  by the comment COMMENT. */
+    void write(PrintStream out, String comment) {
+        out.printf("# %s%n", comment);
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            out.printf("%s %d%n", FEATURES[k], _weights[k]);
+        }
+    }
+
+    /** Return weight K. */
+    int weight(int k) {
+        return _weights[k];
+    }
+
+    /** Return the value of BOARD, positive if it favors white.  It is
+     *  meaningful only when there is no winner. */
+    int score(Board board) {
+        int[] features = new int[NUM_FEATURES];
+        features(board, features);
+        return weighted(features);
+    }
+
+    /** Return the value of BOARD, a board of any size, as for
+     *  score(Board), from the same features. */
+    int score(TaflBoard board) {
+        int[] features = new int[NUM_FEATURES];
+        features(board, features);
+        return weighted(features);
+    }
+
+    /** Return the weighted sum of FEATURES. */
+    private int weighted(int[] features) {
+        int score = 0;
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            score += _weights[k] * features[k];
+        }
+        return score;
+    }
+
+    /** Store the features of BOARD in FEATURES[0 .. NUM_FEATURES-1]. */
+    static void features(Board board, int[] features) {
+        Arrays.fill(features, 0, NUM_FEATURES, 0);
+        Square king = board.kingPosition();
+        for (Square sq : Square.SQUARE_LIST) {
+            Piece p = board.get(sq);
+            if (p == WHITE) {
+                features[WHITE_PIECES] += 1;
+                features[WHITE_MOBILITY] += board.mobility(sq);
+            } else if (p == BLACK) {
+                features[BLACK_PIECES] += 1;
+                features[BLACK_MOBILITY] += board.mobility(sq);
+                if (king != null) {
+                    int dc = Math.abs(sq.col() - king.col()),
+                        dr = Math.abs(sq.row() - king.row());
+                    if (dc + dr == 1) {
+                        features[KING_BLACK_ADJACENT] += 1;
+                    }
+                    if (dc <= 2 && dr <= 2) {
+                        features[KING_BLACK_NEAR] += 1;
+                    }
+                }
+            }
+        }
+        if (king != null) {
+            int last = Board.SIZE - 1;
+            features[KING_EDGE_DISTANCE] =
+                Math.min(Math.min(king.col(), last - king.col()),
+                         Math.min(king.row(), last - king.row()));
+            features[KING_MOBILITY] = board.mobility(king);
+            for (int dir = 0; dir < 4; dir += 1) {
+                for (int k = 1; ; k += 1) {
+                    Square to = king.rookMove(dir, k);
+                    if (to == null || board.get(to) != EMPTY) {
+                        break;
+                    }
+                    if (to.isEdge()) {
+                        features[KING_OPEN_LINES] += 1;
+                    }
+                }
+            }
+        }
+        features[WHITE_TO_MOVE] = board.turn() == WHITE ? 1 : 0;
+    }
+
+    /** Store the features of BOARD, a board of any size, in
+     *  FEATURES[0 .. NUM_FEATURES-1].  On the 9x9 board they are those
+     *  of the same position on a Board. */
+    static void features(TaflBoard board, int[] features) {
+        Arrays.fill(features, 0, NUM_FEATURES, 0);
+        Geometry geometry = board.geometry();
+        int king = board.king();
+        for (int sq = 0; sq < geometry.squares(); sq += 1) {
+            Piece p = board.get(sq);
+            if (p == WHITE) {
+                features[WHITE_PIECES] += 1;
+                features[WHITE_MOBILITY] += board.mobility(sq);
+            } else if (p == BLACK) {
+                features[BLACK_PIECES] += 1;
+                features[BLACK_MOBILITY] += board.mobility(sq);
+                if (king >= 0) {
+                    int dc = Math.abs(geometry.col(sq) - geometry.col(king)),
+                        dr = Math.abs(geometry.row(sq) - geometry.row(king));
+                    if (dc + dr == 1) {
+                        features[KING_BLACK_ADJACENT] += 1;
+                    }
+                    if (dc <= 2 && dr <= 2) {
+                        features[KING_BLACK_NEAR] += 1;
+                    }
+                }
+            }
+        }
+        if (king >= 0) {
+            int last = geometry.size() - 1,
+                col = geometry.col(king), row = geometry.row(king);
+            features[KING_EDGE_DISTANCE] =
+                Math.min(Math.min(col, last - col), Math.min(row, last - row));
+            features[KING_MOBILITY] = board.mobility(king);
+            int[] rays = geometry.rays();
+            for (int dir = 0; dir < 4; dir += 1) {
+                int end = geometry.rayEnd(king, dir);
+                for (int k = geometry.rayStart(king, dir); k < end; k += 1) {
+                    if (board.get(rays[k]) != EMPTY) {
+                        break;
+                    }
+                    if (geometry.isEdge(rays[k])) {
+                        features[KING_OPEN_LINES] += 1;
+                    }
+                }
+            }
+        }
+        features[WHITE_TO_MOVE] =
+            board.turn() == TaflBoard.WHITE_SIDE ? 1 : 0;
+    }
+
+    /** The evaluation used by AIs, or null if not yet chosen. */
+    private static Evaluation _standard;
+
+    /** My weights, by feature. */
+    private final int[] _weights;
+}
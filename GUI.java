@@ -7,6 +7,7 @@ import java.awt.Dimension;
 import javax.swing.JEditorPane;
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
 
 import java.io.InputStream;
 import java.io.IOException;
@@ -14,12 +15,18 @@ import java.io.StringWriter;
 
 
 
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
-/** The GUI controller for a Tablut board and buttons.
+/** The GUI controller for a Tablut board and buttons.  The game runs on
+ *  its own thread (and automated players' searches on another; see
+ *  BackgroundPlayer), which hand the GUI immutable Snapshots of the board
+ *  and progress reports without waiting on the event thread, so the
+ *  window stays responsive however long a search takes.
  *  @author Dhruv Krishnaswamy
  */
-class GUI extends TopLevel implements View, Reporter {
+class GUI extends TopLevel implements View, Reporter, SearchProgress {
 
     /** Minimum size of board in pixels. */
     private static final int MIN_SIZE = 500;
@@ -57,6 +64,10 @@ class GUI extends TopLevel implements View, Reporter {
     /** Response to "Quit" button click. */
     private void quit(String dummy) {
         _pendingCommands.offer("quit");
+        Future<?> search = _search;
+        if (search != null) {
+            search.cancel(true);
+        }
     }
 
 
@@ -93,23 +104,42 @@ class GUI extends TopLevel implements View, Reporter {
 
     @Override
     public void update(Controller controller) {
-        Board board = controller.board();
+        Snapshot board = controller.board().snapshot();
 
         _widget.update(board);
         if (board.winner() != null) {
-            setLabel("CurrentTurn",
-                     String.format("Winner: %s%s",
-                                   board.winner().toName(),
-                                   board.repeatedPosition()
-                                   ? " (repeated board)"
-                                   : ""));
+            setTurnLabel(String.format("Winner: %s%s",
+                                       board.winner().toName(),
+                                       board.repeatedPosition()
+                                       ? " (repeated board)"
+                                       : ""));
         } else {
-            setLabel("CurrentTurn",
-                     String.format("To move: %s", board.turn().toName()));
+            setTurnLabel(String.format("To move: %s",
+                                       board.turn().toName()));
         }
 
     }
 
+    @Override
+    public void progress(int depth, Move best, int value, long nodes) {
+        setTurnLabel(String.format("Thinking: depth %d, best %s"
+                                   + " (%d positions)",
+                                   depth, best == null ? "none" : best,
+                                   nodes));
+    }
+
+    /** Record that SEARCH (null if none) is the search now under way for
+     *  an automated player, so that quitting can cancel it. */
+    @Override
+    public void searching(Future<?> search) {
+        _search = search;
+    }
+
+    /** Show TEXT in the turn label, from any thread. */
+    private void setTurnLabel(String text) {
+        SwingUtilities.invokeLater(() -> setLabel("CurrentTurn", text));
+    }
+
     /** Display text in resource named TEXTRESOURCE in a new window titled
      *  TITLE. */
     private void displayText(String title, String textResource) {
@@ -157,7 +187,7 @@ class GUI extends TopLevel implements View, Reporter {
     }
 
     @Override
-    public void reportMove(Move unused) {
+    public void reportMove(String unused) {
     }
 
     /** The board widget. */
@@ -166,8 +196,12 @@ class GUI extends TopLevel implements View, Reporter {
     /** Queue of pending commands resulting from menu clicks and moves on the
      *  board.  We use a blocking queue because the responses to clicks
      *  on the board and on menus happen in parallel to the methods that
-     *  call readCommand, which therefore needs to wait for clicks to happen. */
-    private ArrayBlockingQueue<String> _pendingCommands =
-        new ArrayBlockingQueue<>(5);
+     *  call readCommand, which therefore needs to wait for clicks to happen.
+     *  It is unbounded, so that the event thread never waits to post. */
+    private BlockingQueue<String> _pendingCommands =
+        new LinkedBlockingQueue<>();
+
+    /** The search under way for an automated player, or null. */
+    private volatile Future<?> _search;
 
 }
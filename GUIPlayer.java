@@ -27,6 +27,11 @@ class GUIPlayer extends Player implements Reporter {
         return true;
     }
 
+    @Override
+    boolean playsSize(int size) {
+        return size == Board.SIZE;
+    }
+
     @Override
     String myMove() {
         while (true) {
@@ -53,7 +58,7 @@ class GUIPlayer extends Player implements Reporter {
     }
 
     @Override
-    public void reportMove(Move unused) {
+    public void reportMove(String unused) {
     }
 
     /** The GUI I use for input. */
@@ -0,0 +1,148 @@
+package tablut;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static tablut.GameWriter.*;
+
+/** A reader of files in the binary game format (see GameWriter) that
+ *  maps the file into memory and reads games in place.  The reader is a
+ *  cursor: next() advances to the following game, whose moves and
+ *  annotations are then read directly from the mapped file without
+ *  copying.  Use toRecord() to get a copy of the current game.
+ *  @author Dhruv Krishnaswamy
+ */
+class GameReader implements Closeable {
+
+    /** A reader of the games in FILE, positioned before the first. */
+    GameReader(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("game file too large to map");
+            }
+            _buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                               channel.size());
+        }
+        if (_buf.limit() < HEADER_SIZE) {
+            throw new IOException("not a game file");
+        }
+        for (int k = 0; k < MAGIC.length; k += 1) {
+            if (_buf.get(k) != MAGIC[k]) {
+                throw new IOException("not a game file");
+            }
+        }
+        if (_buf.get(MAGIC.length) != VERSION) {
+            throw new IOException("unsupported game file version");
+        }
+        _next = HEADER_SIZE;
+    }
+
+    /** Advance to the next game, returning false if there is none.
+     *  Throws an IOException if the file ends within the game or any of
+     *  its moves does not decode as a Move. */
+    boolean next() throws IOException {
+        if (_next >= _buf.limit()) {
+            _plies = 0;
+            return false;
+        }
+        if (_next + GAME_HEADER_SIZE > _buf.limit()) {
+            throw new IOException("truncated game file");
+        }
+        _game = _next;
+        _plies = _buf.getShort(_game + 2) & 0xffff;
+        _moves = _game + GAME_HEADER_SIZE;
+        int size = 2 * _plies;
+        if (annotated()) {
+            size += 5 * _plies;
+        }
+        _next = _moves + size;
+        if (_next > _buf.limit()) {
+            throw new IOException("truncated game file");
+        }
+        for (int k = 0; k < _plies; k += 1) {
+            if (move(k) == null) {
+                throw new IOException("corrupt game file");
+            }
+        }
+        _games += 1;
+        return true;
+    }
+
+    /** Return the number of games read so far. */
+    long games() {
+        return _games;
+    }
+
+    /** Return true iff the current game's moves are annotated. */
+    boolean annotated() {
+        return (_buf.get(_game) & ANNOTATED) != 0;
+    }
+
+    /** Return the winner of the current game, or null if none. */
+    Piece winner() {
+        switch (_buf.get(_game + 1)) {
+        case GameRecord.WHITE_WINS:
+            return Piece.WHITE;
+        case GameRecord.BLACK_WINS:
+            return Piece.BLACK;
+        default:
+            return null;
+        }
+    }
+
+    /** Return the number of moves in the current game. */
+    int plies() {
+        return _plies;
+    }
+
+    /** Return the packed form of move K of the current game. */
+    int packedMove(int k) {
+        return _buf.getShort(_moves + 2 * k) & 0x3fff;
+    }
+
+    /** Return move K of the current game (never null; see next). */
+    Move move(int k) {
+        return Move.mv(packedMove(k));
+    }
+
+    /** Return the evaluation of move K of the current game (0 if it is
+     *  not annotated). */
+    int eval(int k) {
+        return annotated() ? _buf.getInt(_moves + 2 * _plies + 4 * k) : 0;
+    }
+
+    /** Return the search depth of move K of the current game (0 if it is
+     *  not annotated). */
+    int depth(int k) {
+        return annotated() ? _buf.get(_moves + 6 * _plies + k) : 0;
+    }
+
+    /** Return a copy of the current game. */
+    GameRecord toRecord() {
+        GameRecord result = new GameRecord(annotated());
+        for (int k = 0; k < _plies; k += 1) {
+            result.add(move(k), eval(k), depth(k));
+        }
+        result.setWinner(winner());
+        return result;
+    }
+
+    @Override
+    public void close() {
+        _buf = null;
+    }
+
+    /** The mapped file. */
+    private MappedByteBuffer _buf;
+    /** Offsets of the current game, its moves, and the next game. */
+    private int _game, _moves, _next;
+    /** Number of plies in the current game. */
+    private int _plies;
+    /** Number of games read. */
+    private long _games;
+}
@@ -0,0 +1,113 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** The record of one game played from the initial position: its moves,
+ *  optionally each annotated with the mover's evaluation and search
+ *  depth, and its winner.  Moves are kept in their packed form (see
+ *  Move.packed), as they are in the binary game format written by
+ *  GameWriter and read by GameReader.
+ *  @author Dhruv Krishnaswamy
+ */
+class GameRecord {
+
+    /** Codes for the results of games in the binary format. */
+    static final int NO_WINNER = 0, WHITE_WINS = 1, BLACK_WINS = 2;
+
+    /** An empty record, with moves annotated iff ANNOTATED. */
+    GameRecord(boolean annotated) {
+        _annotated = annotated;
+        _moves = new short[INITIAL_CAPACITY];
+        if (annotated) {
+            _evals = new int[INITIAL_CAPACITY];
+            _depths = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    /** Append MOVE, which has no annotation. */
+    void add(Move move) {
+        add(move, 0, 0);
+    }
+
+    /** Append MOVE, annotated (if I am annotated) with evaluation EVAL
+     *  and search depth DEPTH. */
+    void add(Move move, int eval, int depth) {
+        if (_plies == _moves.length) {
+            int size = 2 * _plies;
+            _moves = Arrays.copyOf(_moves, size);
+            if (_annotated) {
+                _evals = Arrays.copyOf(_evals, size);
+                _depths = Arrays.copyOf(_depths, size);
+            }
+        }
+        _moves[_plies] = (short) move.packed();
+        if (_annotated) {
+            _evals[_plies] = eval;
+            _depths[_plies] = (byte) Math.min(depth, Byte.MAX_VALUE);
+        }
+        _plies += 1;
+    }
+
+    /** Set the winner to WINNER (null if there is none). */
+    void setWinner(Piece winner) {
+        _winner = winner;
+    }
+
+    /** Return the winner, or null if there is none. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return the code for my result in the binary format. */
+    int resultCode() {
+        return _winner == Piece.WHITE ? WHITE_WINS
+            : _winner == Piece.BLACK ? BLACK_WINS : NO_WINNER;
+    }
+
+    /** Return true iff my moves carry evaluations and depths. */
+    boolean annotated() {
+        return _annotated;
+    }
+
+    /** Return the number of moves recorded. */
+    int plies() {
+        return _plies;
+    }
+
+    /** Return the packed form of move number K (numbered from 0). */
+    int packedMove(int k) {
+        return _moves[k] & 0x3fff;
+    }
+
+    /** Return move number K. */
+    Move move(int k) {
+        return Move.mv(packedMove(k));
+    }
+
+    /** Return the evaluation recorded with move K (0 if not annotated). */
+    int eval(int k) {
+        return _annotated ? _evals[k] : 0;
+    }
+
+    /** Return the search depth recorded with move K (0 if not
+     *  annotated). */
+    int depth(int k) {
+        return _annotated ? _depths[k] : 0;
+    }
+
+    /** Initial size of my arrays. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** True iff moves carry evaluations and depths. */
+    private final boolean _annotated;
+    /** Packed moves, evaluations and depths of plies 0 .. _plies-1. */
+    private short[] _moves;
+    /** Evaluations of the moves (null if not annotated). */
+    private int[] _evals;
+    /** Search depths of the moves (null if not annotated). */
+    private byte[] _depths;
+    /** Number of moves recorded. */
+    private int _plies;
+    /** The winner, or null. */
+    private Piece _winner;
+}
@@ -0,0 +1,148 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/** A server that hosts many independent games of Tablut at once, for
+ *  clients connecting to a TCP port on the loopback interface.  Each
+ *  connection is a session with its own Controller, board, and players,
+ *  driven by the usual text commands (moves, "new", "undo", "auto white",
+ *  and so on) read from the connection, with the replies that a Controller
+ *  normally writes on the standard output sent back on it.  Each session
+ *  runs on its own thread, blocking on its socket, while the searches of
+ *  all sessions' automated players are run by one SearchScheduler, which
+ *  bounds the number of search threads and shares them fairly among the
+ *  games according to their clocks.
+ *  @author Dhruv Krishnaswamy
+ */
+class GameServer {
+
+    /** A server listening on PORT (any free port if 0) of the loopback
+     *  interface, hosting at most MAXSESSIONS games at once and running
+     *  at most SEARCHTHREADS searches at once.  Automated players are
+     *  created from ENGINE, and each has CLOCKMILLIS milliseconds per
+     *  game. */
+    GameServer(int port, int maxSessions, int searchThreads, Player engine,
+               long clockMillis)
+        throws IOException {
+        _listener =
+            new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+        _sessionSlots = new Semaphore(Math.max(1, maxSessions));
+        _scheduler = new SearchScheduler(searchThreads);
+        _sessions = Executors.newCachedThreadPool(daemons("session"));
+        _engine = new PooledPlayer(engine, _scheduler, clockMillis);
+    }
+
+    /** Return the port on which I listen. */
+    int port() {
+        return _listener.getLocalPort();
+    }
+
+    /** Return the number of sessions in progress. */
+    synchronized int activeSessions() {
+        return _active;
+    }
+
+    /** Accept and run sessions until close() is called. */
+    void serve() {
+        while (!_listener.isClosed()) {
+            Socket client;
+            try {
+                client = _listener.accept();
+            } catch (IOException excp) {
+                if (_listener.isClosed()) {
+                    break;
+                }
+                continue;
+            }
+            if (!_sessionSlots.tryAcquire()) {
+                refuse(client);
+                continue;
+            }
+            _sessions.execute(() -> {
+                try {
+                    runSession(client);
+                } finally {
+                    _sessionSlots.release();
+                }
+            });
+        }
+    }
+
+    /** Stop accepting sessions and end those in progress. */
+    void close() throws IOException {
+        _listener.close();
+        _sessions.shutdownNow();
+    }
+
+    /** Play games with CLIENT until it quits or disconnects. */
+    private void runSession(Socket client) {
+        synchronized (this) {
+            _active += 1;
+        }
+        try (Socket socket = client) {
+            Scanner input =
+                new Scanner(socket.getInputStream(),
+                            StandardCharsets.UTF_8.name());
+            PrintStream output =
+                new PrintStream(socket.getOutputStream(), true,
+                                StandardCharsets.UTF_8.name());
+            Controller control =
+                new Controller(new NullView(), null,
+                               new TextReporter(output, output),
+                               new TextPlayer(), _engine, false,
+                               input, output);
+            output.println("Tablut 61B, staff version 1.0");
+            control.play();
+        } catch (IOException excp) {
+            /* The client has gone; nothing more to do. */
+        } finally {
+            synchronized (this) {
+                _active -= 1;
+            }
+        }
+    }
+
+    /** Tell CLIENT that there is no room for it, and disconnect. */
+    private void refuse(Socket client) {
+        try (Socket socket = client) {
+            PrintStream output =
+                new PrintStream(socket.getOutputStream(), true,
+                                StandardCharsets.UTF_8.name());
+            output.println("Error: server full");
+        } catch (IOException excp) {
+            /* Ignore IOException. */
+        }
+    }
+
+    /** Return a factory for daemon threads named NAME. */
+    private static ThreadFactory daemons(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** The socket on which clients connect. */
+    private final ServerSocket _listener;
+    /** Permits for sessions in progress. */
+    private final Semaphore _sessionSlots;
+    /** Threads running sessions. */
+    private final ExecutorService _sessions;
+    /** Runs searches for all sessions. */
+    private final SearchScheduler _scheduler;
+    /** Template for automated players, running on _scheduler. */
+    private final Player _engine;
+    /** Number of sessions in progress. */
+    private int _active;
+}
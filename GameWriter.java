@@ -0,0 +1,94 @@
+package tablut;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/** A streaming writer of games in the binary game format.  A file
+ *  consists of the 4-byte MAGIC and a version byte, followed by games.
+ *  Each game is
+ *  <pre>
+ *     flags     1 byte   (ANNOTATED if evaluations follow the moves)
+ *     result    1 byte   (GameRecord.NO_WINNER, WHITE_WINS or BLACK_WINS)
+ *     plies     2 bytes  (unsigned, big-endian)
+ *     moves     2 bytes per ply: a 14-bit packed Move (see Move.packed)
+ *     evals     4 bytes per ply, if ANNOTATED
+ *     depths    1 byte per ply, if ANNOTATED
+ *  </pre>
+ *  Each field is stored as a block so that scans over moves alone (see
+ *  GameReader) touch nothing else.  Games are written whole, and write
+ *  may be called from several threads at once.
+ *  @author Dhruv Krishnaswamy
+ */
+class GameWriter implements Closeable {
+
+    /** The first bytes of every game file. */
+    static final byte[] MAGIC = { 'T', 'B', 'L', 'G' };
+
+    /** The format version written. */
+    static final int VERSION = 1;
+
+    /** Flag indicating that a game's moves are annotated. */
+    static final int ANNOTATED = 1;
+
+    /** Length of the file header in bytes. */
+    static final int HEADER_SIZE = MAGIC.length + 1;
+
+    /** Length of each game's header in bytes. */
+    static final int GAME_HEADER_SIZE = 4;
+
+    /** The maximum number of plies in a game. */
+    static final int MAX_PLIES = 0xffff;
+
+    /** A writer of games onto OUT, starting with the file header. */
+    GameWriter(OutputStream out) throws IOException {
+        _out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        _out.write(MAGIC);
+        _out.writeByte(VERSION);
+    }
+
+    /** Append GAME. */
+    synchronized void write(GameRecord game) throws IOException {
+        int plies = game.plies();
+        if (plies > MAX_PLIES) {
+            throw new IOException("game too long to record");
+        }
+        _out.writeByte(game.annotated() ? ANNOTATED : 0);
+        _out.writeByte(game.resultCode());
+        _out.writeShort(plies);
+        for (int k = 0; k < plies; k += 1) {
+            _out.writeShort(game.packedMove(k));
+        }
+        if (game.annotated()) {
+            for (int k = 0; k < plies; k += 1) {
+                _out.writeInt(game.eval(k));
+            }
+            for (int k = 0; k < plies; k += 1) {
+                _out.writeByte(game.depth(k));
+            }
+        }
+        _games += 1;
+    }
+
+    /** Return the number of games written. */
+    synchronized long games() {
+        return _games;
+    }
+
+    /** Write out any buffered games. */
+    synchronized void flush() throws IOException {
+        _out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        _out.close();
+    }
+
+    /** The underlying stream. */
+    private final DataOutputStream _out;
+    /** Number of games written. */
+    private long _games;
+}
@@ -0,0 +1,286 @@
+package tablut;
+
+import java.util.Random;
+
+import static tablut.Utils.*;
+
+/** The shape of a square tafl board with an odd number of squares, from
+ *  MIN_SIZE to MAX_SIZE, on a side: the numbering of its squares, the
+ *  squares reachable along each rook direction from each square, the
+ *  throne, the standard starting layout, and random keys for hashing
+ *  positions.  Square k is at column k % size() and row k / size(), as for
+ *  Square.index() on the 9x9 board, and is named like the 9x9 squares,
+ *  with columns a-s and rows 1-19 (e.g., "k11").  The tables are primitive
+ *  arrays, built once per size when first needed (see of).
+ *  @author Dhruv Krishnaswamy
+ */
+final class Geometry {
+
+    /** Smallest and largest sizes. */
+    static final int MIN_SIZE = 9, MAX_SIZE = 19;
+
+    /** Number of bits used for each square in a packed move (see
+     *  move). */
+    static final int SQUARE_BITS = 9;
+
+    /** Return the geometry of boards with SIZE squares on a side. */
+    static Geometry of(int size) {
+        if (size < MIN_SIZE || size > MAX_SIZE || size % 2 == 0) {
+            throw error("board size must be odd, from %d to %d",
+                        MIN_SIZE, MAX_SIZE);
+        }
+        synchronized (GEOMETRIES) {
+            if (GEOMETRIES[size] == null) {
+                GEOMETRIES[size] = new Geometry(size);
+            }
+            return GEOMETRIES[size];
+        }
+    }
+
+    /** The geometry of a board SIZE squares on a side. */
+    private Geometry(int size) {
+        _size = size;
+        _squares = size * size;
+        _throne = _squares / 2;
+        _rayStart = new int[4 * _squares + 1];
+        _rays = new int[4 * _squares * (size - 1) / 2];
+        int n = 0;
+        for (int sq = 0; sq < _squares; sq += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                _rayStart[4 * sq + d] = n;
+                int c = col(sq) + DCOL[d], r = row(sq) + DROW[d];
+                while (c >= 0 && c < size && r >= 0 && r < size) {
+                    _rays[n] = r * size + c;
+                    n += 1;
+                    c += DCOL[d];
+                    r += DROW[d];
+                }
+            }
+        }
+        _rayStart[4 * _squares] = n;
+
+        Random random = new Random(ZOBRIST_SEED + size);
+        _keys = new long[3 * _squares];
+        for (int k = 0; k < _keys.length; k += 1) {
+            _keys[k] = random.nextLong();
+        }
+        _whiteToMoveKey = random.nextLong();
+    }
+
+    /** Return the number of squares on a side. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of squares. */
+    int squares() {
+        return _squares;
+    }
+
+    /** Return the throne (the center square). */
+    int throne() {
+        return _throne;
+    }
+
+    /** Return the column of square SQ. */
+    int col(int sq) {
+        return sq % _size;
+    }
+
+    /** Return the row of square SQ. */
+    int row(int sq) {
+        return sq / _size;
+    }
+
+    /** Return true iff SQ is on the edge of the board. */
+    boolean isEdge(int sq) {
+        int c = col(sq), r = row(sq);
+        return c == 0 || r == 0 || c == _size - 1 || r == _size - 1;
+    }
+
+    /** Return true iff SQ is orthogonally adjacent to the throne. */
+    boolean nextToThrone(int sq) {
+        int dc = col(sq) - col(_throne), dr = row(sq) - row(_throne);
+        return Math.abs(dc) + Math.abs(dr) == 1;
+    }
+
+    /** Return the index in rays() of the first square reached from SQ in
+     *  direction DIR (0-3: north, east, south, west); the squares in that
+     *  direction, nearest first, end at rayEnd(SQ, DIR). */
+    int rayStart(int sq, int dir) {
+        return _rayStart[4 * sq + dir];
+    }
+
+    /** Return the index in rays() just past the squares reached from SQ
+     *  in direction DIR. */
+    int rayEnd(int sq, int dir) {
+        return _rayStart[4 * sq + dir + 1];
+    }
+
+    /** Return the squares along all rays (see rayStart).  Not to be
+     *  modified. */
+    int[] rays() {
+        return _rays;
+    }
+
+    /** Return the square next to SQ in direction DIR, or -1 if none. */
+    int step(int sq, int dir) {
+        int k = _rayStart[4 * sq + dir];
+        return k == _rayStart[4 * sq + dir + 1] ? -1 : _rays[k];
+    }
+
+    /** Return the name of square SQ (e.g., "e5"). */
+    String name(int sq) {
+        return (char) ('a' + col(sq)) + Integer.toString(row(sq) + 1);
+    }
+
+    /** Return the square named by STR (e.g., "e5", in either case), or
+     *  -1 if it names none. */
+    int square(CharSequence str) {
+        if (str.length() < 2 || str.length() > 3) {
+            return -1;
+        }
+        int c = (str.charAt(0) | 0x20) - 'a', r = 0;
+        for (int k = 1; k < str.length(); k += 1) {
+            char d = str.charAt(k);
+            if (d < '0' || d > '9' || (k == 1 && d == '0')) {
+                return -1;
+            }
+            r = 10 * r + d - '0';
+        }
+        r -= 1;
+        if (c < 0 || c >= _size || r < 0 || r >= _size) {
+            return -1;
+        }
+        return r * _size + c;
+    }
+
+    /** Return the packed rook move denoted by the characters START ..
+     *  END-1 of STR in the format of moveName (e.g., "k11-3" or "c5-g",
+     *  in either case), or -1 if they denote none.  The move need not be
+     *  legal in any position. */
+    int move(CharSequence str, int start, int end) {
+        int dash = -1;
+        for (int k = start; k < end; k += 1) {
+            if (str.charAt(k) == '-') {
+                dash = k;
+                break;
+            }
+        }
+        if (dash < 0) {
+            return -1;
+        }
+        int from = square(str.subSequence(start, dash));
+        if (from < 0 || end - dash < 2) {
+            return -1;
+        }
+        CharSequence dest = str.subSequence(dash + 1, end);
+        int to;
+        if (Character.isLetter(dest.charAt(0))) {
+            to = dest.length() == 1
+                ? square(dest + Integer.toString(row(from) + 1)) : -1;
+        } else {
+            to = square((char) ('a' + col(from)) + dest.toString());
+        }
+        return to < 0 || to == from ? -1 : move(from, to);
+    }
+
+    /** Return the packed move FROM-TO. */
+    static int move(int from, int to) {
+        return from << SQUARE_BITS | to;
+    }
+
+    /** Return the starting square of packed MOVE. */
+    static int from(int move) {
+        return move >>> SQUARE_BITS;
+    }
+
+    /** Return the ending square of packed MOVE. */
+    static int to(int move) {
+        return move & ((1 << SQUARE_BITS) - 1);
+    }
+
+    /** Return the text of packed MOVE in the format of Move.toString()
+     *  (e.g., "e3-6" or "c5-g"). */
+    String moveName(int move) {
+        int from = from(move), to = to(move);
+        return name(from) + "-"
+            + (col(from) == col(to) ? Integer.toString(row(to) + 1)
+               : Character.toString((char) ('a' + col(to))));
+    }
+
+    /** Return the squares of the attackers (black) at the start: the
+     *  middle 2A+1 squares of each edge, where A = (size - 3) / 4, and
+     *  the square in front of the middle of each edge. */
+    int[] initialAttackers() {
+        int a = (_size - 3) / 4, c = _size / 2, m = _size - 1;
+        int[] result = new int[4 * (2 * a + 2)];
+        int n = 0;
+        for (int k = c - a; k <= c + a; k += 1) {
+            result[n++] = k;
+            result[n++] = m * _size + k;
+            result[n++] = k * _size;
+            result[n++] = k * _size + m;
+        }
+        result[n++] = _size + c;
+        result[n++] = (m - 1) * _size + c;
+        result[n++] = c * _size + 1;
+        result[n++] = c * _size + m - 1;
+        return result;
+    }
+
+    /** Return the squares of the defenders (white, other than the king)
+     *  at the start: a cross around the throne whose arms are
+     *  (size - 1) / 4 squares long. */
+    int[] initialDefenders() {
+        int arm = (_size - 1) / 4;
+        int[] result = new int[4 * arm];
+        int n = 0;
+        for (int k = 1; k <= arm; k += 1) {
+            for (int d = 0; d < 4; d += 1) {
+                result[n++] = _throne + k * (DCOL[d] + _size * DROW[d]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the hashing key for a piece of KIND (0 for black, 1 for
+     *  white, 2 for the king) on square SQ. */
+    long key(int kind, int sq) {
+        return _keys[kind * _squares + sq];
+    }
+
+    /** Return the hashing key for white to move. */
+    long whiteToMoveKey() {
+        return _whiteToMoveKey;
+    }
+
+    /** Column and row displacements of the directions north, east,
+     *  south, and west. */
+    private static final int[]
+        DCOL = { 0, 1, 0, -1 },
+        DROW = { 1, 0, -1, 0 };
+
+    /** Seed for the hashing keys, so that they are the same in every
+     *  run. */
+    private static final long ZOBRIST_SEED = 0x7AB1E5L;
+
+    /** Geometries built so far, by size. */
+    private static final Geometry[] GEOMETRIES = new Geometry[MAX_SIZE + 1];
+
+    /** Squares on a side. */
+    private final int _size;
+    /** Number of squares. */
+    private final int _squares;
+    /** The throne. */
+    private final int _throne;
+    /** The squares along the rays of each square and direction, nearest
+     *  first; those of square s in direction d are at indices
+     *  _rayStart[4s+d] to _rayStart[4s+d+1] - 1. */
+    private final int[] _rays, _rayStart;
+    /** Hashing keys of pieces on squares, indexed by kind * squares +
+     *  square. */
+    private final long[] _keys;
+    /** Hashing key for white to move. */
+    private final long _whiteToMoveKey;
+}
@@ -0,0 +1,115 @@
+package tablut;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A histogram of durations in nanoseconds, in the style of an HDR
+ *  histogram: values are counted in buckets whose width grows with their
+ *  magnitude, so that every value from 1 ns to centuries is held with a
+ *  relative error of at most 1 / SUB_BUCKETS in a fixed, small array.
+ *  Recording is lock-free (one atomic increment), so it may be done from
+ *  any number of game threads while another reads percentiles.
+ *  @author Dhruv Krishnaswamy
+ */
+class LatencyHistogram {
+
+    /** Log2 of the number of buckets into which each power of 2 is
+     *  divided. */
+    static final int SUB_BUCKET_BITS = 5;
+
+    /** Number of buckets into which each power of 2 is divided. */
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** Total number of buckets, enough for any non-negative long. */
+    private static final int BUCKETS =
+        SUB_BUCKETS * (Long.SIZE - SUB_BUCKET_BITS + 1);
+
+    /** Record one duration of NANOS nanoseconds (negative values count
+     *  as 0). */
+    void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        _counts.incrementAndGet(bucket(nanos));
+        _count.increment();
+        _sum.add(nanos);
+        _max.accumulate(nanos);
+    }
+
+    /** Return the number of durations recorded. */
+    long count() {
+        return _count.sum();
+    }
+
+    /** Return the sum of the durations recorded, in nanoseconds. */
+    long sum() {
+        return _sum.sum();
+    }
+
+    /** Return the greatest duration recorded, in nanoseconds (0 if
+     *  none). */
+    long max() {
+        return _max.get();
+    }
+
+    /** Return the duration in nanoseconds at or below which a fraction P
+     *  (0 to 1) of the recorded durations fall, within the histogram's
+     *  precision, or 0 if none have been recorded. */
+    long percentile(double p) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int k = 0; k < BUCKETS; k += 1) {
+            counts[k] = _counts.get(k);
+            total += counts[k];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int k = 0; k < BUCKETS; k += 1) {
+            seen += counts[k];
+            if (seen >= rank) {
+                return Math.min(highest(k), max());
+            }
+        }
+        return max();
+    }
+
+    /** Return the bucket holding VALUE (>= 0). */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value)
+            - SUB_BUCKET_BITS;
+        return SUB_BUCKETS * (shift + 1)
+            + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /** Return the smallest value held in bucket K. */
+    static long lowest(int k) {
+        if (k < SUB_BUCKETS) {
+            return k;
+        }
+        int shift = k / SUB_BUCKETS - 1;
+        return (long) (SUB_BUCKETS + k % SUB_BUCKETS) << shift;
+    }
+
+    /** Return the largest value held in bucket K. */
+    static long highest(int k) {
+        if (k < SUB_BUCKETS) {
+            return k;
+        }
+        int shift = k / SUB_BUCKETS - 1;
+        return lowest(k) + (1L << shift) - 1;
+    }
+
+    /** Counts of durations in each bucket. */
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    /** Number of durations recorded. */
+    private final LongAdder _count = new LongAdder();
+    /** Sum of durations recorded. */
+    private final LongAdder _sum = new LongAdder();
+    /** Greatest duration recorded. */
+    private final LongAccumulator _max = new LongAccumulator(Math::max, 0);
+}
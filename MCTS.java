@@ -0,0 +1,437 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static tablut.Piece.*;
+
+/** A Player that chooses moves by Monte Carlo Tree Search, using UCT
+ *  selection and lightly guided random playouts on copies of the board.
+ *  A move that wins at once is always selected, in the trees and at the
+ *  root, rather than left to the playouts to tell from moves that merely
+ *  tend to win.
+ *  Searches run root-parallel: each of several threads grows its own
+ *  tree from the current position, and the visit counts of the root
+ *  moves are summed to pick a move.  With one thread, the search runs
+ *  on the thread asking for the move; otherwise, the trees are grown on
+ *  a pool of that many threads (at most one per core), shared by all
+ *  players using as many, so that neither many games at once nor
+ *  repeated auto commands create more.  Trees are kept between moves
+ *  and reused when the opponent's reply is found among them.  Random
+ *  choices are seeded from the controller's generator (see
+ *  Controller.setSeed), so that a search limited by playouts alone
+ *  always chooses the same move from the same position and seed.
+ *  @author Dhruv Krishnaswamy
+ */
+class MCTS extends Player {
+
+    /** Default total number of playouts per move. */
+    static final int DEFAULT_PLAYOUTS = 4000;
+
+    /** Exploration constant in the UCT formula. */
+    private static final double EXPLORATION = 1.4;
+
+    /** Maximum number of halvings of my budgets (see reduceEffort). */
+    private static final int MAX_REDUCTION = 8;
+
+    /** Maximum number of plies in one playout before it is scored as
+     *  a draw. */
+    private static final int MAX_PLAYOUT_PLIES = 100;
+
+    /** A new MCTS with no piece or controller (intended to produce
+     *  a template), using default budgets and all available cores. */
+    MCTS() {
+        this(null, null, DEFAULT_PLAYOUTS, 0,
+             Runtime.getRuntime().availableProcessors());
+    }
+
+    /** A new MCTS template that uses at most PLAYOUTS playouts and (if
+     *  positive) MILLIS milliseconds per move, on THREADS threads. */
+    MCTS(int playouts, long millis, int threads) {
+        this(null, null, playouts, millis, threads);
+    }
+
+    /** A new MCTS playing PIECE under control of CONTROLLER, with a budget
+     *  of PLAYOUTS playouts and (if positive) MILLIS milliseconds per move,
+     *  searching on THREADS threads (at most the number of available
+     *  cores). */
+    MCTS(Piece piece, Controller controller, int playouts, long millis,
+         int threads) {
+        super(piece, controller);
+        _playouts = Math.max(1, playouts);
+        _millis = millis;
+        _threads = Math.max(1, Math.min(threads, MAX_THREADS));
+        _pool = _threads == 1 ? null : pool(_threads);
+        _roots = new Node[_threads];
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTS(piece, controller, _playouts, _millis, _threads);
+    }
+
+    @Override
+    Player confined() {
+        if (_threads == 1) {
+            return this;
+        }
+        return new MCTS(myPiece(), _controller, _playouts, _millis, 1);
+    }
+
+    @Override
+    void setDeadline(long deadline) {
+        _deadline = deadline;
+    }
+
+    @Override
+    String myMove() {
+        String move = findMove().toString();
+        _controller.reportMove(move);
+        return move;
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    boolean playsSize(int size) {
+        return size == Board.SIZE;
+    }
+
+    /** Return the number of playouts run for the last move found. */
+    long playoutCount() {
+        return _lastPlayouts;
+    }
+
+    @Override
+    long nodeCount() {
+        return _nodes.sum();
+    }
+
+    @Override
+    void reduceEffort(int levels) {
+        _reduction = Math.max(0, Math.min(levels, MAX_REDUCTION));
+    }
+
+    /** Return a move for me from the current position, assuming there
+     *  is a move. */
+    private Move findMove() {
+        Board start = new Board(board());
+        List<Move> moves = start.legalMoves(myPiece());
+        if (moves.size() == 1) {
+            _roots = new Node[_threads];
+            return moves.get(0);
+        }
+        reuseTrees(start);
+
+        long millis = _millis >> _reduction;
+        long deadline = Math.min(_millis > 0
+                                 ? System.currentTimeMillis() + millis
+                                 : Long.MAX_VALUE,
+                                 _deadline > 0 ? _deadline : Long.MAX_VALUE);
+        _deadline = 0;
+        int playouts = Math.max(1, _playouts >> _reduction);
+        int share = (playouts + _threads - 1) / _threads;
+        List<Callable<Integer>> jobs = new ArrayList<>();
+        for (int k = 0; k < _threads; k += 1) {
+            if (_roots[k] == null) {
+                _roots[k] = new Node(null, null, myPiece().opponent());
+            }
+            Node root = _roots[k];
+            Random rand = new Random(seed());
+            jobs.add(() -> search(root, start, share, deadline, rand,
+                                  _nodes));
+        }
+
+        _lastPlayouts = 0;
+        try {
+            if (_threads == 1) {
+                _lastPlayouts = jobs.get(0).call();
+            } else {
+                for (Future<Integer> done : _pool.invokeAll(jobs)) {
+                    _lastPlayouts += done.get();
+                }
+            }
+        } catch (Exception excp) {
+            throw new IllegalStateException("search failed: " + excp);
+        }
+
+        Move best = null;
+        long bestVisits = -1;
+        for (Move m : moves) {
+            long visits = 0;
+            for (Node root : _roots) {
+                Node child = root.child(m);
+                if (child != null && child._won) {
+                    visits = Long.MAX_VALUE;
+                    break;
+                }
+                visits += child == null ? 0 : child._visits;
+            }
+            if (visits > bestVisits) {
+                best = m;
+                bestVisits = visits;
+            }
+        }
+        _lastBoard = new Board(start);
+        _lastBoard.makeMove(best);
+        _lastMove = best;
+        return best;
+    }
+
+    /** Return a seed for the random choices of one search tree, drawn
+     *  from my controller's generator. */
+    private long seed() {
+        return (long) _controller.randInt(Integer.MAX_VALUE) << 31
+            | _controller.randInt(Integer.MAX_VALUE);
+    }
+
+    /** Replace each of my trees by the subtree for the position on
+     *  BOARD, if the opponent's reply to my last move was expanded in it,
+     *  and by null otherwise. */
+    private void reuseTrees(Board board) {
+        Position key = board.position();
+        for (int k = 0; k < _threads; k += 1) {
+            Node root = _roots[k];
+            _roots[k] = null;
+            if (root == null || _lastMove == null) {
+                continue;
+            }
+            Node mine = root.child(_lastMove);
+            if (mine == null) {
+                continue;
+            }
+            for (Node reply : mine._children) {
+                Board probe = new Board(_lastBoard);
+                probe.makeMove(reply._move);
+                if (probe.position().equals(key)) {
+                    reply._parent = null;
+                    _roots[k] = reply;
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Run up to LIMIT playouts from ROOT, whose position is START,
+     *  stopping early at time DEADLINE.  Uses RAND for random choices
+     *  and adds the number of positions visited to NODES.  Returns the
+     *  number of playouts performed. */
+    private static int search(Node root, Board start, int limit,
+                              long deadline, Random rand, LongAdder nodes) {
+        long visited = 0;
+        Board board = new Board(start);
+        int n;
+        for (n = 0; n < limit; n += 1) {
+            if ((n & 0xf) == 0 && System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            board.copyForPlayout(start);
+            Node node = root;
+            while (node.isExpanded(board) && !node._children.isEmpty()) {
+                node = node.select();
+                board.makeMove(node._move);
+            }
+            if (board.winner() == null && node._untried != null
+                && !node._untried.isEmpty()) {
+                Move m = node._untried.remove(
+                    rand.nextInt(node._untried.size()));
+                board.makeMove(m);
+                node = node.add(m, board.turn().opponent(),
+                                board.winner() == board.turn().opponent());
+            }
+            Piece winner = playout(board, rand);
+            visited += board.moveCount() - start.moveCount();
+            for (; node != null; node = node._parent) {
+                node._visits += 1;
+                if (winner == null) {
+                    node._wins += 0.5;
+                } else if (winner == node._mover) {
+                    node._wins += 1;
+                }
+            }
+        }
+        nodes.add(visited);
+        return n;
+    }
+
+    /** Play random moves on BOARD until the game ends or
+     *  MAX_PLAYOUT_PLIES have been played, using RAND for choices.
+     *  The king escapes whenever it can.  Returns the winner, or null
+     *  if the playout was cut off. */
+    private static Piece playout(Board board, Random rand) {
+        for (int ply = 0; ply < MAX_PLAYOUT_PLIES; ply += 1) {
+            if (board.winner() != null) {
+                return board.winner();
+            }
+            Piece side = board.turn();
+            Move escape = side == WHITE ? kingEscape(board) : null;
+            if (escape != null) {
+                board.makeMove(escape);
+                continue;
+            }
+            List<Move> moves = board.legalMoves(side);
+            if (moves.isEmpty()) {
+                return side.opponent();
+            }
+            board.makeMove(moves.get(rand.nextInt(moves.size())));
+        }
+        return board.winner();
+    }
+
+    /** Return a move that takes the king to an edge on BOARD, or null if
+     *  there is none. */
+    private static Move kingEscape(Board board) {
+        Square king = board.kingPosition();
+        if (king == null) {
+            return null;
+        }
+        for (int dir = 0; dir < 4; dir += 1) {
+            for (int k = 1; ; k += 1) {
+                Square to = king.rookMove(dir, k);
+                if (to == null || board.get(to) != EMPTY) {
+                    break;
+                }
+                if (to.isEdge()) {
+                    return Move.mv(king, to);
+                }
+            }
+        }
+        return null;
+    }
+
+    /** A node of a search tree: the position reached by playing _move
+     *  from the position of its parent. */
+    private static class Node {
+        /** A new node reached from PARENT by MOVE, made by MOVER. */
+        Node(Node parent, Move move, Piece mover) {
+            _parent = parent;
+            _move = move;
+            _mover = mover;
+        }
+
+        /** Return true iff all of my moves have been tried, computing
+         *  them from BOARD (my position) the first time. */
+        boolean isExpanded(Board board) {
+            if (_untried == null) {
+                _untried = board.winner() != null ? new ArrayList<>()
+                    : board.legalMoves(_mover.opponent());
+            }
+            return _untried.isEmpty();
+        }
+
+        /** Return my child with the best UCT value, or one whose move wins
+         *  at once, if any. */
+        Node select() {
+            double logN = Math.log(_visits);
+            Node best = null;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (Node c : _children) {
+                if (c._won) {
+                    return c;
+                }
+                double value = c._wins / c._visits
+                    + EXPLORATION * Math.sqrt(logN / c._visits);
+                if (value > bestValue) {
+                    best = c;
+                    bestValue = value;
+                }
+            }
+            return best;
+        }
+
+        /** Add and return a child reached by MOVE, made by MOVER, which
+         *  wins at once iff WON. */
+        Node add(Move move, Piece mover, boolean won) {
+            Node child = new Node(this, move, mover);
+            child._won = won;
+            _children.add(child);
+            return child;
+        }
+
+        /** Return my child reached by MOVE, or null if none. */
+        Node child(Move move) {
+            for (Node c : _children) {
+                if (c._move == move) {
+                    return c;
+                }
+            }
+            return null;
+        }
+
+        /** My parent, or null for a root. */
+        private Node _parent;
+        /** The move leading to me (null for a root). */
+        private final Move _move;
+        /** The side that made _move. */
+        private final Piece _mover;
+        /** My expanded children. */
+        private final List<Node> _children = new ArrayList<>();
+        /** Moves not yet expanded, or null if not yet computed. */
+        private List<Move> _untried;
+        /** True iff _move wins the game at once. */
+        private boolean _won;
+        /** Number of playouts through me. */
+        private int _visits;
+        /** Playouts through me won by _mover (draws count 1/2). */
+        private double _wins;
+    }
+
+    /** Return the pool of THREADS daemon threads for root-parallel
+     *  search, shared by all MCTS players with THREADS threads and
+     *  created when first needed. */
+    private static ExecutorService pool(int threads) {
+        synchronized (POOLS) {
+            if (POOLS[threads] == null) {
+                POOLS[threads] = Executors.newFixedThreadPool(threads, r -> {
+                    Thread t = new Thread(r, "mcts");
+                    t.setDaemon(true);
+                    return t;
+                });
+            }
+            return POOLS[threads];
+        }
+    }
+
+    /** Largest number of threads used by one search. */
+    private static final int MAX_THREADS =
+        Runtime.getRuntime().availableProcessors();
+
+    /** Thread pools for root-parallel search, indexed by size (see
+     *  pool). */
+    private static final ExecutorService[] POOLS =
+        new ExecutorService[MAX_THREADS + 1];
+
+    /** Maximum playouts per move. */
+    private final int _playouts;
+    /** Time limit per move in milliseconds, or 0 for none. */
+    private final long _millis;
+    /** Number of root-parallel trees. */
+    private final int _threads;
+    /** Threads on which my trees grow, shared with all players with
+     *  the same number of threads, or null if _threads is 1. */
+    private final ExecutorService _pool;
+    /** One search tree per thread, rooted at my last position. */
+    private Node[] _roots;
+    /** The last move I chose. */
+    private Move _lastMove;
+    /** The position after _lastMove. */
+    private Board _lastBoard;
+    /** Number of playouts in the last search. */
+    private long _lastPlayouts;
+    /** Number of halvings of my budgets (see reduceEffort). */
+    private int _reduction;
+    /** Time by which my next move is to be found, or 0 if none (see
+     *  setDeadline). */
+    private long _deadline;
+    /** Number of positions visited in all my searches. */
+    private final LongAdder _nodes = new LongAdder();
+}
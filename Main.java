@@ -5,6 +5,8 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static tablut.Utils.error;
 
@@ -19,14 +21,110 @@ public class Main {
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --testing --strict --log={0,1} --={0,2}",
+            new CommandArgs("--display --testing --strict --log={0,1}"
+                            + " --engine={0,1} --arena={0,1}"
+                            + " --opponent={0,1} --threads={0,1}"
+                            + " --sprt={0,1} --record={0,1}"
+                            + " --analyze={0,1} --depth={0,1}"
+                            + " --movetime={0,1} --serve={0,1}"
+                            + " --sessions={0,1} --clock={0,1}"
+                            + " --logmode={0,1} --logflush={0,1}"
+                            + " --replay={0,1} --metrics={0,1}"
+                            + " --perft={0,1} --size={0,1}"
+                            + " --weights={0,1} --network={0,1}"
+                            + " --tune={0,1}"
+                            + " --iterations={0,1} --output={0,1}"
+                            + " --={0,2}",
                             args);
         if (!options.ok()) {
             System.err.println("Usage: java tablut.Main [--display]"
-                               + " [--log=FILE] [--strict] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--logmode=MODE]"
+                               + " [--logflush=MS] [--strict]"
+                               + " [--engine=ENGINE] [--size=N]"
+                               + " [INPUT [OUTPUT]]");
+            System.err.println("       java tablut.Main --arena=GAMES"
+                               + " [--engine=ENGINE] [--opponent=ENGINE]"
+                               + " [--threads=N] [--sprt=ELO0:ELO1]"
+                               + " [--record=FILE]");
+            System.err.println("       java tablut.Main --analyze=FILE"
+                               + " [--depth=N] [--movetime=MS]"
+                               + " [--threads=N]");
+            System.err.println("       java tablut.Main --serve=PORT"
+                               + " [--sessions=N] [--threads=N]"
+                               + " [--engine=ENGINE] [--clock=MS]");
+            System.err.println("       java tablut.Main --replay=PATH"
+                               + " [--threads=N]");
+            System.err.println("       java tablut.Main --perft=DEPTH"
+                               + " [--size=N]");
+            System.err.println("       java tablut.Main --tune=PATH"
+                               + " [--iterations=N] [--threads=N]"
+                               + " [--output=FILE]");
+            System.err.println("  Any form may add [--metrics=PORT] to"
+                               + " serve metrics on the loopback"
+                               + " interface, [--weights=FILE] to"
+                               + " set the AI's evaluation weights, and"
+                               + " [--network=FILE] to set its network"
+                               + " (used after \"eval nnue\").");
             System.exit(1);
         }
 
+        if (options.contains("--metrics")) {
+            try {
+                int port = Metrics.REGISTRY.serve(
+                    Integer.parseInt(options.getFirst("--metrics")));
+                System.err.printf("Metrics on port %d%n", port);
+            } catch (NumberFormatException | IOException excp) {
+                System.err.println("Could not serve metrics");
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--weights")) {
+            try {
+                Evaluation.setStandard(
+                    Paths.get(options.getFirst("--weights")));
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Could not read weights: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--network")) {
+            try {
+                Network.setStandard(
+                    Paths.get(options.getFirst("--network")));
+            } catch (IOException | IllegalArgumentException excp) {
+                System.err.printf("Could not read network: %s%n",
+                                  excp.getMessage());
+                System.exit(1);
+            }
+        }
+
+        if (options.contains("--arena")) {
+            arena(options);
+            System.exit(0);
+        }
+        if (options.contains("--analyze")) {
+            analyze(options);
+            System.exit(0);
+        }
+        if (options.contains("--serve")) {
+            serve(options);
+            System.exit(0);
+        }
+        if (options.contains("--replay")) {
+            System.exit(replay(options) ? 0 : 1);
+        }
+        if (options.contains("--perft")) {
+            perft(options);
+            System.exit(0);
+        }
+        if (options.contains("--tune")) {
+            tune(options);
+            System.exit(0);
+        }
+
         List<String> files = options.get("--");
         if (!files.isEmpty()) {
             try {
@@ -49,6 +147,18 @@ public class Main {
         }
 
         Controller control = getController(options);
+        if (options.contains("--size")) {
+            if (options.contains("--display")) {
+                System.err.println("The display shows only 9x9 boards");
+                System.exit(1);
+            }
+            try {
+                control.executeCommand("size " + options.getFirst("--size"));
+            } catch (IllegalArgumentException excp) {
+                System.err.println(excp.getMessage());
+                System.exit(1);
+            }
+        }
         System.out.println("Tablut 61B, staff version 1.0");
 
         try {
@@ -63,11 +173,247 @@ public class Main {
 
     }
 
+    /** Play the engine-vs-engine match indicated by OPTIONS and report
+     *  the results on the standard output. */
+    private static void arena(CommandArgs options) {
+        try {
+            int games = Integer.parseInt(options.getFirst("--arena"));
+            String engine =
+                options.contains("--engine") ? options.getFirst("--engine")
+                : "ai";
+            String opponent =
+                options.contains("--opponent")
+                ? options.getFirst("--opponent") : engine;
+            int threads =
+                options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            Arena arena = new Arena(engine, opponent, threads);
+            GameWriter recorder = null;
+            if (options.contains("--record")) {
+                recorder = new GameWriter(
+                    new FileOutputStream(options.getFirst("--record")));
+                arena.setRecorder(recorder);
+            }
+            if (options.contains("--sprt")) {
+                String[] bounds = options.getFirst("--sprt").split(":");
+                if (bounds.length != 2) {
+                    throw error("--sprt needs ELO0:ELO1");
+                }
+                SPRT test = new SPRT(Double.parseDouble(bounds[0]),
+                                     Double.parseDouble(bounds[1]));
+                arena.play(games, test);
+                arena.report(System.out);
+                test.report(System.out);
+            } else {
+                arena.play(games);
+                arena.report(System.out);
+            }
+            if (recorder != null) {
+                recorder.close();
+            }
+        } catch (IOException excp) {
+            System.err.printf("Could not record games: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        } catch (NumberFormatException excp) {
+            System.err.println("Bad number in arena options");
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Analyze the positions in the file indicated by OPTIONS, printing
+     *  the results on the standard output. */
+    private static void analyze(CommandArgs options) {
+        try {
+            int depth =
+                options.contains("--depth")
+                ? Integer.parseInt(options.getFirst("--depth"))
+                : AI.DEFAULT_DEPTH;
+            long millis =
+                options.contains("--movetime")
+                ? Long.parseLong(options.getFirst("--movetime")) : 0;
+            int threads =
+                options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            new Analyzer(depth, millis, threads)
+                .analyze(Paths.get(options.getFirst("--analyze")),
+                         System.out);
+        } catch (NumberFormatException excp) {
+            System.err.println("Bad number in analysis options");
+            System.exit(1);
+        } catch (IOException excp) {
+            System.err.printf("Could not read positions: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        } catch (IllegalStateException excp) {
+            System.err.printf("Analysis failed: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Host games for network clients as indicated by OPTIONS. */
+    private static void serve(CommandArgs options) {
+        try {
+            int port = Integer.parseInt(options.getFirst("--serve"));
+            int sessions =
+                options.contains("--sessions")
+                ? Integer.parseInt(options.getFirst("--sessions"))
+                : DEFAULT_SESSIONS;
+            int threads =
+                options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            Player engine =
+                options.contains("--engine")
+                ? Controller.engine(options.getFirst("--engine"))
+                : new AI();
+            long clock =
+                options.contains("--clock")
+                ? Long.parseLong(options.getFirst("--clock"))
+                : DEFAULT_CLOCK;
+            GameServer server =
+                new GameServer(port, sessions, threads, engine, clock);
+            System.out.printf("Serving Tablut on port %d%n", server.port());
+            server.serve();
+        } catch (NumberFormatException excp) {
+            System.err.println("Bad number in server options");
+            System.exit(1);
+        } catch (IOException excp) {
+            System.err.printf("Could not start server: %s%n",
+                              excp.getMessage());
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Replay the log file or directory of log files indicated by
+     *  OPTIONS, reporting on the standard output.  Returns true iff
+     *  every replayed position matched its log. */
+    private static boolean replay(CommandArgs options) {
+        try {
+            int threads =
+                options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            return new Replayer(threads).replayAll(
+                Replayer.logFiles(Paths.get(options.getFirst("--replay"))),
+                System.out);
+        } catch (NumberFormatException excp) {
+            System.err.println("Bad number in replay options");
+        } catch (IOException excp) {
+            System.err.printf("Could not read logs: %s%n",
+                              excp.getMessage());
+        }
+        return false;
+    }
+
+    /** Count the positions reached from the starting position to each
+     *  depth up to that given by OPTIONS, on a board of the size given
+     *  by OPTIONS (default 9), reporting counts and rates on the
+     *  standard output. */
+    private static void perft(CommandArgs options) {
+        try {
+            int depth = Integer.parseInt(options.getFirst("--perft"));
+            int size =
+                options.contains("--size")
+                ? Integer.parseInt(options.getFirst("--size"))
+                : Geometry.MIN_SIZE;
+            TaflBoard board = TaflBoard.create(size);
+            int[][] buffers = new int[depth][board.maxMoves()];
+            System.out.printf("%dx%d board (%s)%n", size, size,
+                              board.getClass().getSimpleName());
+            for (int d = 1; d <= depth; d += 1) {
+                long start = System.nanoTime();
+                long nodes = board.perft(d, buffers);
+                long nanos = Math.max(1, System.nanoTime() - start);
+                System.out.printf("depth %d: %d positions, %.0f/s%n",
+                                  d, nodes, nodes * 1e9 / nanos);
+            }
+        } catch (NumberFormatException excp) {
+            System.err.println("Bad number in perft options");
+            System.exit(1);
+        } catch (IllegalArgumentException excp) {
+            System.err.println(excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Fit the evaluation weights to the games in the game file or
+     *  directory of game files indicated by OPTIONS, starting from the
+     *  current weights, and write the result to the weights file
+     *  indicated by OPTIONS. */
+    private static void tune(CommandArgs options) {
+        try {
+            int threads =
+                options.contains("--threads")
+                ? Integer.parseInt(options.getFirst("--threads"))
+                : Runtime.getRuntime().availableProcessors();
+            int iterations =
+                options.contains("--iterations")
+                ? Integer.parseInt(options.getFirst("--iterations"))
+                : DEFAULT_TUNING_ITERATIONS;
+            String output =
+                options.contains("--output") ? options.getFirst("--output")
+                : Evaluation.WEIGHTS_RESOURCE;
+            Tuner tuner = new Tuner(threads);
+            Path games = Paths.get(options.getFirst("--tune"));
+            for (Path file : Replayer.logFiles(games)) {
+                System.out.printf("%s: %d positions%n", file,
+                                  tuner.load(file));
+            }
+            if (tuner.positions() == 0) {
+                System.err.println("No positions to tune on");
+                System.exit(1);
+            }
+            Evaluation start = Evaluation.standard();
+            double[] weights = new double[Evaluation.NUM_FEATURES];
+            for (int k = 0; k < weights.length; k += 1) {
+                weights[k] = start.weight(k);
+            }
+            System.out.printf("%d positions, initial error %.6f%n",
+                              tuner.positions(), tuner.error(weights));
+            weights = tuner.fit(weights, iterations, System.out);
+            int[] rounded = new int[weights.length];
+            for (int k = 0; k < weights.length; k += 1) {
+                rounded[k] = (int) Math.round(weights[k]);
+            }
+            try (PrintStream out = new PrintStream(output)) {
+                new Evaluation(rounded)
+                    .write(out, String.format("Fitted to %d positions",
+                                              tuner.positions()));
+            }
+            System.out.printf("Wrote %s%n", output);
+        } catch (NumberFormatException excp) {
+            System.err.println("Bad number in tuning options");
+            System.exit(1);
+        } catch (IOException excp) {
+            System.err.printf("Could not tune: %s%n", excp.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /** Default number of steps in fitting evaluation weights. */
+    private static final int DEFAULT_TUNING_ITERATIONS = 1000;
+
+    /** Default limit on simultaneous games hosted by a server. */
+    private static final int DEFAULT_SESSIONS = 1000;
+
+    /** Default time for each automated player in a hosted game, in
+     *  milliseconds. */
+    private static final long DEFAULT_CLOCK = 300000;
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
         GUI gui;
-        PrintStream log;
+        AsyncLog log;
         View view;
         Reporter reporter;
 
@@ -90,13 +436,34 @@ public class Main {
         log = null;
         if (options.contains("--log")) {
             try {
-                log = new PrintStream(options.getFirst("--log"));
+                AsyncLog.Durability mode = AsyncLog.Durability.BUFFERED;
+                if (options.contains("--logmode")) {
+                    mode = AsyncLog.Durability.valueOf(
+                        options.getFirst("--logmode").toUpperCase());
+                }
+                long flush =
+                    options.contains("--logflush")
+                    ? Long.parseLong(options.getFirst("--logflush"))
+                    : AsyncLog.DEFAULT_FLUSH_MILLIS;
+                log = AsyncLog.open(options.getFirst("--log"), mode, flush);
             } catch (IOException excp) {
                 throw error("Could not open log file");
+            } catch (IllegalArgumentException excp) {
+                throw error("Bad log options");
             }
         }
 
+        Player autoPlayer;
+        if (options.contains("--engine")) {
+            autoPlayer = Controller.engine(options.getFirst("--engine"));
+        } else {
+            autoPlayer = new AI();
+        }
+        if (gui != null) {
+            autoPlayer = new BackgroundPlayer(autoPlayer, gui);
+        }
+
         return new Controller(view, log, reporter, manualPlayer,
-                              new AI(), options.contains("--strict"));
+                              autoPlayer, options.contains("--strict"));
     }
 }
@@ -0,0 +1,197 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A registry of named metrics (counters, gauges, and latency
+ *  histograms) for long-running game hosts, with a plain-text scrape
+ *  endpoint.  Metrics are updated lock-free by the game threads and
+ *  written out, on request, in the Prometheus text format, e.g.
+ *  <pre>
+ *     # TYPE tablut_moves_total counter
+ *     tablut_moves_total 1234
+ *     # TYPE tablut_ai_move_seconds summary
+ *     tablut_ai_move_seconds{quantile="0.99"} 0.041
+ *  </pre>
+ *  REGISTRY holds the metrics of the Tablut program itself.
+ *  @author Dhruv Krishnaswamy
+ */
+class Metrics {
+
+    /** The registry of the Tablut program's metrics. */
+    static final Metrics REGISTRY = new Metrics();
+
+    /** The percentiles reported for each histogram. */
+    static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    /** A new, empty registry. */
+    Metrics() {
+        _start = System.nanoTime();
+    }
+
+    /** Return the counter NAME, described by HELP, creating it if
+     *  needed. */
+    LongAdder counter(String name, String help) {
+        return (LongAdder) register(name, help, "counter",
+                                    new LongAdder())._value;
+    }
+
+    /** Return the gauge NAME, described by HELP, creating it if needed.
+     *  A gauge is a counter that is also decremented. */
+    LongAdder gauge(String name, String help) {
+        return (LongAdder) register(name, help, "gauge",
+                                    new LongAdder())._value;
+    }
+
+    /** Return the latency histogram NAME, described by HELP, creating it
+     *  if needed.  It is written out in seconds. */
+    LatencyHistogram histogram(String name, String help) {
+        return (LatencyHistogram) register(name, help, "summary",
+                                           new LatencyHistogram())._value;
+    }
+
+    /** Return the metric NAME, registering it with HELP, TYPE, and
+     *  VALUE if it does not exist. */
+    private Metric register(String name, String help, String type,
+                            Object value) {
+        Metric metric =
+            _metrics.computeIfAbsent(name,
+                                     k -> new Metric(help, type, value));
+        if (!metric._type.equals(type)) {
+            throw Utils.error("metric %s is a %s", name, metric._type);
+        }
+        return metric;
+    }
+
+    /** Return the current values of all my metrics, as text. */
+    String text() {
+        StringBuilder out = new StringBuilder();
+        double uptime = (System.nanoTime() - _start) * 1e-9;
+        out.append("# HELP tablut_uptime_seconds Time since start.\n")
+            .append("# TYPE tablut_uptime_seconds gauge\n")
+            .append(String.format(Locale.ROOT,
+                                  "tablut_uptime_seconds %.3f\n", uptime));
+        for (Map.Entry<String, Metric> entry : _metrics.entrySet()) {
+            String name = entry.getKey();
+            Metric metric = entry.getValue();
+            out.append(String.format(Locale.ROOT,
+                                     "# HELP %s %s\n# TYPE %s %s\n",
+                                     name, metric._help, name,
+                                     metric._type));
+            if (metric._value instanceof LongAdder) {
+                out.append(String.format(Locale.ROOT, "%s %d\n", name,
+                                         ((LongAdder) metric._value)
+                                         .sum()));
+            } else {
+                LatencyHistogram hist = (LatencyHistogram) metric._value;
+                for (double q : QUANTILES) {
+                    out.append(String.format(Locale.ROOT,
+                                             "%s{quantile=\"%s\"} %.6f\n",
+                                             name, q,
+                                             hist.percentile(q) * 1e-9));
+                }
+                out.append(String.format(Locale.ROOT,
+                                         "%s_sum %.6f\n%s_count %d\n",
+                                         name, hist.sum() * 1e-9,
+                                         name, hist.count()));
+            }
+        }
+        return out.toString();
+    }
+
+    /** Start serving my metrics on PORT (0 for any free port) of the
+     *  loopback interface, on a daemon thread, and return the port
+     *  used.  Each connection receives the current metrics; an HTTP
+     *  request (e.g., from a Prometheus scraper) receives them as an
+     *  HTTP response. */
+    int serve(int port) throws IOException {
+        ServerSocket server =
+            new ServerSocket(port, BACKLOG, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (Socket client = server.accept()) {
+                    respond(client);
+                } catch (IOException excp) {
+                    /* Ignore failures of single scrapes. */
+                }
+            }
+        }, "metrics");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return server.getLocalPort();
+    }
+
+    /** Send my metrics to CLIENT. */
+    private void respond(Socket client) throws IOException {
+        client.setSoTimeout(REQUEST_TIMEOUT_MILLIS);
+        InputStream in = client.getInputStream();
+        boolean http = false;
+        try {
+            int c = in.read();
+            http = c == 'G' || c == 'H';
+            int last = c, previous = -1;
+            while (http && c >= 0) {
+                c = in.read();
+                if (c == '\n' && (last == '\n'
+                                  || last == '\r' && previous == '\n')) {
+                    break;
+                }
+                previous = last;
+                last = c;
+            }
+        } catch (IOException excp) {
+            /* A client that sends nothing gets plain text. */
+        }
+        byte[] body = text().getBytes(StandardCharsets.UTF_8);
+        OutputStream out = client.getOutputStream();
+        if (http) {
+            out.write(String.format(Locale.ROOT, "HTTP/1.0 200 OK\r\n"
+                                    + "Content-Type: text/plain;"
+                                    + " version=0.0.4\r\n"
+                                    + "Content-Length: %d\r\n\r\n",
+                                    body.length)
+                      .getBytes(StandardCharsets.US_ASCII));
+        }
+        out.write(body);
+        out.flush();
+    }
+
+    /** A registered metric. */
+    private static class Metric {
+        /** A metric described by HELP of the given TYPE whose state is
+         *  VALUE. */
+        Metric(String help, String type, Object value) {
+            _help = help;
+            _type = type;
+            _value = value;
+        }
+
+        /** Description. */
+        private final String _help;
+        /** Prometheus type: counter, gauge, or summary. */
+        private final String _type;
+        /** A LongAdder (counters and gauges) or LatencyHistogram. */
+        private final Object _value;
+    }
+
+    /** Number of scrapes that may wait to be accepted. */
+    private static final int BACKLOG = 8;
+
+    /** Time allowed for a client to send its request. */
+    private static final int REQUEST_TIMEOUT_MILLIS = 1000;
+
+    /** Metrics by name, in name order. */
+    private final Map<String, Metric> _metrics =
+        new ConcurrentSkipListMap<>();
+    /** Creation time of the registry (System.nanoTime()). */
+    private final long _start;
+}
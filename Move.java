@@ -1,13 +1,10 @@
 package tablut;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 import static tablut.Square.sq;
+import static tablut.Square.BOARD_SIZE;
 import static tablut.Square.NUM_SQUARES;
-import static tablut.Square.ROOK_SQUARES;
 import static tablut.Square.SQUARE_LIST;
 import static tablut.Utils.*;
 
@@ -21,9 +18,11 @@ final class Move {
 
     /** The syntax for a move, using either forms CR-C (horizontal moves)
      *  or CR-R (vertical moves), where C is a column letter (a-i or A-I) and
-     *  R is a row number (1-9). */
+     *  R is a row number (1-9).  Moves are parsed directly (see mv); this
+     *  pattern documents the syntax for other uses. */
     static final Pattern MOVE_PATTERN =
-        Pattern.compile(String.format("(([a-i])([1-9]))-(?:([a-i])|([1-9]))"));
+        Pattern.compile("(([a-i])([1-9]))-(?:([a-i])|([1-9]))",
+                        Pattern.CASE_INSENSITIVE);
 
     /** Return the square moved from. */
     Square from() {
@@ -41,62 +40,94 @@ final class Move {
         if ((from.row() != to.row() && from.col() != to.col()) || from == to) {
             return null;
         }
+        return MOVES[slot(from, to)];
+    }
 
-        if (MOVES[from.index()][to.index()] == null) {
-            MOVES[from.index()][to.index()] = new Move(from, to);
+    /** Return the index in MOVES of the rook move FROM-TO: the moves from
+     *  each square take MOVES_PER_SQUARE consecutive entries, first those
+     *  along its row, by column, and then those along its column, by
+     *  row. */
+    private static int slot(Square from, Square to) {
+        int k;
+        if (from.row() == to.row()) {
+            k = to.col() < from.col() ? to.col() : to.col() - 1;
+        } else {
+            k = BOARD_SIZE - 1
+                + (to.row() < from.row() ? to.row() : to.row() - 1);
         }
-        return MOVES[from.index()][to.index()];
+        return from.index() * MOVES_PER_SQUARE + k;
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            Square from = sq(_moveMatcher.group(1));
-            Square to;
-            if (_moveMatcher.group(5) == null) {
-                to = sq(_moveMatcher.group(4), _moveMatcher.group(3));
-            } else {
-                to = sq(_moveMatcher.group(2), _moveMatcher.group(5));
-            }
-            return mv(from, to);
+        return mv(str, 0, str.length());
+    }
+
+    /** Return the Move denoted by the characters START .. END-1 of STR,
+     *  if they denote a move with valid syntax (see MOVE_PATTERN), and null
+     *  otherwise.  The text is decoded directly, without matching
+     *  MOVE_PATTERN or creating strings. */
+    static Move mv(CharSequence str, int start, int end) {
+        if (!isGrammaticalMove(str, start, end)) {
+            return null;
+        }
+        Square from = Square.sq(str, start);
+        int dest = str.charAt(start + 3);
+        int col = Square.colIndex(dest);
+        if (col >= 0) {
+            return mv(from, sq(col, from.row()));
+        } else {
+            return mv(from, sq(from.col(), Square.rowIndex(dest)));
         }
-        return null;
+    }
+
+    /** Return the Move whose packed form (see packed) is PACKED, or null
+     *  if PACKED does not denote a move. */
+    static Move mv(int packed) {
+        int from = packed >>> 7, to = packed & 0x7f;
+        if (packed < 0 || from >= NUM_SQUARES || to >= NUM_SQUARES) {
+            return null;
+        }
+        return mv(sq(from), sq(to));
     }
 
     /** Return true iff STR has the right format for a Move. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return isGrammaticalMove(str, 0, str.length());
     }
 
-    @Override
-    public String toString() {
-        return _str;
+    /** Return true iff the characters START .. END-1 of STR have the right
+     *  format for a Move. */
+    static boolean isGrammaticalMove(CharSequence str, int start, int end) {
+        if (end - start != 4 || str.charAt(start + 2) != '-'
+            || Square.sq(str, start) == null) {
+            return false;
+        }
+        char dest = str.charAt(start + 3);
+        return Square.colIndex(dest) >= 0 || Square.rowIndex(dest) >= 0;
     }
 
-    /** A convenience class to represent mutable lists of Moves.  This
-     *  class may safely be used as the element type in an array. */
-    static class MoveList extends ArrayList<Move> {
-        /** An initially empty list. */
-        MoveList() {
-        }
+    /** Return my 14-bit packed form: the index of from() in the upper 7
+     *  bits and that of to() in the lower 7. */
+    int packed() {
+        return (_from.index() << 7) | _to.index();
+    }
 
-        /** A list initialize to INIT. */
-        MoveList(Collection<Move> init) {
-            super(init);
+    @Override
+    public String toString() {
+        String str = _str;
+        if (str == null) {
+            char dest = _from.col() == _to.col() ? (char) ('1' + _to.row())
+                : (char) ('a' + _to.col());
+            str = _str = _from + "-" + dest;
         }
+        return str;
     }
 
     /** Construct the Move FROM-TO. */
     private Move(Square from, Square to) {
         _from = from; _to = to;
-        if (_from.col() == _to.col()) {
-            _str = String.format("%s-%c", from, (char) to.row() + '1');
-        } else {
-            _str = String.format("%s-%c", from, (char) to.col() + 'a');
-        }
     }
 
     @Override
@@ -109,23 +140,21 @@ final class Move {
         return (_from.index() << 6) + _to.index();
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][] MOVES = new Move[NUM_SQUARES][NUM_SQUARES];
+    /** Number of rook moves from each square. */
+    private static final int MOVES_PER_SQUARE = 2 * (BOARD_SIZE - 1);
 
-    /** ROOK_MOVES[i][d] is a list of all rook moves in direction
-     *  d from the square with index i. Direction displacements are defined
-     *  as in Square. Lists are in order of increasing distance from
-     *  square i. */
-    static final MoveList[][] ROOK_MOVES = new MoveList[NUM_SQUARES][4];
+    /** All Moves, indexed as described for slot.  The Moves are made
+     *  when the class is initialized, so that there is exactly one of
+     *  each; their names are made when first needed. */
+    private static final Move[] MOVES =
+        new Move[NUM_SQUARES * MOVES_PER_SQUARE];
 
     static {
-        for (Square sq0 : SQUARE_LIST) {
-            int r0 = sq0.row(), c0 = sq0.col(), i0 = sq0.index();
+        for (Square from : SQUARE_LIST) {
             for (int d = 0; d < 4; d += 1) {
-                ROOK_MOVES[i0][d] = new MoveList();
-                MoveList L = ROOK_MOVES[i0][d];
-                for (Square sq1 : ROOK_SQUARES[i0][d]) {
-                    L.add(mv(sq0, sq1));
+                for (int k = 1; from.rookMove(d, k) != null; k += 1) {
+                    Square to = from.rookMove(d, k);
+                    MOVES[slot(from, to)] = new Move(from, to);
                 }
             }
         }
@@ -133,9 +162,7 @@ final class Move {
 
     /** The components of this Move. */
     private final Square _from, _to;
-    /** The printed form of this Move. */
+    /** The printed form of this Move, made when first needed. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
 
@@ -0,0 +1,351 @@
+package tablut;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static tablut.Piece.*;
+import static tablut.Utils.*;
+
+/** An efficiently updatable neural network (in the style of NNUE) for
+ *  evaluating Tablut positions.  Its inputs are the INPUTS piece-square
+ *  features (one per kind of piece--black, white, or king--and square),
+ *  feeding one hidden layer of HIDDEN units and a single output, all
+ *  with 16-bit integer weights.  The hidden layer's sums (its
+ *  accumulator) change only by the columns of the weights of the few
+ *  features that a move changes, so a Board that has a network (see
+ *  Board.setNetwork) keeps an Accumulator, adding and subtracting
+ *  columns as pieces are put and removed and saving and restoring it on
+ *  moves and undos.  The output is then
+ *  <pre>
+ *     (OUTPUT_BIAS + sum_j clamp(acc_j, 0, CLIP) * OUTPUT_WEIGHT_j)
+ *         >> OUTPUT_SHIFT,
+ *  </pre>
+ *  in the units of Evaluation (positive favors white).
+ *
+ *  The arithmetic uses jdk.incubator.vector (see VectorKernel) when the
+ *  program is run with --add-modules jdk.incubator.vector, and otherwise
+ *  plain loops.
+ *
+ *  A network file holds MAGIC, the numbers of inputs and hidden units
+ *  (ints), and then, as big-endian shorts, the input weights (HIDDEN per
+ *  input, in input order), the hidden biases, and the output weights,
+ *  followed by the output bias as an int.  The network used by AIs is
+ *  that of standard().
+ *  @author Dhruv Krishnaswamy
+ */
+class Network {
+
+    /** Number of inputs: three kinds of piece on each square. */
+    static final int INPUTS = 3 * Square.NUM_SQUARES;
+
+    /** Number of hidden units. */
+    static final int HIDDEN = 32;
+
+    /** Upper limit of the hidden units' activations. */
+    static final int CLIP = 127;
+
+    /** Right shift applied to the output. */
+    static final int OUTPUT_SHIFT = 4;
+
+    /** Leading bytes of a network file. */
+    static final byte[] MAGIC = { 'T', 'N', 'N', '1' };
+
+    /** Name of the network resource loaded by standard(). */
+    static final String NETWORK_RESOURCE = "network.bin";
+
+    /** A network with the given INPUTWEIGHTS, HIDDENBIAS, OUTPUTWEIGHTS,
+     *  and OUTPUTBIAS (see the file format above). */
+    Network(short[] inputWeights, short[] hiddenBias, short[] outputWeights,
+            int outputBias) {
+        if (inputWeights.length != INPUTS * HIDDEN
+            || hiddenBias.length != HIDDEN || outputWeights.length != HIDDEN) {
+            throw error("network has wrong dimensions");
+        }
+        _inputWeights = inputWeights.clone();
+        _hiddenBias = hiddenBias.clone();
+        _outputWeights = outputWeights.clone();
+        _outputBias = outputBias;
+    }
+
+    /** Return the network used by AIs: the one given to setStandard, if
+     *  any, or else the resource NETWORK_RESOURCE next to these classes,
+     *  if present, or else initial(). */
+    static synchronized Network standard() {
+        if (_standard == null) {
+            try (InputStream in = Utils.getResource(NETWORK_RESOURCE)) {
+                _standard = read(in);
+            } catch (IOException | IllegalArgumentException excp) {
+                _standard = initial();
+            }
+        }
+        return _standard;
+    }
+
+    /** Make the network in FILE that of standard(). */
+    static synchronized void setStandard(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            _standard = read(in);
+        }
+    }
+
+    /** Return a network that needs no training, whose first three hidden
+     *  units count white's soldiers, count black's pieces, and measure
+     *  the king's nearness to an edge, weighted much as by the default
+     *  weights of Evaluation; its other units are unused. */
+    static Network initial() {
+        short[] input = new short[INPUTS * HIDDEN];
+        short[] output = new short[HIDDEN];
+        int last = Board.SIZE - 1;
+        for (Square sq : Square.SQUARE_LIST) {
+            input[input(WHITE, sq) * HIDDEN] = 12;
+            input[input(BLACK, sq) * HIDDEN + 1] = 7;
+            int edge = Math.min(Math.min(sq.col(), last - sq.col()),
+                                Math.min(sq.row(), last - sq.row()));
+            input[input(KING, sq) * HIDDEN + 2] = (short) (CLIP - 30 * edge);
+        }
+        output[0] = 400;
+        output[1] = -457;
+        output[2] = 21;
+        return new Network(input, new short[HIDDEN], output, 0);
+    }
+
+    /** Return the network read from IN, in the format of a network
+     *  file. */
+    static Network read(InputStream in) throws IOException {
+        DataInputStream data =
+            new DataInputStream(new BufferedInputStream(in));
+        byte[] magic = new byte[MAGIC.length];
+        data.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("not a network file");
+        }
+        if (data.readInt() != INPUTS || data.readInt() != HIDDEN) {
+            throw new IOException("network has wrong dimensions");
+        }
+        short[] input = readShorts(data, INPUTS * HIDDEN),
+            hidden = readShorts(data, HIDDEN),
+            output = readShorts(data, HIDDEN);
+        return new Network(input, hidden, output, data.readInt());
+    }
+
+    /** Return N shorts read from DATA. */
+    private static short[] readShorts(DataInputStream data, int n)
+        throws IOException {
+        short[] result = new short[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = data.readShort();
+        }
+        return result;
+    }
+
+    /** Write me on OUT in the format of a network file. */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data =
+            new DataOutputStream(new BufferedOutputStream(out));
+        data.write(MAGIC);
+        data.writeInt(INPUTS);
+        data.writeInt(HIDDEN);
+        for (short[] shorts
+                 : new short[][] { _inputWeights, _hiddenBias,
+                                   _outputWeights }) {
+            for (short s : shorts) {
+                data.writeShort(s);
+            }
+        }
+        data.writeInt(_outputBias);
+        data.flush();
+    }
+
+    /** Return a new accumulator for me, holding my hidden biases (the
+     *  accumulator of an empty board). */
+    Accumulator accumulator() {
+        return new Accumulator();
+    }
+
+    /** Return my output for the position whose accumulator is ACC. */
+    int score(Accumulator acc) {
+        return (_outputBias
+                + KERNEL.output(acc.current(), _outputWeights, CLIP))
+            >> OUTPUT_SHIFT;
+    }
+
+    /** Return the input for piece P (not EMPTY) on SQ. */
+    static int input(Piece p, Square sq) {
+        int kind = p == BLACK ? 0 : p == WHITE ? 1 : 2;
+        return kind * Square.NUM_SQUARES + sq.index();
+    }
+
+    /** Return the name of the implementation of the arithmetic in
+     *  use. */
+    static String kernelName() {
+        return KERNEL.name();
+    }
+
+    /** The hidden-layer sums of a position for my network, with a stack
+     *  of saved sums for undoing moves. */
+    class Accumulator {
+
+        /** An accumulator of an empty board with nothing saved. */
+        Accumulator() {
+            _stack = new short[INITIAL_STACK][];
+            _stack[0] = _hiddenBias.clone();
+        }
+
+        /** Return an accumulator with the same contents as me. */
+        Accumulator copy() {
+            Accumulator result = new Accumulator();
+            result._stack = new short[_stack.length][];
+            for (int k = 0; k <= _top; k += 1) {
+                result._stack[k] = _stack[k].clone();
+            }
+            result._top = _top;
+            return result;
+        }
+
+        /** Return my network. */
+        Network network() {
+            return Network.this;
+        }
+
+        /** Add the input for piece P (not EMPTY) on SQ. */
+        void add(Piece p, Square sq) {
+            KERNEL.add(_stack[_top], _inputWeights, input(p, sq) * HIDDEN);
+        }
+
+        /** Remove the input for piece P (not EMPTY) on SQ. */
+        void remove(Piece p, Square sq) {
+            KERNEL.subtract(_stack[_top], _inputWeights,
+                            input(p, sq) * HIDDEN);
+        }
+
+        /** Save my sums, to be restored by pop. */
+        void push() {
+            if (_top + 1 == _stack.length) {
+                _stack = Arrays.copyOf(_stack, 2 * _stack.length);
+            }
+            if (_stack[_top + 1] == null) {
+                _stack[_top + 1] = new short[HIDDEN];
+            }
+            System.arraycopy(_stack[_top], 0, _stack[_top + 1], 0, HIDDEN);
+            _top += 1;
+        }
+
+        /** Restore the sums last saved by push. */
+        void pop() {
+            if (_top == 0) {
+                throw error("no saved accumulator");
+            }
+            _top -= 1;
+        }
+
+        /** Discard all saved sums, keeping the current ones. */
+        void forget() {
+            short[] current = _stack[_top];
+            _stack[_top] = _stack[0];
+            _stack[0] = current;
+            _top = 0;
+        }
+
+        /** Set my sums to those of an empty board and discard all saved
+         *  sums. */
+        void clear() {
+            _top = 0;
+            System.arraycopy(_hiddenBias, 0, _stack[0], 0, HIDDEN);
+        }
+
+        /** Return my current sums. */
+        short[] current() {
+            return _stack[_top];
+        }
+
+        /** Saved sums (below _top) and current sums (at _top). */
+        private short[][] _stack;
+        /** Index of the current sums. */
+        private int _top;
+    }
+
+    /** Arithmetic on accumulators, with vector and scalar
+     *  implementations. */
+    abstract static class Kernel {
+        /** Add WEIGHTS[OFFSET .. OFFSET+HIDDEN-1] to ACC. */
+        abstract void add(short[] acc, short[] weights, int offset);
+
+        /** Subtract WEIGHTS[OFFSET .. OFFSET+HIDDEN-1] from ACC. */
+        abstract void subtract(short[] acc, short[] weights, int offset);
+
+        /** Return the sum of the products of ACC, each limited to 0 ..
+         *  CLIP, with WEIGHTS. */
+        abstract int output(short[] acc, short[] weights, int clip);
+
+        /** Return the name of this implementation. */
+        abstract String name();
+    }
+
+    /** Arithmetic on accumulators in plain loops. */
+    static class ScalarKernel extends Kernel {
+        @Override
+        void add(short[] acc, short[] weights, int offset) {
+            for (int j = 0; j < acc.length; j += 1) {
+                acc[j] += weights[offset + j];
+            }
+        }
+
+        @Override
+        void subtract(short[] acc, short[] weights, int offset) {
+            for (int j = 0; j < acc.length; j += 1) {
+                acc[j] -= weights[offset + j];
+            }
+        }
+
+        @Override
+        int output(short[] acc, short[] weights, int clip) {
+            int sum = 0;
+            for (int j = 0; j < acc.length; j += 1) {
+                sum += Math.min(Math.max(acc[j], 0), clip) * weights[j];
+            }
+            return sum;
+        }
+
+        @Override
+        String name() {
+            return "scalar";
+        }
+    }
+
+    /** Return the vector kernel if the vector API is available, and
+     *  otherwise the scalar kernel. */
+    private static Kernel kernel() {
+        try {
+            return (Kernel) Class.forName("tablut.VectorKernel")
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return new ScalarKernel();
+        }
+    }
+
+    /** The kernel in use. */
+    private static final Kernel KERNEL = kernel();
+
+    /** Initial depth of accumulator stacks. */
+    private static final int INITIAL_STACK = 16;
+
+    /** The network used by AIs, or null if not yet chosen. */
+    private static Network _standard;
+
+    /** Input weights: those of input i at i*HIDDEN to (i+1)*HIDDEN-1. */
+    private final short[] _inputWeights;
+    /** Biases of the hidden units. */
+    private final short[] _hiddenBias;
+    /** Weights of the hidden units' activations in the output. */
+    private final short[] _outputWeights;
+    /** Bias of the output. */
+    private final int _outputBias;
+}
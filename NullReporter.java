@@ -0,0 +1,19 @@
+package tablut;
+
+/** A Reporter that does nothing.
+ *  @author Dhruv Krishnaswamy
+ */
+class NullReporter implements Reporter {
+
+    @Override
+    public void reportError(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportNote(String fmt, Object... args) {
+    }
+
+    @Override
+    public void reportMove(String move) {
+    }
+}
@@ -39,6 +39,78 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Return a template like me, but that uses ENGINE, a template for an
+     *  automated player, to choose moves.  By default, this is simply
+     *  ENGINE; players that wrap others (see PooledPlayer) wrap it
+     *  likewise. */
+    Player withEngine(Player engine) {
+        return engine;
+    }
+
+    /** Ask me to search with effort reduced by LEVELS steps (0 for full
+     *  effort) until told otherwise, because compute is scarce.  Players
+     *  that do not search ignore this. */
+    void reduceEffort(int levels) {
+    }
+
+    /** Ask me to find my next move by DEADLINE (as by
+     *  System.currentTimeMillis()), returning the best move found by
+     *  then.  Applies to the next move only.  Players that do not search
+     *  ignore this. */
+    void setDeadline(long deadline) {
+    }
+
+    /** Make me evaluate positions with the network (see Network) iff
+     *  ON, and otherwise with the handcrafted evaluation (see
+     *  Evaluation), from my next search on.  Players without an
+     *  evaluation ignore this. */
+    void useNetwork(boolean on) {
+    }
+
+    /** Return a description of the evaluation I use, or null if I have
+     *  none. */
+    String evaluation() {
+        return null;
+    }
+
+    /** Note that a new game has begun (as on the new command).  Players
+     *  with state kept for the length of a game reset it.  By default,
+     *  does nothing. */
+    void newGame() {
+    }
+
+    /** Return true iff I can play on boards of SIZE squares on a side
+     *  (see Controller's size command).  By default, I can play on
+     *  any. */
+    boolean playsSize(int size) {
+        return true;
+    }
+
+    /** Return a template like me that searches only on the thread that
+     *  asks it for a move, as when run by a SearchScheduler, whose
+     *  threads are the only compute its searches may use.  By default,
+     *  this is me. */
+    Player confined() {
+        return this;
+    }
+
+    /** Send reports of the progress of my searches to PROGRESS (none
+     *  if null).  Players that do not search ignore this. */
+    void setProgress(SearchProgress progress) {
+    }
+
+    /** Return statistics describing my searches, or null if I do not
+     *  search. */
+    SearchStats stats() {
+        return null;
+    }
+
+    /** Return the number of positions I have examined in searching for
+     *  moves so far (0 for players that do not search). */
+    long nodeCount() {
+        return 0;
+    }
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
@@ -0,0 +1,99 @@
+package tablut;
+
+/** An automated Player whose searches are run by a SearchScheduler
+ *  shared among many games, so that the number of searches under way at
+ *  once is bounded however many games are in progress.  Each PooledPlayer
+ *  keeps a clock for its side of the game, charged with the time from
+ *  asking for each move to receiving it and refilled when a game begins
+ *  (see Player.newGame), which the scheduler uses to order and size
+ *  searches.
+ *  @author Dhruv Krishnaswamy
+ */
+class PooledPlayer extends Player {
+
+    /** A template for players that run the searches of players created
+     *  from ENGINE (confined to the scheduler's threads; see
+     *  Player.confined) on SCHEDULER, with CLOCKMILLIS milliseconds for
+     *  each game. */
+    PooledPlayer(Player engine, SearchScheduler scheduler, long clockMillis) {
+        super(engine.myPiece(), engine._controller);
+        _engine = engine.confined();
+        _scheduler = scheduler;
+        _budget = clockMillis;
+        _clock = clockMillis;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new PooledPlayer(_engine.create(piece, controller), _scheduler,
+                                _budget);
+    }
+
+    @Override
+    Player withEngine(Player engine) {
+        return new PooledPlayer(engine, _scheduler, _budget);
+    }
+
+    @Override
+    boolean isManual() {
+        return false;
+    }
+
+    @Override
+    void newGame() {
+        _clock = _budget;
+        _engine.newGame();
+    }
+
+    @Override
+    String myMove() {
+        long start = System.currentTimeMillis();
+        try {
+            return _scheduler.move(_engine, _clock);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return "quit";
+        } finally {
+            _clock -= System.currentTimeMillis() - start;
+        }
+    }
+
+    /** Return the time left on my clock in milliseconds. */
+    long clock() {
+        return _clock;
+    }
+
+    @Override
+    boolean playsSize(int size) {
+        return _engine.playsSize(size);
+    }
+
+    @Override
+    long nodeCount() {
+        return _engine.nodeCount();
+    }
+
+    @Override
+    SearchStats stats() {
+        return _engine.stats();
+    }
+
+    @Override
+    void useNetwork(boolean on) {
+        _engine.useNetwork(on);
+    }
+
+    @Override
+    String evaluation() {
+        return _engine.evaluation();
+    }
+
+    /** The player whose searches I run. */
+    private final Player _engine;
+    /** The scheduler that runs searches. */
+    private final SearchScheduler _scheduler;
+    /** Time allowed for each game. */
+    private final long _budget;
+    /** Time left in the current game. */
+    private long _clock;
+}
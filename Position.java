@@ -0,0 +1,164 @@
+package tablut;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import static tablut.Piece.*;
+import static tablut.Square.NUM_SQUARES;
+import static tablut.Utils.*;
+
+/** An immutable Tablut position (the pieces on the board and the side to
+ *  move) packed into three longs.  Each square takes two bits holding the
+ *  ordinal of its Piece (EMPTY, WHITE, BLACK, or KING); square k is at bit
+ *  2 * (k % SQUARES_PER_WORD) of word k / SQUARES_PER_WORD, and the last
+ *  word has TURN_BIT set when white is to move.  Positions are equal iff
+ *  their words are, so they serve as map keys; Board keeps them as its
+ *  undo snapshots and repetition history.  On disk a position is BYTES
+ *  bytes, its three words in order, big-endian; a position file is MAGIC
+ *  followed by positions.  The textual form of encodedBoard (toString)
+ *  is for display and debugging.
+ *  @author Dhruv Krishnaswamy
+ */
+final class Position {
+
+    /** Squares per word. */
+    static final int SQUARES_PER_WORD = 32;
+
+    /** The bit of the last word set when white is to move. */
+    static final long TURN_BIT =
+        1L << (2 * (NUM_SQUARES - 2 * SQUARES_PER_WORD));
+
+    /** Length of a position on disk. */
+    static final int BYTES = 3 * Long.BYTES;
+
+    /** The first bytes of a position file. */
+    static final byte[] MAGIC = { 'T', 'B', 'L', 'P' };
+
+    /** The position with words WORD0, WORD1, and WORD2. */
+    Position(long word0, long word1, long word2) {
+        _word0 = word0;
+        _word1 = word1;
+        _word2 = word2;
+    }
+
+    /** Return the position whose textual form (as by
+     *  Board.encodedBoard) is ENCODED. */
+    static Position parse(String encoded) {
+        if (encoded.length() != NUM_SQUARES + 1
+            || !encoded.matches("[WB][-WBK]*")) {
+            throw error("bad encoded board: %s", encoded);
+        }
+        long[] words = new long[3];
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            long code = piece(encoded.charAt(k + 1)).ordinal();
+            words[k / SQUARES_PER_WORD] |=
+                code << (2 * (k % SQUARES_PER_WORD));
+        }
+        if (encoded.charAt(0) == 'W') {
+            words[2] |= TURN_BIT;
+        }
+        return new Position(words[0], words[1], words[2]);
+    }
+
+    /** Return the position read from IN, as written by write. */
+    static Position read(DataInput in) throws IOException {
+        Position result =
+            new Position(in.readLong(), in.readLong(), in.readLong());
+        if (!result.valid()) {
+            throw new IOException("bad packed position");
+        }
+        return result;
+    }
+
+    /** Write me on OUT in BYTES bytes. */
+    void write(DataOutput out) throws IOException {
+        out.writeLong(_word0);
+        out.writeLong(_word1);
+        out.writeLong(_word2);
+    }
+
+    /** Return word K (0 <= K < 3). */
+    long word(int k) {
+        return k == 0 ? _word0 : k == 1 ? _word1 : _word2;
+    }
+
+    /** Return the contents of the square with index K. */
+    Piece get(int k) {
+        return PIECES[(int) (word(k / SQUARES_PER_WORD)
+                             >>> (2 * (k % SQUARES_PER_WORD))) & 3];
+    }
+
+    /** Return the contents of SQ. */
+    Piece get(Square sq) {
+        return get(sq.index());
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return (_word2 & TURN_BIT) != 0 ? WHITE : BLACK;
+    }
+
+    /** Return true iff my unused bits are clear and I have at most one
+     *  king. */
+    private boolean valid() {
+        if ((_word2 & -(TURN_BIT << 1)) != 0) {
+            return false;
+        }
+        int kings = 0;
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            if (get(k) == KING) {
+                kings += 1;
+            }
+        }
+        return kings <= 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Position)) {
+            return false;
+        }
+        Position other = (Position) obj;
+        return _word0 == other._word0 && _word1 == other._word1
+            && _word2 == other._word2;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = (_word0 * 0x9E3779B97F4A7C15L + _word1)
+            * 0xC2B2AE3D27D4EB4FL + _word2;
+        h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        char[] result = new char[NUM_SQUARES + 1];
+        result[0] = turn().toString().charAt(0);
+        for (int k = 0; k < NUM_SQUARES; k += 1) {
+            result[k + 1] = get(k).toString().charAt(0);
+        }
+        return new String(result);
+    }
+
+    /** Return the Piece whose symbol is C. */
+    private static Piece piece(char c) {
+        switch (c) {
+        case 'W':
+            return WHITE;
+        case 'B':
+            return BLACK;
+        case 'K':
+            return KING;
+        default:
+            return EMPTY;
+        }
+    }
+
+    /** The Pieces, by ordinal. */
+    private static final Piece[] PIECES = Piece.values();
+
+    /** My words. */
+    private final long _word0, _word1, _word2;
+}
@@ -0,0 +1,127 @@
+package tablut;
+
+import java.util.Arrays;
+
+/** A multiset of Positions, kept in an open-addressed hash table with
+ *  linear probing.  Board counts the positions of its game and of the
+ *  line being searched in one of these, so that it finds repetitions in
+ *  constant time however long the history.  Removal shifts later
+ *  entries of a probe sequence back rather than leaving markers, so the
+ *  table stays short under the stack-like adds and removes of a search.
+ *  @author Dhruv Krishnaswamy
+ */
+class PositionCounts {
+
+    /** Initial number of slots (a power of 2). */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** An empty multiset. */
+    PositionCounts() {
+        _keys = new Position[INITIAL_CAPACITY];
+        _counts = new int[INITIAL_CAPACITY];
+    }
+
+    /** A multiset with the same contents as MODEL. */
+    PositionCounts(PositionCounts model) {
+        _keys = model._keys.clone();
+        _counts = model._counts.clone();
+        _size = model._size;
+    }
+
+    /** Return the number of times POS is present. */
+    int count(Position pos) {
+        int k = find(pos);
+        return _keys[k] == null ? 0 : _counts[k];
+    }
+
+    /** Add one occurrence of POS. */
+    void add(Position pos) {
+        int k = find(pos);
+        if (_keys[k] == null) {
+            if (4 * (_size + 1) > 3 * _keys.length) {
+                grow();
+                k = find(pos);
+            }
+            _keys[k] = pos;
+            _size += 1;
+        }
+        _counts[k] += 1;
+    }
+
+    /** Remove one occurrence of POS, if present. */
+    void remove(Position pos) {
+        int k = find(pos);
+        if (_keys[k] == null) {
+            return;
+        }
+        _counts[k] -= 1;
+        if (_counts[k] > 0) {
+            return;
+        }
+        int mask = _keys.length - 1;
+        int hole = k;
+        for (int j = (k + 1) & mask; _keys[j] != null; j = (j + 1) & mask) {
+            int home = slot(_keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                _keys[hole] = _keys[j];
+                _counts[hole] = _counts[j];
+                hole = j;
+            }
+        }
+        _keys[hole] = null;
+        _counts[hole] = 0;
+        _size -= 1;
+    }
+
+    /** Remove everything. */
+    void clear() {
+        if (_size > 0) {
+            Arrays.fill(_keys, null);
+            Arrays.fill(_counts, 0);
+            _size = 0;
+        }
+    }
+
+    /** Return the number of distinct positions present. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the slot holding POS, or the empty slot where it would
+     *  go. */
+    private int find(Position pos) {
+        int mask = _keys.length - 1;
+        int k = slot(pos);
+        while (_keys[k] != null && !_keys[k].equals(pos)) {
+            k = (k + 1) & mask;
+        }
+        return k;
+    }
+
+    /** Return the first slot probed for POS. */
+    private int slot(Position pos) {
+        return pos.hashCode() & (_keys.length - 1);
+    }
+
+    /** Double my capacity. */
+    private void grow() {
+        Position[] keys = _keys;
+        int[] counts = _counts;
+        _keys = new Position[2 * keys.length];
+        _counts = new int[2 * keys.length];
+        for (int j = 0; j < keys.length; j += 1) {
+            if (keys[j] != null) {
+                int k = find(keys[j]);
+                _keys[k] = keys[j];
+                _counts[k] = counts[j];
+            }
+        }
+    }
+
+    /** The positions present, by slot (null if empty). */
+    private Position[] _keys;
+    /** The number of occurrences of _keys[k]. */
+    private int[] _counts;
+    /** The number of non-null _keys. */
+    private int _size;
+}
@@ -0,0 +1,255 @@
+package tablut;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/** Replays game logs (as written by Controller's --log option, or any
+ *  other file of Tablut commands) on a headless Controller, without a
+ *  view, reporter, or Scanner.  Each command is executed by the
+ *  Controller exactly as if it had read it, but its players are never
+ *  asked for moves, so only the commands in the file move.  Invalid
+ *  commands and illegal moves are counted as errors and skipped, as
+ *  Controller reports and ignores them.  Each comment
+ *  <pre>
+ *     # position ENCODED WINNER
+ *  </pre>
+ *  (which Controller logs whenever a game is won and on quitting) is a
+ *  checkpoint: the replayed board must match the encoded position and
+ *  winner (W, B, or - for none), and mismatches are reported.  Several
+ *  files are replayed in parallel, one per thread.
+ *  @author Dhruv Krishnaswamy
+ */
+class Replayer {
+
+    /** The comment prefix marking a checkpoint. */
+    static final String CHECKPOINT = "# position ";
+
+    /** A replayer that uses THREADS threads. */
+    Replayer(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** The outcome of replaying one file. */
+    static class Result {
+        /** An outcome for FILE. */
+        Result(Path file) {
+            _file = file;
+        }
+
+        /** Return the file replayed. */
+        Path file() {
+            return _file;
+        }
+
+        /** Return the number of moves made. */
+        long moves() {
+            return _moves;
+        }
+
+        /** Return the number of games started. */
+        int games() {
+            return _games;
+        }
+
+        /** Return the number of checkpoints verified. */
+        int checks() {
+            return _checks;
+        }
+
+        /** Return the number of commands rejected. */
+        int errors() {
+            return _errors;
+        }
+
+        /** Return descriptions of the checkpoints that did not match. */
+        List<String> mismatches() {
+            return _mismatches;
+        }
+
+        /** Return the final position, as by Board.encodedBoard(). */
+        String finalPosition() {
+            return _finalPosition;
+        }
+
+        /** Return the winner at the end, or null. */
+        Piece winner() {
+            return _winner;
+        }
+
+        /** Return the time taken, in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d games, %d moves, %d checks,"
+                                 + " %d mismatches, %d errors",
+                                 _file, _games, _moves, _checks,
+                                 _mismatches.size(), _errors);
+        }
+
+        /** The file replayed. */
+        private final Path _file;
+        /** Number of moves made. */
+        private long _moves;
+        /** Number of games started, counting the initial one. */
+        private int _games = 1;
+        /** Number of checkpoints verified. */
+        private int _checks;
+        /** Number of rejected commands. */
+        private int _errors;
+        /** Checkpoints that failed. */
+        private final List<String> _mismatches = new ArrayList<>();
+        /** Final position. */
+        private String _finalPosition;
+        /** Final winner, or null. */
+        private Piece _winner;
+        /** Replay time in nanoseconds. */
+        private long _nanos;
+    }
+
+    /** Replay FILE and return the outcome. */
+    Result replay(Path file) throws IOException {
+        try (BufferedReader lines =
+             Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return replay(file, lines);
+        }
+    }
+
+    /** Replay the commands in LINES, read from FILE, and return the
+     *  outcome. */
+    Result replay(Path file, BufferedReader lines) throws IOException {
+        Result result = new Result(file);
+        long start = System.nanoTime();
+        Controller control = replayController();
+        String line;
+        int lineNum = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNum += 1;
+            if (line.startsWith(CHECKPOINT)) {
+                check(control, line, lineNum, result);
+                continue;
+            }
+            try {
+                control.executeCommand(line);
+            } catch (IllegalArgumentException excp) {
+                result._errors += 1;
+                continue;
+            }
+            switch (Controller.commandType(line)) {
+            case "move":
+                result._moves += 1;
+                break;
+            case "new":
+            case "size":
+                result._games += 1;
+                break;
+            default:
+                break;
+            }
+        }
+        result._finalPosition = control.encodedBoard();
+        result._winner = control.winner();
+        result._nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /** Replay each file in FILES, several at once, printing the result
+     *  for each (in order) and a summary on OUT.  Returns true iff every
+     *  checkpoint matched. */
+    boolean replayAll(List<Path> files, PrintStream out) {
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        List<Future<Result>> results = new ArrayList<>();
+        for (Path file : files) {
+            results.add(workers.submit(() -> replay(file)));
+        }
+        long start = System.nanoTime(), moves = 0;
+        int failed = 0, unreadable = 0;
+        try {
+            for (int k = 0; k < results.size(); k += 1) {
+                try {
+                    Result result = results.get(k).get();
+                    out.println(result);
+                    for (String mismatch : result.mismatches()) {
+                        out.printf("    %s%n", mismatch);
+                    }
+                    moves += result.moves();
+                    failed += result.mismatches().isEmpty() ? 0 : 1;
+                } catch (ExecutionException excp) {
+                    out.printf("%s: could not read: %s%n", files.get(k),
+                               excp.getCause().getMessage());
+                    unreadable += 1;
+                }
+            }
+        } catch (InterruptedException excp) {
+            throw new IllegalStateException("replay interrupted");
+        } finally {
+            workers.shutdownNow();
+        }
+        double secs = Math.max(System.nanoTime() - start, 1) * 1e-9;
+        out.printf("Replayed %d files (%d failed, %d unreadable):"
+                   + " %d moves in %.2f s (%.0f moves/s)%n",
+                   files.size(), failed, unreadable, moves, secs,
+                   moves / secs);
+        return failed == 0 && unreadable == 0;
+    }
+
+    /** Return PATH, if it is a file, or all regular files under it, in
+     *  name order, if it is a directory. */
+    static List<Path> logFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            return paths.filter(Files::isRegularFile).sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    /** Return a Controller with no view, log, or output, and with
+     *  players that are never asked for moves, to execute replayed
+     *  commands. */
+    private static Controller replayController() {
+        PrintStream output =
+            new PrintStream(OutputStream.nullOutputStream());
+        return new Controller(new NullView(), null, new NullReporter(),
+                              new TextPlayer(), new AI(), false, null,
+                              output);
+    }
+
+    /** Verify that the board and winner of CONTROL match the checkpoint
+     *  LINE (line number LINENUM), recording the outcome in RESULT. */
+    private static void check(Controller control, String line,
+                              int lineNum, Result result) {
+        String[] fields = line.substring(CHECKPOINT.length()).trim()
+            .split("\\s+");
+        String actual = control.encodedBoard();
+        Piece winner = control.winner();
+        String actualWinner = winner == null ? "-" : winner.toString();
+        result._checks += 1;
+        if (fields.length != 2 || !fields[0].equals(actual)
+            || !fields[1].equals(actualWinner)) {
+            result._mismatches.add(
+                String.format("line %d: expected %s, replayed %s %s",
+                              lineNum, line.substring(2), actual,
+                              actualWinner));
+        }
+    }
+
+    /** Number of threads. */
+    private final int _threads;
+}
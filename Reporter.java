@@ -13,8 +13,9 @@ interface Reporter {
      *  the same meaning as in String.format. */
     void reportNote(String format, Object... args);
 
-    /** Display MOVE as needed. */
-    void reportMove(Move move);
+    /** Display MOVE, in the text format of moves (see Move.toString),
+     *  as needed. */
+    void reportMove(String move);
 
 }
 
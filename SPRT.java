@@ -0,0 +1,176 @@
+package tablut;
+
+import java.io.PrintStream;
+
+/** A sequential probability ratio test of the Elo difference between two
+ *  engines, fed with the results of game pairs played from the same
+ *  opening with colors swapped.  Each pair scores 0, 1/2, 1, 3/2, or 2
+ *  points for the first engine, and the test uses the variance of those
+ *  (pentanomial) pair scores, which is smaller than that of single games
+ *  because the opening's bias cancels within a pair.  The test accepts
+ *  H1 (the difference is at least ELO1) or H0 (it is at most ELO0) as
+ *  soon as the log-likelihood ratio leaves the bounds set by the error
+ *  rates.
+ *  @author Dhruv Krishnaswamy
+ */
+class SPRT {
+
+    /** Default false-positive and false-negative rates. */
+    static final double DEFAULT_ALPHA = 0.05, DEFAULT_BETA = 0.05;
+
+    /** Number of standard errors in the reported error bars (95%). */
+    private static final double Z95 = 1.959964;
+
+    /** A test of H0: elo <= ELO0 against H1: elo >= ELO1, with the
+     *  default error rates. */
+    SPRT(double elo0, double elo1) {
+        this(elo0, elo1, DEFAULT_ALPHA, DEFAULT_BETA);
+    }
+
+    /** A test of H0: elo <= ELO0 against H1: elo >= ELO1, accepting H1
+     *  wrongly with probability ALPHA and H0 wrongly with probability
+     *  BETA. */
+    SPRT(double elo0, double elo1, double alpha, double beta) {
+        if (elo1 <= elo0 || alpha <= 0 || beta <= 0
+            || alpha >= 1 || beta >= 1) {
+            throw Utils.error("bad SPRT parameters");
+        }
+        _elo0 = elo0;
+        _elo1 = elo1;
+        _lower = Math.log(beta / (1 - alpha));
+        _upper = Math.log((1 - beta) / alpha);
+    }
+
+    /** Record a pair of games in which the first engine scored POINTS
+     *  (0, 0.5, 1, 1.5, or 2). */
+    synchronized void addPair(double points) {
+        int k = (int) Math.round(points * 2);
+        if (k < 0 || k > 4) {
+            throw Utils.error("bad pair score: %s", points);
+        }
+        _pairs[k] += 1;
+    }
+
+    /** Return the number of pairs recorded. */
+    synchronized long pairs() {
+        long n = 0;
+        for (long c : _pairs) {
+            n += c;
+        }
+        return n;
+    }
+
+    /** Return the first engine's mean score per game (0 to 1). */
+    synchronized double score() {
+        long n = pairs();
+        if (n == 0) {
+            return 0.5;
+        }
+        double sum = 0;
+        for (int k = 0; k < 5; k += 1) {
+            sum += _pairs[k] * k / 4.0;
+        }
+        return sum / n;
+    }
+
+    /** Return the variance of the per-pair score (0 to 1). */
+    private synchronized double variance() {
+        long n = pairs();
+        if (n == 0) {
+            return 0;
+        }
+        double mean = score(), sum = 0;
+        for (int k = 0; k < 5; k += 1) {
+            double d = k / 4.0 - mean;
+            sum += _pairs[k] * d * d;
+        }
+        return sum / n;
+    }
+
+    /** Return the log-likelihood ratio of H1 to H0 for the pairs so far,
+     *  using the usual normal approximation. */
+    synchronized double llr() {
+        double var = variance();
+        if (var == 0) {
+            return 0;
+        }
+        double s0 = score(_elo0), s1 = score(_elo1);
+        return pairs() * (s1 - s0) * (2 * score() - s0 - s1) / (2 * var);
+    }
+
+    /** Return true iff the test has accepted H1. */
+    boolean acceptedH1() {
+        return llr() >= _upper;
+    }
+
+    /** Return true iff the test has accepted H0. */
+    boolean acceptedH0() {
+        return llr() <= _lower;
+    }
+
+    /** Return true iff the test has reached a decision. */
+    boolean decided() {
+        double llr = llr();
+        return llr >= _upper || llr <= _lower;
+    }
+
+    /** Return the estimated Elo difference of the first engine. */
+    double elo() {
+        return elo(score());
+    }
+
+    /** Return the half-width of the 95% confidence interval of elo(). */
+    synchronized double eloError() {
+        long n = pairs();
+        if (n == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double se = Math.sqrt(variance() / n);
+        double mean = score();
+        return (elo(Math.min(mean + Z95 * se, 1))
+                - elo(Math.max(mean - Z95 * se, 0))) / 2;
+    }
+
+    /** Print the state of the test on OUT. */
+    void report(PrintStream out) {
+        out.printf("Pairs: %d  Pentanomial: %s%n", pairs(), pentanomial());
+        out.printf("Elo: %.1f +/- %.1f (95%%)%n", elo(), eloError());
+        out.printf("LLR: %.2f [%.2f, %.2f] for H0: elo <= %.1f,"
+                   + " H1: elo >= %.1f%n",
+                   llr(), _lower, _upper, _elo0, _elo1);
+        out.printf("Result: %s%n",
+                   acceptedH1() ? "H1 accepted"
+                   : acceptedH0() ? "H0 accepted" : "inconclusive");
+    }
+
+    /** Return the counts of pairs scoring 0, 1/2, 1, 3/2, and 2, as
+     *  text. */
+    private synchronized String pentanomial() {
+        return String.format("[%d, %d, %d, %d, %d]", _pairs[0], _pairs[1],
+                             _pairs[2], _pairs[3], _pairs[4]);
+    }
+
+    /** Return the Elo difference corresponding to the expected score
+     *  SCORE (0 to 1). */
+    static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /** Return the expected score (0 to 1) for an Elo difference ELO. */
+    static double score(double elo) {
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /** The Elo differences of the two hypotheses. */
+    private final double _elo0, _elo1;
+    /** The log-likelihood ratios at which H0 and H1 are accepted. */
+    private final double _lower, _upper;
+    /** _pairs[k] is the number of pairs in which the first engine scored
+     *  k/2 points. */
+    private final long[] _pairs = new long[5];
+}
@@ -0,0 +1,36 @@
+package tablut;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** A Java Flight Recorder event recording one search by an AI to a fixed
+ *  depth, with its duration (disabled by default; see CommandEvent).
+ *  @author Dhruv Krishnaswamy
+ */
+@Name("tablut.Search")
+@Label("Search")
+@Category("Tablut")
+@Description("Search for a move to a fixed depth")
+@Enabled(false)
+class SearchEvent extends Event {
+
+    /** The depth searched. */
+    @Label("Depth")
+    int depth;
+
+    /** The number of positions searched. */
+    @Label("Nodes")
+    long nodes;
+
+    /** The value found (positive favoring white). */
+    @Label("Score")
+    int score;
+
+    /** The move found, or null if none. */
+    @Label("Move")
+    String move;
+}
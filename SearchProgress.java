@@ -0,0 +1,23 @@
+package tablut;
+
+import java.util.concurrent.Future;
+
+/** A receiver of reports on the progress of a search for a move, such
+ *  as a display showing what an automated player is thinking.  Reports
+ *  come from the searching thread.
+ *  @author Dhruv Krishnaswamy
+ */
+interface SearchProgress {
+
+    /** Report that a search has completed DEPTH plies, finding BEST
+     *  (null if there is no move) with VALUE (positive favoring white),
+     *  after examining NODES positions in all. */
+    void progress(int depth, Move best, int value, long nodes);
+
+    /** Report that SEARCH (null if none) is the search now under way, run
+     *  in the background (see BackgroundPlayer), so that it may be
+     *  cancelled.  By default, does nothing. */
+    default void searching(Future<?> search) {
+    }
+
+}
@@ -0,0 +1,148 @@
+package tablut;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Schedules the searches of automated players in many concurrent games
+ *  onto a fixed number of search threads.  Each request carries its
+ *  game's remaining clock; the request's deadline is the time it was
+ *  made plus an even share of that clock over the moves likely to remain
+ *  (EXPECTED_MOVES, or fewer if the game's move limit leaves fewer).
+ *  Threads always take the request with the earliest deadline, so games
+ *  short of time go first, yet a request with plenty of clock still
+ *  rises to the front as it waits.  The engine is told to finish by the
+ *  deadline (see Player.setDeadline), so time spent waiting comes out
+ *  of the search, and is expected to search only on the thread that
+ *  runs it (see Player.confined).  When more requests
+ *  are waiting than there are threads, or when a request's share of its
+ *  clock is below LOW_TIME_MILLIS, the engine is told to reduce its
+ *  effort (see Player.reduceEffort) so that latency degrades gracefully
+ *  for everyone instead of growing without bound.
+ *  @author Dhruv Krishnaswamy
+ */
+class SearchScheduler {
+
+    /** Number of moves over which a game's remaining clock is shared. */
+    static final int EXPECTED_MOVES = 30;
+
+    /** Share of a clock below which a search is made shallower. */
+    static final long LOW_TIME_MILLIS = 100;
+
+    /** Maximum reduction in effort asked of an engine. */
+    static final int MAX_REDUCTION = 4;
+
+    /** A scheduler running at most THREADS searches at once. */
+    SearchScheduler(int threads) {
+        _threads = Math.max(1, threads);
+        for (int k = 0; k < _threads; k += 1) {
+            Thread worker = new Thread(this::work, "search-" + k);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /** Return ENGINE's move in its current position, searched on one of
+     *  my threads when its turn comes.  CLOCKMILLIS is the time left on
+     *  its game's clock.  Blocks until the move is found. */
+    String move(Player engine, long clockMillis)
+        throws InterruptedException {
+        Request request = new Request(engine, clockMillis);
+        _queue.put(request);
+        try {
+            return request._result.get();
+        } catch (ExecutionException excp) {
+            throw new IllegalStateException("search failed: "
+                                            + excp.getCause());
+        }
+    }
+
+    /** Return the number of requests waiting for a thread. */
+    int waiting() {
+        return _queue.size();
+    }
+
+    /** Return the number of searches run with reduced effort. */
+    long reducedSearches() {
+        return _reduced.get();
+    }
+
+    /** Run requests, most urgent first, forever. */
+    private void work() {
+        while (true) {
+            Request request;
+            try {
+                request = _queue.take();
+            } catch (InterruptedException excp) {
+                return;
+            }
+            int reduction = _queue.size() / _threads;
+            if (request._share < LOW_TIME_MILLIS) {
+                reduction += 1;
+            }
+            reduction = Math.min(reduction, MAX_REDUCTION);
+            if (reduction > 0) {
+                _reduced.incrementAndGet();
+            }
+            try {
+                request._engine.reduceEffort(reduction);
+                request._engine.setDeadline(request._deadline);
+                request._result.complete(request._engine.myMove());
+            } catch (RuntimeException | Error excp) {
+                request._result.completeExceptionally(excp);
+            }
+        }
+    }
+
+    /** Return the number of moves over which the clock of the side to
+     *  move is shared when LEFT moves (by both sides) may yet be made. */
+    static int expectedMoves(int left) {
+        return left >= 2 * EXPECTED_MOVES ? EXPECTED_MOVES
+            : Math.max(1, (left + 1) / 2);
+    }
+
+    /** A pending search. */
+    private static class Request implements Comparable<Request> {
+        /** A request for a move by ENGINE, whose game has CLOCKMILLIS
+         *  left. */
+        Request(Player engine, long clockMillis) {
+            _engine = engine;
+            _share = Math.max(0, clockMillis)
+                / expectedMoves(engine._controller.movesLeft());
+            _deadline = System.currentTimeMillis() + _share;
+            _seq = SEQUENCE.getAndIncrement();
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if (_deadline != other._deadline) {
+                return Long.compare(_deadline, other._deadline);
+            }
+            return Long.compare(_seq, other._seq);
+        }
+
+        /** The player to search. */
+        private final Player _engine;
+        /** Time allotted to this move from the game's clock. */
+        private final long _share;
+        /** Time by which the search should finish. */
+        private final long _deadline;
+        /** Order of arrival, to break ties. */
+        private final long _seq;
+        /** The move found. */
+        private final CompletableFuture<String> _result =
+            new CompletableFuture<>();
+    }
+
+    /** Source of Request sequence numbers. */
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    /** Number of search threads. */
+    private final int _threads;
+    /** Requests waiting for a thread, most urgent first. */
+    private final PriorityBlockingQueue<Request> _queue =
+        new PriorityBlockingQueue<>();
+    /** Number of searches run with reduced effort. */
+    private final AtomicLong _reduced = new AtomicLong();
+}
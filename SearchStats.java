@@ -0,0 +1,167 @@
+package tablut;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Statistics describing the searches of an automated player: positions
+ *  searched, beta cutoffs (and how many came from the first move tried,
+ *  a measure of move ordering), depth reached, effective branching
+ *  factor, and the time taken by each iteration of the last move's
+ *  search.  The searching thread accumulates counts in plain fields and
+ *  adds them here once per iteration, into striped counters (LongAdder),
+ *  so that searching pays almost nothing for them and other threads may
+ *  read them at any time.
+ *  @author Dhruv Krishnaswamy
+ */
+class SearchStats {
+
+    /** Note the start of the search for a move. */
+    void beginMove() {
+        synchronized (_iterations) {
+            _iterations.clear();
+        }
+        _moveStart = System.nanoTime();
+    }
+
+    /** Record the completion of an iteration of the current move's search
+     *  to DEPTH, which searched NODES positions and found CUTOFFS beta
+     *  cutoffs, FIRSTCUTOFFS of them on the first move tried. */
+    void endIteration(int depth, long nodes, long cutoffs,
+                      long firstCutoffs) {
+        long now = System.nanoTime();
+        _nodes.add(nodes);
+        _cutoffs.add(cutoffs);
+        _firstCutoffs.add(firstCutoffs);
+        synchronized (_iterations) {
+            long start = _iterations.isEmpty() ? _moveStart
+                : _iterations.get(_iterations.size() - 1)._end;
+            _iterations.add(new Iteration(depth, nodes, now - start, now));
+        }
+        _maxDepth.accumulateAndGet(depth, Math::max);
+    }
+
+    /** Note the end of the search for a move. */
+    void endMove() {
+        _moves.increment();
+        _nanos.add(System.nanoTime() - _moveStart);
+    }
+
+    /** Return the total number of positions searched. */
+    long nodes() {
+        return _nodes.sum();
+    }
+
+    /** Return the total number of beta cutoffs. */
+    long cutoffs() {
+        return _cutoffs.sum();
+    }
+
+    /** Return the number of beta cutoffs caused by the first move
+     *  tried. */
+    long firstMoveCutoffs() {
+        return _firstCutoffs.sum();
+    }
+
+    /** Return the number of moves searched for. */
+    long moves() {
+        return _moves.sum();
+    }
+
+    /** Return the greatest depth reached by any search. */
+    int maxDepth() {
+        return _maxDepth.get();
+    }
+
+    /** Return a one-line description of the search for the last move:
+     *  depth, positions, rate, effective branching factor, and the
+     *  time of each iteration. */
+    String lastMove() {
+        List<Iteration> iterations;
+        synchronized (_iterations) {
+            iterations = new ArrayList<>(_iterations);
+        }
+        if (iterations.isEmpty()) {
+            return "no search";
+        }
+        long nodes = 0, nanos = 0;
+        StringBuilder times = new StringBuilder();
+        for (Iteration it : iterations) {
+            nodes += it._nodes;
+            nanos += it._nanos;
+            times.append(String.format(" %d:%.1fms", it._depth,
+                                       it._nanos / 1e6));
+        }
+        Iteration last = iterations.get(iterations.size() - 1);
+        return String.format("depth %d, %d nodes, %.0f nps, ebf %.2f,"
+                             + " iterations%s",
+                             last._depth, nodes, rate(nodes, nanos),
+                             branching(iterations), times);
+    }
+
+    /** Return a one-line description of all searches so far. */
+    String totals() {
+        long nodes = nodes(), cutoffs = cutoffs();
+        return String.format("%d moves, %d nodes, %.0f nps, max depth %d,"
+                             + " %d cutoffs (%.1f%% on first move)",
+                             moves(), nodes, rate(nodes, _nanos.sum()),
+                             maxDepth(), cutoffs,
+                             cutoffs == 0 ? 0.0
+                             : 100.0 * firstMoveCutoffs() / cutoffs);
+    }
+
+    /** Return the rate of NODES positions in NANOS nanoseconds, per
+     *  second. */
+    private static double rate(long nodes, long nanos) {
+        return nanos <= 0 ? 0 : nodes * 1e9 / nanos;
+    }
+
+    /** Return the effective branching factor shown by ITERATIONS: the
+     *  ratio of the positions searched by the last two, or for a single
+     *  iteration, the DEPTH'th root of its positions. */
+    private static double branching(List<Iteration> iterations) {
+        int n = iterations.size();
+        Iteration last = iterations.get(n - 1);
+        if (n > 1 && iterations.get(n - 2)._nodes > 0) {
+            return (double) last._nodes / iterations.get(n - 2)._nodes;
+        }
+        return Math.pow(last._nodes, 1.0 / Math.max(1, last._depth));
+    }
+
+    /** One iteration of a search. */
+    private static class Iteration {
+        /** An iteration to DEPTH searching NODES positions in NANOS
+         *  nanoseconds, ending at time END. */
+        Iteration(int depth, long nodes, long nanos, long end) {
+            _depth = depth;
+            _nodes = nodes;
+            _nanos = nanos;
+            _end = end;
+        }
+
+        /** Depth searched. */
+        private final int _depth;
+        /** Positions searched. */
+        private final long _nodes;
+        /** Time taken, and time finished (in nanoseconds). */
+        private final long _nanos, _end;
+    }
+
+    /** Total positions searched. */
+    private final LongAdder _nodes = new LongAdder();
+    /** Total beta cutoffs. */
+    private final LongAdder _cutoffs = new LongAdder();
+    /** Beta cutoffs by the first move tried. */
+    private final LongAdder _firstCutoffs = new LongAdder();
+    /** Moves searched for. */
+    private final LongAdder _moves = new LongAdder();
+    /** Total search time in nanoseconds. */
+    private final LongAdder _nanos = new LongAdder();
+    /** Greatest depth reached. */
+    private final AtomicInteger _maxDepth = new AtomicInteger();
+    /** Iterations of the search for the last move. */
+    private final List<Iteration> _iterations = new ArrayList<>();
+    /** Time at which the search for the current move began. */
+    private volatile long _moveStart;
+}
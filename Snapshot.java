@@ -0,0 +1,60 @@
+package tablut;
+
+/** An immutable picture of a Board at one moment: the contents of its
+ *  squares, the side to move, the winner, and the move count.  Snapshots
+ *  may be shared freely between threads, so that a display can draw a
+ *  position while the game (or a search) goes on modifying the Board it
+ *  came from.
+ *  @author Dhruv Krishnaswamy
+ */
+final class Snapshot {
+
+    /** A snapshot in which square K contains CONTENTS[K] (CONTENTS is
+     *  not copied), TURN is to move, WINNER (null if none) has won,
+     *  REPEATED indicates a win by repetition, and MOVECOUNT moves have
+     *  been made. */
+    Snapshot(Piece[] contents, Piece turn, Piece winner, boolean repeated,
+             int moveCount) {
+        _contents = contents;
+        _turn = turn;
+        _winner = winner;
+        _repeated = repeated;
+        _moveCount = moveCount;
+    }
+
+    /** Return the contents of SQ. */
+    Piece get(Square sq) {
+        return _contents[sq.index()];
+    }
+
+    /** Return the side to move. */
+    Piece turn() {
+        return _turn;
+    }
+
+    /** Return the winner, or null if there is none. */
+    Piece winner() {
+        return _winner;
+    }
+
+    /** Return true iff the game was won by repetition. */
+    boolean repeatedPosition() {
+        return _repeated;
+    }
+
+    /** Return the number of moves made. */
+    int moveCount() {
+        return _moveCount;
+    }
+
+    /** Contents of the squares, indexed by Square.index(). */
+    private final Piece[] _contents;
+    /** Side to move. */
+    private final Piece _turn;
+    /** The winner, or null. */
+    private final Piece _winner;
+    /** True iff the win was by repetition. */
+    private final boolean _repeated;
+    /** Number of moves made. */
+    private final int _moveCount;
+}
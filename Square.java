@@ -1,7 +1,5 @@
 package tablut;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Arrays;
 import java.util.List;
 
@@ -81,9 +79,9 @@ final class Square {
         if (dir < 0 || dir > 3 || steps <= 0) {
             return null;
         }
-        SqList L = ROOK_SQUARES[index()][dir];
-        if (L.size() >= steps) {
-            return L.get(steps - 1);
+        int k = RAY_START[4 * _index + dir] + steps - 1;
+        if (k < RAY_START[4 * _index + dir + 1]) {
+            return SQUARES[RAYS[k]];
         } else {
             return null;
         }
@@ -129,7 +127,13 @@ final class Square {
 
     @Override
     public String toString() {
-        return _str;
+        String str = _str;
+        if (str == null) {
+            str = _str = new String(new char[] {
+                (char) ('a' + _col), (char) ('1' + _row)
+            });
+        }
+        return str;
     }
 
     /** Return true iff COL ROW is a legal square. */
@@ -168,25 +172,40 @@ final class Square {
         return sq(posn.charAt(0) - 'a', posn.charAt(1) - '1');
     }
 
+    /** Return the Square denoted by the two characters of STR starting
+     *  at START in the standard text format (e.g., a4, in either case), or
+     *  null if they do not denote a square. */
+    static Square sq(CharSequence str, int start) {
+        if (start + 2 > str.length()) {
+            return null;
+        }
+        int col = colIndex(str.charAt(start)),
+            row = rowIndex(str.charAt(start + 1));
+        if (col < 0 || row < 0) {
+            return null;
+        }
+        return SQUARES[row * BOARD_SIZE + col];
+    }
+
+    /** Return the column number denoted by the letter C (a-i or A-I), or
+     *  -1 if C is not a column letter. */
+    static int colIndex(int c) {
+        int col = (c | 0x20) - 'a';
+        return col >= 0 && col < BOARD_SIZE ? col : -1;
+    }
+
+    /** Return the row number denoted by the digit C (1-9), or -1 if C is
+     *  not a row number. */
+    static int rowIndex(int c) {
+        int row = c - '1';
+        return row >= 0 && row < BOARD_SIZE ? row : -1;
+    }
+
     /** Return the Square with index INDEX. */
     private Square(int index) {
         _index = index;
         _row = index / BOARD_SIZE;
         _col = index % BOARD_SIZE;
-        _str = String.format("%c%d", (char) ('a' + _col), 1 + _row);
-    }
-
-    /** A convenience class to represent mutable lists of squares.  This
-     *  class may safely be used as the element type in an array. */
-    static class SqList extends ArrayList<Square> {
-        /** An initially empty list. */
-        SqList() {
-        }
-
-        /** A list initialize to INIT. */
-        SqList(Collection<Square> init) {
-            super(init);
-        }
     }
 
     @Override
@@ -212,38 +231,42 @@ final class Square {
         }
     }
 
-    /** An empty list of Squares. */
-    static final List<Square> EMPTY_SQUARE_LIST = new SqList();
+    /** The indices of the squares one rook move away from each square,
+     *  nearest first: those from the square with index i in direction d
+     *  (as for rookMove) are RAYS[RAY_START[4i+d]] to
+     *  RAYS[RAY_START[4i+d+1] - 1]. */
+    private static final byte[] RAYS =
+        new byte[NUM_SQUARES * 2 * (BOARD_SIZE - 1)];
 
-    /** ROOK_SQUARES[i][d] is a list of all squares one rook move in direction
-     *  d from the square with index i. Direction displacements are defined
-     *  by DIR, above. Lists are in order of increasing distance from
-     *  square i. */
-    static final SqList[][] ROOK_SQUARES = new SqList[SQUARES.length][4];
+    /** Start of each square's squares in each direction in RAYS (see
+     *  RAYS). */
+    private static final short[] RAY_START = new short[4 * NUM_SQUARES + 1];
 
     static {
-        for (Square sq : SQUARES) {
-            int r0 = sq.row(), c0 = sq.col(), i0 = sq.index();
+        int n = 0;
+        for (int i = 0; i < NUM_SQUARES; i += 1) {
+            int c0 = i % BOARD_SIZE, r0 = i / BOARD_SIZE;
             for (int d = 0; d < DIR.length; d += 1) {
-                ROOK_SQUARES[i0][d] = new SqList();
-                SqList L = ROOK_SQUARES[i0][d];
-                for (int k = 1; true; k += 1) {
-                    int c1 = c0 + k * DIR[d][0], r1 = r0 + k * DIR[d][1];
-                    if (!exists(c1, r1)) {
-                        break;
-                    }
-                    L.add(sq(c1, r1));
+                RAY_START[4 * i + d] = (short) n;
+                int c1 = c0 + DIR[d][0], r1 = r0 + DIR[d][1];
+                while (exists(c1, r1)) {
+                    RAYS[n] = (byte) (r1 * BOARD_SIZE + c1);
+                    n += 1;
+                    c1 += DIR[d][0];
+                    r1 += DIR[d][1];
                 }
             }
         }
+        RAY_START[4 * NUM_SQUARES] = (short) n;
     }
+
     /** My index position. */
     private final int _index;
 
     /** My row and column (redundant, since these are determined by _index). */
     private final int _row, _col;
 
-    /** My String denotation. */
-    private final String _str;
+    /** My String denotation, made when first needed. */
+    private String _str;
 
 }
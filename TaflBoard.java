@@ -0,0 +1,629 @@
+package tablut;
+
+import java.util.Arrays;
+import java.util.Formatter;
+
+import static tablut.Utils.*;
+
+/** A tafl position on a board of any size from Geometry.MIN_SIZE to
+ *  Geometry.MAX_SIZE, under the rules of Tablut as Board plays them: the
+ *  king escapes to any edge square; pieces are captured as by
+ *  CaptureRules, which Board also uses, so that on the 9x9 board the two
+ *  play identical games; and a move that repeats a position loses.
+ *  Squares and moves are ints as defined by Geometry, and the position is
+ *  kept as one set of squares per side (the king's included in white's)
+ *  plus the king's square.
+ *
+ *  Each set is a bit set, and create chooses the representation by size:
+ *  boards of up to 128 squares (9x9 and 11x11) keep each set in two longs
+ *  (see Small), and larger ones in arrays of longs (see Wide).  A program
+ *  that uses only one of these (as it does when playing only one size)
+ *  has only one implementation of the bit operations, which the compiler
+ *  can then inline.
+ *
+ *  Positions carry a Zobrist hash key, updated incrementally, which
+ *  detects repetitions.  Controller plays games on boards other than
+ *  Board.SIZE x Board.SIZE on a TaflBoard (see its size command), and AI
+ *  searches them with the evaluation it uses on Board.
+ *  @author Dhruv Krishnaswamy
+ */
+abstract class TaflBoard {
+
+    /** Side indices. */
+    static final int BLACK_SIDE = 0, WHITE_SIDE = 1;
+
+    /** Kind indices for hashing (see Geometry.key). */
+    private static final int KING_KIND = 2;
+
+    /** Each move's captures (at most one per direction) are packed into
+     *  a long, CAPTURE_BITS apiece: the captured square plus 1, with
+     *  KING_CAPTURED set for the king and WHITE_CAPTURED for a white
+     *  soldier. */
+    private static final int CAPTURE_BITS = Geometry.SQUARE_BITS + 2;
+
+    /** Flags marking the capture of the king and of a white soldier (see
+     *  CAPTURE_BITS). */
+    private static final int KING_CAPTURED = 1 << Geometry.SQUARE_BITS,
+        WHITE_CAPTURED = KING_CAPTURED << 1;
+
+    /** Mask of the square in a packed capture (see CAPTURE_BITS). */
+    private static final int CAPTURE_SQUARE = KING_CAPTURED - 1;
+
+    /** Return a board of SIZE squares on a side in its starting
+     *  position. */
+    static TaflBoard create(int size) {
+        Geometry geometry = Geometry.of(size);
+        TaflBoard board =
+            geometry.squares() <= 2 * Long.SIZE ? new Small(geometry)
+            : new Wide(geometry);
+        board.init();
+        return board;
+    }
+
+    /** A board with GEOMETRY. */
+    TaflBoard(Geometry geometry) {
+        _geometry = geometry;
+    }
+
+    /** Return my geometry. */
+    Geometry geometry() {
+        return _geometry;
+    }
+
+    /** Set up the starting position. */
+    void init() {
+        clear();
+        _key = 0;
+        for (int sq : _geometry.initialAttackers()) {
+            place(BLACK_SIDE, sq);
+        }
+        for (int sq : _geometry.initialDefenders()) {
+            place(WHITE_SIDE, sq);
+        }
+        _king = _geometry.throne();
+        place(WHITE_SIDE, _king);
+        _turn = BLACK_SIDE;
+        _winner = -1;
+        _moveCount = 0;
+    }
+
+    /** Return a copy of me, sharing no mutable state with me, so that
+     *  it may be searched without disturbing me. */
+    TaflBoard copy() {
+        TaflBoard result = create(_geometry.size());
+        result.copySets(this);
+        result._turn = _turn;
+        result._winner = _winner;
+        result._king = _king;
+        result._key = _key;
+        result._lim = _lim;
+        result._moveCount = _moveCount;
+        result._moves = _moves.clone();
+        result._captured = _captured.clone();
+        result._keys = _keys.clone();
+        result._winners = _winners.clone();
+        return result;
+    }
+
+    /** Set the move limit to LIM, as for Board.setMoveLimit: each side
+     *  may then make at most LIM moves, and the side that would have to
+     *  make one more loses.  It is an error if 2*LIM <= moveCount(). */
+    void setMoveLimit(int lim) {
+        if (2 * lim <= _moveCount) {
+            throw error("move limit too small");
+        }
+        _lim = lim;
+    }
+
+    /** Return the number of moves (by both sides) that may yet be made
+     *  under the move limit, or Integer.MAX_VALUE if there is none. */
+    int movesLeft() {
+        return _lim == 0 ? Integer.MAX_VALUE
+            : Math.max(0, 2 * _lim - _moveCount);
+    }
+
+    /** Return the side to move (BLACK_SIDE or WHITE_SIDE). */
+    int turn() {
+        return _turn;
+    }
+
+    /** Return the winning side, or -1 if none. */
+    int winner() {
+        return _winner;
+    }
+
+    /** Return the number of moves made and not undone. */
+    int moveCount() {
+        return _moveCount;
+    }
+
+    /** Return the king's square, or -1 if it has been captured. */
+    int king() {
+        return _king;
+    }
+
+    /** Return the hash key of the position, including the side to
+     *  move. */
+    long key() {
+        return _key;
+    }
+
+    /** Return the piece on SQ: Piece.EMPTY, WHITE, BLACK, or KING. */
+    Piece get(int sq) {
+        if (sq == _king) {
+            return Piece.KING;
+        } else if (has(WHITE_SIDE, sq)) {
+            return Piece.WHITE;
+        } else if (has(BLACK_SIDE, sq)) {
+            return Piece.BLACK;
+        }
+        return Piece.EMPTY;
+    }
+
+    /** Store the legal moves of the side to move in MOVES (which must be
+     *  large enough; see maxMoves) and return their number.  There are
+     *  none once the game is won. */
+    int legalMoves(int[] moves) {
+        if (_winner >= 0) {
+            return 0;
+        }
+        int n = 0, throne = _geometry.throne();
+        int[] rays = _geometry.rays();
+        for (int from = next(_turn, 0); from >= 0;
+             from = next(_turn, from + 1)) {
+            boolean king = from == _king;
+            for (int d = 0; d < 4; d += 1) {
+                int end = _geometry.rayEnd(from, d);
+                for (int k = _geometry.rayStart(from, d); k < end; k += 1) {
+                    int to = rays[k];
+                    if (occupied(to)) {
+                        break;
+                    }
+                    if (to != throne || king) {
+                        moves[n++] = Geometry.move(from, to);
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Return true iff MOVE is a legal move for the side to move. */
+    boolean isLegal(int move) {
+        int from = Geometry.from(move), to = Geometry.to(move);
+        if (_winner >= 0 || from >= _geometry.squares()
+            || to >= _geometry.squares() || !has(_turn, from)
+            || (to == _geometry.throne() && from != _king)) {
+            return false;
+        }
+        int[] rays = _geometry.rays();
+        for (int d = 0; d < 4; d += 1) {
+            int end = _geometry.rayEnd(from, d);
+            for (int k = _geometry.rayStart(from, d); k < end; k += 1) {
+                if (occupied(rays[k])) {
+                    break;
+                }
+                if (rays[k] == to) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Return true iff the side to move has a legal move, as if by
+     *  legalMoves(...) > 0, but stopping at the first one found. */
+    boolean hasMove() {
+        if (_winner >= 0) {
+            return false;
+        }
+        for (int from = next(_turn, 0); from >= 0;
+             from = next(_turn, from + 1)) {
+            if (mobility(from, true) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return the number of squares to which the piece on FROM may move,
+     *  ignoring whose turn it is (0 if FROM is empty). */
+    int mobility(int from) {
+        return occupied(from) ? mobility(from, false) : 0;
+    }
+
+    /** Return the number of squares to which the piece on FROM may move,
+     *  or, if FIRST, 1 as soon as one is found. */
+    private int mobility(int from, boolean first) {
+        boolean king = from == _king;
+        int n = 0, throne = _geometry.throne();
+        int[] rays = _geometry.rays();
+        for (int d = 0; d < 4; d += 1) {
+            int end = _geometry.rayEnd(from, d);
+            for (int k = _geometry.rayStart(from, d); k < end; k += 1) {
+                if (occupied(rays[k])) {
+                    break;
+                }
+                if (king || rays[k] != throne) {
+                    n += 1;
+                    if (first) {
+                        return n;
+                    }
+                }
+            }
+        }
+        return n;
+    }
+
+    /** Return a size for arrays passed to legalMoves that suffices in any
+     *  position. */
+    int maxMoves() {
+        return _geometry.squares() * 2 * (_geometry.size() - 1);
+    }
+
+    /** Make the legal MOVE. */
+    void makeMove(int move) {
+        int from = Geometry.from(move), to = Geometry.to(move);
+        int side = _turn, kind = from == _king ? KING_KIND : side;
+        push(move);
+        remove(side, from, kind);
+        add(side, to, kind);
+        if (kind == KING_KIND) {
+            _king = to;
+        }
+        _capturing = 0;
+        for (int d = 0; d < 4; d += 1) {
+            int victim = _geometry.step(to, d);
+            if (victim >= 0 && _geometry.step(victim, d) >= 0
+                && CaptureRules.capture(_geometry, _pieces, to, d)) {
+                _winner = BLACK_SIDE;
+            }
+        }
+        _captured[_moveCount - 1] = _capturing;
+        if (kind == KING_KIND && _geometry.isEdge(to)) {
+            _winner = WHITE_SIDE;
+        }
+        _turn = 1 - side;
+        _key ^= _geometry.whiteToMoveKey();
+        if (_winner < 0 && repeated()) {
+            _winner = _turn;
+        }
+        if (_winner < 0 && movesLeft() == 0) {
+            _winner = side;
+        }
+    }
+
+    /** Undo the last move. */
+    void undo() {
+        if (_moveCount == 0) {
+            throw error("no move to undo");
+        }
+        _moveCount -= 1;
+        int move = _moves[_moveCount];
+        int from = Geometry.from(move), to = Geometry.to(move);
+        int side = 1 - _turn;
+        _turn = side;
+        _key ^= _geometry.whiteToMoveKey();
+        for (long captured = _captured[_moveCount]; captured != 0;
+             captured >>>= CAPTURE_BITS) {
+            int sq = (int) (captured & CAPTURE_SQUARE) - 1;
+            if ((captured & KING_CAPTURED) != 0) {
+                _king = sq;
+                add(WHITE_SIDE, sq, KING_KIND);
+            } else if ((captured & WHITE_CAPTURED) != 0) {
+                add(WHITE_SIDE, sq, WHITE_SIDE);
+            } else {
+                add(BLACK_SIDE, sq, BLACK_SIDE);
+            }
+        }
+        int kind = to == _king ? KING_KIND : side;
+        remove(side, to, kind);
+        add(side, from, kind);
+        if (kind == KING_KIND) {
+            _king = from;
+        }
+        _winner = _winners[_moveCount];
+    }
+
+    /** Return the position in the format of Board.encodedBoard(): the
+     *  side to move followed by the contents of each square in order. */
+    String encoded() {
+        StringBuilder result = new StringBuilder(_geometry.squares() + 1);
+        result.append(_turn == WHITE_SIDE ? 'W' : 'B');
+        for (int sq = 0; sq < _geometry.squares(); sq += 1) {
+            result.append(get(sq).toString());
+        }
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        int size = _geometry.size();
+        Formatter out = new Formatter();
+        for (int r = size - 1; r >= 0; r -= 1) {
+            out.format("%2d", r + 1);
+            for (int c = 0; c < size; c += 1) {
+                out.format(" %s", get(r * size + c));
+            }
+            out.format("%n");
+        }
+        out.format("  ");
+        for (int c = 0; c < size; c += 1) {
+            out.format(" %c", (char) ('a' + c));
+        }
+        out.format("%n");
+        return out.toString();
+    }
+
+    /** Return the number of positions reached by DEPTH moves from this
+     *  one (counting won positions as ends of the line), using BUFFERS,
+     *  an array of at least DEPTH arrays of maxMoves() ints. */
+    long perft(int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        }
+        int[] moves = buffers[depth - 1];
+        int n = legalMoves(moves);
+        if (depth == 1) {
+            return n;
+        }
+        long total = 0;
+        for (int k = 0; k < n; k += 1) {
+            makeMove(moves[k]);
+            total += perft(depth - 1, buffers);
+            undo();
+        }
+        return total;
+    }
+
+    /** Remove the piece on SQ, captured by the move being made, and
+     *  record it for undo. */
+    private void capture(int sq) {
+        if (sq == _king) {
+            _capturing = _capturing << CAPTURE_BITS | sq + 1 | KING_CAPTURED;
+            remove(WHITE_SIDE, sq, KING_KIND);
+            _king = -1;
+        } else if (has(WHITE_SIDE, sq)) {
+            _capturing = _capturing << CAPTURE_BITS | sq + 1 | WHITE_CAPTURED;
+            remove(WHITE_SIDE, sq, WHITE_SIDE);
+        } else {
+            _capturing = _capturing << CAPTURE_BITS | sq + 1;
+            remove(BLACK_SIDE, sq, BLACK_SIDE);
+        }
+    }
+
+    /** Return true iff the current position (with the same side to move)
+     *  occurred earlier in the game. */
+    private boolean repeated() {
+        for (int k = _moveCount - 2; k >= 0; k -= 2) {
+            if (_keys[k] == _key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Record the state before MOVE for undo. */
+    private void push(int move) {
+        if (_moveCount == _moves.length) {
+            int n = Math.max(16, 2 * _moveCount);
+            _moves = Arrays.copyOf(_moves, n);
+            _captured = Arrays.copyOf(_captured, n);
+            _keys = Arrays.copyOf(_keys, n);
+            _winners = Arrays.copyOf(_winners, n);
+        }
+        _moves[_moveCount] = move;
+        _keys[_moveCount] = _key;
+        _winners[_moveCount] = _winner;
+        _moveCount += 1;
+    }
+
+    /** Put a piece of SIDE on empty square SQ in setting up. */
+    private void place(int side, int sq) {
+        add(side, sq, side);
+    }
+
+    /** Put a piece of SIDE and hashing KIND on SQ. */
+    private void add(int side, int sq, int kind) {
+        flip(side, sq);
+        _key ^= _geometry.key(kind, sq);
+    }
+
+    /** Remove the piece of SIDE and hashing KIND from SQ. */
+    private void remove(int side, int sq, int kind) {
+        flip(side, sq);
+        _key ^= _geometry.key(kind, sq);
+    }
+
+    /** Empty both sides' sets. */
+    abstract void clear();
+
+    /** Make both sides' sets those of OTHER, a board of my size. */
+    abstract void copySets(TaflBoard other);
+
+    /** Return true iff a piece of SIDE is on SQ. */
+    abstract boolean has(int side, int sq);
+
+    /** Return true iff any piece is on SQ. */
+    abstract boolean occupied(int sq);
+
+    /** Add SQ to or remove it from the set of SIDE. */
+    abstract void flip(int side, int sq);
+
+    /** Return the first square at or after SQ holding a piece of SIDE, or
+     *  -1 if none. */
+    abstract int next(int side, int sq);
+
+    /** A board of at most 128 squares, each side's set in two longs. */
+    static final class Small extends TaflBoard {
+
+        /** A board with GEOMETRY (of at most 128 squares). */
+        Small(Geometry geometry) {
+            super(geometry);
+        }
+
+        @Override
+        void clear() {
+            _lo0 = _hi0 = _lo1 = _hi1 = 0;
+        }
+
+        @Override
+        void copySets(TaflBoard other) {
+            Small small = (Small) other;
+            _lo0 = small._lo0;
+            _hi0 = small._hi0;
+            _lo1 = small._lo1;
+            _hi1 = small._hi1;
+        }
+
+        @Override
+        boolean has(int side, int sq) {
+            long word = side == BLACK_SIDE ? (sq < 64 ? _lo0 : _hi0)
+                : (sq < 64 ? _lo1 : _hi1);
+            return (word >>> sq & 1) != 0;
+        }
+
+        @Override
+        boolean occupied(int sq) {
+            long word = sq < 64 ? _lo0 | _lo1 : _hi0 | _hi1;
+            return (word >>> sq & 1) != 0;
+        }
+
+        @Override
+        void flip(int side, int sq) {
+            long bit = 1L << sq;
+            if (side == BLACK_SIDE) {
+                if (sq < 64) {
+                    _lo0 ^= bit;
+                } else {
+                    _hi0 ^= bit;
+                }
+            } else if (sq < 64) {
+                _lo1 ^= bit;
+            } else {
+                _hi1 ^= bit;
+            }
+        }
+
+        @Override
+        int next(int side, int sq) {
+            if (sq < 64) {
+                long lo = (side == BLACK_SIDE ? _lo0 : _lo1) & (-1L << sq);
+                if (lo != 0) {
+                    return Long.numberOfTrailingZeros(lo);
+                }
+                sq = 64;
+            }
+            if (sq >= 128) {
+                return -1;
+            }
+            long hi = (side == BLACK_SIDE ? _hi0 : _hi1) & (-1L << sq);
+            return hi == 0 ? -1 : 64 + Long.numberOfTrailingZeros(hi);
+        }
+
+        /** Squares 0-63 and 64-127 of black's set. */
+        private long _lo0, _hi0;
+        /** Squares 0-63 and 64-127 of white's set. */
+        private long _lo1, _hi1;
+    }
+
+    /** A board of any size, each side's set in an array of longs. */
+    static final class Wide extends TaflBoard {
+
+        /** A board with GEOMETRY. */
+        Wide(Geometry geometry) {
+            super(geometry);
+            _words = (geometry.squares() + Long.SIZE - 1) / Long.SIZE;
+            _sets = new long[2][_words];
+        }
+
+        @Override
+        void clear() {
+            Arrays.fill(_sets[0], 0);
+            Arrays.fill(_sets[1], 0);
+        }
+
+        @Override
+        void copySets(TaflBoard other) {
+            Wide wide = (Wide) other;
+            System.arraycopy(wide._sets[0], 0, _sets[0], 0, _words);
+            System.arraycopy(wide._sets[1], 0, _sets[1], 0, _words);
+        }
+
+        @Override
+        boolean has(int side, int sq) {
+            return (_sets[side][sq >>> 6] >>> sq & 1) != 0;
+        }
+
+        @Override
+        boolean occupied(int sq) {
+            return ((_sets[0][sq >>> 6] | _sets[1][sq >>> 6]) >>> sq & 1)
+                != 0;
+        }
+
+        @Override
+        void flip(int side, int sq) {
+            _sets[side][sq >>> 6] ^= 1L << sq;
+        }
+
+        @Override
+        int next(int side, int sq) {
+            long[] set = _sets[side];
+            int w = sq >>> 6;
+            if (w >= _words) {
+                return -1;
+            }
+            long word = set[w] & (-1L << sq);
+            while (word == 0) {
+                w += 1;
+                if (w == _words) {
+                    return -1;
+                }
+                word = set[w];
+            }
+            return (w << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        /** Number of words in each set. */
+        private final int _words;
+        /** The sets of black and white. */
+        private final long[][] _sets;
+    }
+
+    /** My geometry. */
+    private final Geometry _geometry;
+    /** Side to move. */
+    private int _turn;
+    /** Winning side, or -1. */
+    private int _winner;
+    /** Square of the king, or -1. */
+    private int _king;
+    /** Hash key of the position. */
+    private long _key;
+    /** Move limit, or 0 if none (see setMoveLimit). */
+    private int _lim;
+    /** Number of moves made. */
+    private int _moveCount;
+    /** Moves made. */
+    private int[] _moves = new int[0];
+    /** Squares captured by each move (see CAPTURE_BITS). */
+    private long[] _captured = new long[0];
+    /** Keys before each move. */
+    private long[] _keys = new long[0];
+    /** Winners before each move. */
+    private int[] _winners = new int[0];
+    /** Captures so far by the move being made (see CAPTURE_BITS). */
+    private long _capturing;
+    /** My squares as seen by CaptureRules. */
+    private final CaptureRules.Pieces _pieces = new CaptureRules.Pieces() {
+        @Override
+        public Piece get(int sq) {
+            return TaflBoard.this.get(sq);
+        }
+
+        @Override
+        public void capture(int sq) {
+            TaflBoard.this.capture(sq);
+        }
+    };
+}
@@ -1,6 +1,7 @@
 package tablut;
 
 import static tablut.Move.mv;
+import static tablut.Piece.WHITE;
 
 
 /** A Player that takes input as text commands from its Controller.
@@ -33,8 +34,21 @@ class TextPlayer extends Player {
     String myMove() {
         while (true) {
             String line = _controller.readLine(true);
+            TaflBoard tafl = _controller.taflBoard();
             if (line == null) {
                 return "quit";
+            } else if (tafl != null) {
+                int move = tafl.geometry().move(line, 0, line.length());
+                int side = myPiece() == WHITE ? TaflBoard.WHITE_SIDE
+                    : TaflBoard.BLACK_SIDE;
+                if (move >= 0 && (tafl.winner() >= 0 || tafl.turn() != side)) {
+                    _controller.reportError("misplaced move");
+                    continue;
+                } else if (move >= 0 && !tafl.isLegal(move)) {
+                    _controller.reportError("Invalid move. "
+                                            + "Please try again.");
+                    continue;
+                }
             } else if (Move.isGrammaticalMove(line)) {
                 if (board().winner() != null || board().turn() != myPiece()) {
                     _controller.reportError("misplaced move");
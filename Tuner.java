@@ -0,0 +1,229 @@
+package tablut;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static tablut.Evaluation.NUM_FEATURES;
+import static tablut.Piece.*;
+
+/** A tuner of the weights of Evaluation in the manner of Texel: the
+ *  positions of recorded games (see GameWriter), each labelled with its
+ *  game's result, are used to choose weights that minimize the mean
+ *  squared difference between the results and the win probabilities
+ *  predicted from the evaluation,
+ *  <pre>
+ *     P(white wins) = 1 / (1 + exp(-score / SCALE)).
+ *  </pre>
+ *  The features of the positions are computed once, when they are loaded
+ *  (in batches; see BoardBatch), into one primitive array (NUM_FEATURES
+ *  shorts per position), so that millions of positions take little
+ *  memory.  Each step of the fit (Adam gradient descent) sums the error
+ *  gradient over slices of the positions on several threads.
+ *  @author Dhruv Krishnaswamy
+ */
+class Tuner {
+
+    /** Scale of the scores in the predicted probabilities. */
+    static final double SCALE = 400;
+
+    /** Step size of the fit, in units of weights. */
+    static final double LEARNING_RATE = 1.0;
+
+    /** Decay rates of the fit's running gradient mean and variance. */
+    private static final double BETA1 = 0.9, BETA2 = 0.999;
+
+    /** Positions whose features are computed together (see
+     *  BoardBatch). */
+    private static final int BATCH = 4096;
+
+    /** Positions per slice of the work of one step. */
+    private static final int SLICE = 1 << 16;
+
+    /** A tuner with no positions that uses THREADS threads. */
+    Tuner(int threads) {
+        _threads = Math.max(1, threads);
+    }
+
+    /** Add the positions of the games in FILE (a game file as written by
+     *  GameWriter), skipping their random openings (see Arena) and
+     *  won positions.  Returns the number of positions added. */
+    long load(Path file) throws IOException {
+        Board board = new Board();
+        BoardBatch batch = new BoardBatch(BATCH);
+        byte[] results = new byte[BATCH];
+        int[] features = new int[BATCH * NUM_FEATURES];
+        long added = 0;
+        try (GameReader games = new GameReader(file)) {
+            while (games.next()) {
+                Piece winner = games.winner();
+                byte result =
+                    (byte) (winner == WHITE ? 2 : winner == BLACK ? 0 : 1);
+                board.init();
+                for (int k = 0; k < games.plies(); k += 1) {
+                    if (k >= Arena.OPENING_PLIES && board.winner() == null) {
+                        if (batch.size() == BATCH) {
+                            add(batch, results, features);
+                        }
+                        results[batch.add(board)] = result;
+                        added += 1;
+                    }
+                    board.makeMove(games.move(k));
+                }
+            }
+        }
+        add(batch, results, features);
+        return added;
+    }
+
+    /** Return the number of positions loaded. */
+    int positions() {
+        return _count;
+    }
+
+    /** Return the mean squared error of the predictions of WEIGHTS. */
+    double error(double[] weights) {
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        try {
+            return error(workers, weights);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Return the weights found by ITERATIONS steps of the fit starting
+     *  from START, reporting progress on LOG (if not null). */
+    double[] fit(double[] start, int iterations, PrintStream log) {
+        double[] weights = start.clone(),
+            mean = new double[NUM_FEATURES],
+            variance = new double[NUM_FEATURES];
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        try {
+            for (int t = 1; t <= iterations; t += 1) {
+                step(t, sums(workers, weights), weights, mean, variance);
+                if (log != null
+                    && (t % REPORT_INTERVAL == 0 || t == iterations)) {
+                    log.printf("iteration %d: error %.6f%n", t,
+                               error(workers, weights));
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return weights;
+    }
+
+    /** Make step T (numbered from 1) of the fit, given SUMS (as returned
+     *  by sums), updating WEIGHTS and the running MEAN and VARIANCE of the
+     *  gradient. */
+    private void step(int t, double[] sums, double[] weights,
+                      double[] mean, double[] variance) {
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            double grad = sums[k] / _count;
+            mean[k] = BETA1 * mean[k] + (1 - BETA1) * grad;
+            variance[k] = BETA2 * variance[k] + (1 - BETA2) * grad * grad;
+            double m = mean[k] / (1 - Math.pow(BETA1, t)),
+                v = variance[k] / (1 - Math.pow(BETA2, t));
+            weights[k] -= LEARNING_RATE * m / (Math.sqrt(v) + 1e-12);
+        }
+    }
+
+    /** Return the mean squared error of WEIGHTS, computed by
+     *  WORKERS. */
+    private double error(ExecutorService workers, double[] weights) {
+        return sums(workers, weights)[NUM_FEATURES] / Math.max(1, _count);
+    }
+
+    /** Return the gradient of the total squared error of WEIGHTS over
+     *  all positions (NUM_FEATURES values), followed by that total,
+     *  computed by WORKERS. */
+    private double[] sums(ExecutorService workers, double[] weights) {
+        double[] total = new double[NUM_FEATURES + 1];
+        try {
+            List<Future<double[]>> slices = new ArrayList<>();
+            for (int k = 0; k < _count; k += SLICE) {
+                int from = k, to = Math.min(_count, k + SLICE);
+                slices.add(workers.submit(() -> sums(weights, from, to)));
+            }
+            for (Future<double[]> slice : slices) {
+                double[] sums = slice.get();
+                for (int k = 0; k <= NUM_FEATURES; k += 1) {
+                    total[k] += sums[k];
+                }
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException("tuning failed: " + excp);
+        }
+        return total;
+    }
+
+    /** Return the gradient and total of the squared error of WEIGHTS over
+     *  positions FROM to TO-1, as for sums(WORKERS, WEIGHTS). */
+    private double[] sums(double[] weights, int from, int to) {
+        double[] sums = new double[NUM_FEATURES + 1];
+        short[] features = _features;
+        for (int p = from, base = from * NUM_FEATURES; p < to;
+             p += 1, base += NUM_FEATURES) {
+            double score = 0;
+            for (int k = 0; k < NUM_FEATURES; k += 1) {
+                score += weights[k] * features[base + k];
+            }
+            double predicted = 1 / (1 + Math.exp(-score / SCALE)),
+                diff = predicted - _results[p] * 0.5,
+                slope = 2 * diff * predicted * (1 - predicted) / SCALE;
+            for (int k = 0; k < NUM_FEATURES; k += 1) {
+                sums[k] += slope * features[base + k];
+            }
+            sums[NUM_FEATURES] += diff * diff;
+        }
+        return sums;
+    }
+
+    /** Add the positions of BATCH, whose games' results are in RESULTS,
+     *  and clear BATCH, using FEATURES as room for their features. */
+    private void add(BoardBatch batch, byte[] results, int[] features) {
+        batch.features(features);
+        for (int b = 0; b < batch.size(); b += 1) {
+            add(features, b * NUM_FEATURES, results[b]);
+        }
+        batch.clear();
+    }
+
+    /** Add a position with features FEATURES[START .. START+NUM_FEATURES-1]
+     *  whose game's RESULT was 0 (black won), 1 (no winner), or 2 (white
+     *  won). */
+    private void add(int[] features, int start, byte result) {
+        if (_count == _results.length) {
+            int n = Math.max(1024, 2 * _count);
+            _results = Arrays.copyOf(_results, n);
+            _features = Arrays.copyOf(_features, n * NUM_FEATURES);
+        }
+        for (int k = 0; k < NUM_FEATURES; k += 1) {
+            _features[_count * NUM_FEATURES + k] =
+                (short) features[start + k];
+        }
+        _results[_count] = result;
+        _count += 1;
+    }
+
+    /** Number of steps between reports of progress. */
+    private static final int REPORT_INTERVAL = 50;
+
+    /** Number of threads used. */
+    private final int _threads;
+    /** Number of positions loaded. */
+    private int _count;
+    /** Features of position p at _features[p * NUM_FEATURES] to
+     *  _features[(p + 1) * NUM_FEATURES - 1]. */
+    private short[] _features = new short[0];
+    /** Result of the game of each position: 0 (black won), 1 (no
+     *  winner), or 2 (white won). */
+    private byte[] _results = new byte[0];
+}
@@ -4,13 +4,45 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
 
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 /** The suite of all JUnit tests for the enigma package.
  *  @author Dhruv Krishnaswamy
  */
 public class UnitTest {
 
+    /** Most plies in each game played by playRandomGames. */
+    private static final int RANDOM_GAME_PLIES = 150;
+
     /**
      * Run the JUnit tests in this package. Add xxxTest.class entries to
      * the arguments of runClasses to run other JUnit tests.
@@ -77,6 +109,1088 @@ public class UnitTest {
 
 
     }
-}
 
+    @Test
+    public void testSprtStatistics() {
+        assertEquals(0.0, SPRT.elo(0.5), 1e-9);
+        assertEquals(0.75, SPRT.score(SPRT.elo(0.75)), 1e-9);
+
+        SPRT test = new SPRT(0, 10);
+        for (int k = 0; k < 200; k += 1) {
+            test.addPair(k % 4 == 0 ? 1 : 1.5);
+        }
+        assertTrue(test.elo() > 0);
+        assertTrue(test.acceptedH1());
+        assertFalse(test.acceptedH0());
+    }
+
+    @Test
+    public void testGameRecordRoundTrip() throws IOException {
+        GameRecord game = new GameRecord(true);
+        game.add(Move.mv("d1-3"), 25, 3);
+        game.add(Move.mv("e3-c"), -40, 2);
+        game.setWinner(Piece.BLACK);
+
+        File file = File.createTempFile("tablut", ".tbg");
+        file.deleteOnExit();
+        try (GameWriter out = new GameWriter(new FileOutputStream(file))) {
+            out.write(game);
+            out.write(new GameRecord(false));
+        }
+        try (GameReader in = new GameReader(file.toPath())) {
+            assertTrue(in.next());
+            assertEquals(2, in.plies());
+            assertSame(Move.mv("e3-c"), in.move(1));
+            assertEquals(-40, in.eval(1));
+            assertEquals(3, in.depth(0));
+            assertSame(Piece.BLACK, in.winner());
+            assertTrue(in.next());
+            assertEquals(0, in.plies());
+            assertNull(in.winner());
+            assertFalse(in.next());
+        }
+    }
+
+    @Test
+    public void testCorruptGameFile() throws IOException {
+        File file = File.createTempFile("tablut", ".tbg");
+        file.deleteOnExit();
+        try (DataOutputStream out =
+             new DataOutputStream(new FileOutputStream(file))) {
+            out.write(GameWriter.MAGIC);
+            out.writeByte(GameWriter.VERSION);
+            out.writeByte(0);
+            out.writeByte(GameRecord.NO_WINNER);
+            out.writeShort(2);
+            out.writeShort(Move.mv("d1-3").packed());
+            out.writeShort(Square.sq("e3").index() << 7
+                           | Square.sq("e3").index());
+        }
+        try (GameReader in = new GameReader(file.toPath())) {
+            in.next();
+            fail("read a game with a corrupt move");
+        } catch (IOException excp) {
+            assertEquals("corrupt game file", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testAnalyzer() throws IOException {
+        Board b = new Board();
+        String start = b.encodedBoard();
+        b.makeMove(Move.mv("d1-3"));
+        File file = File.createTempFile("tablut", ".txt");
+        file.deleteOnExit();
+        try (PrintStream out = new PrintStream(new FileOutputStream(file))) {
+            out.printf("# two positions%n%s%nbogus%n%n%s%n", start,
+                       b.encodedBoard());
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long count = new Analyzer(2, 0, 2)
+            .analyze(file.toPath(), new PrintStream(bytes, true));
+        assertEquals(3, count);
+        String[] lines = bytes.toString().split("\\R");
+        assertEquals(3, lines.length);
+        String[] first = lines[0].split(" ");
+        assertEquals(6, first.length);
+        assertEquals("1", first[0]);
+        b.init();
+        assertTrue(b.isLegal(Move.mv(first[1])));
+        assertEquals("2", first[3]);
+        assertTrue(Long.parseLong(first[4]) > 0);
+        assertTrue(lines[1].startsWith("2 error "));
+        String[] third = lines[2].split(" ");
+        assertEquals("3", third[0]);
+        b.makeMove(Move.mv("d1-3"));
+        assertTrue(b.isLegal(Move.mv(third[1])));
+    }
+
+    @Test
+    public void testAnalyzerBadGame() throws IOException {
+        GameRecord bad = new GameRecord(false);
+        bad.add(Move.mv("d1-3"), 0, 0);
+        bad.add(Move.mv("d1-2"), 0, 0);
+        bad.add(Move.mv("e3-g"), 0, 0);
+        GameRecord good = new GameRecord(false);
+        good.add(Move.mv("a4-b"), 0, 0);
+        File file = File.createTempFile("tablut", ".tbg");
+        file.deleteOnExit();
+        try (GameWriter out = new GameWriter(new FileOutputStream(file))) {
+            out.write(bad);
+            out.write(good);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        long count = new Analyzer(1, 0, 2)
+            .analyze(file.toPath(), new PrintStream(bytes, true));
+        String[] lines = bytes.toString().split("\\R");
+        assertEquals(3, count);
+        assertEquals(3, lines.length);
+        assertFalse(lines[0].contains("error"));
+        assertEquals("2 error illegal move d1-2 in game 1", lines[1]);
+        assertFalse(lines[2].contains("error"));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram hist = new LatencyHistogram();
+        assertEquals(0, hist.percentile(0.5));
+        for (long v = 1; v <= 1000; v += 1) {
+            hist.record(v * 1000);
+        }
+        assertEquals(1000, hist.count());
+        assertEquals(1000000, hist.max());
+        long median = hist.percentile(0.5);
+        assertTrue(median >= 500000 && median <= 500000 * 33 / 32);
+        assertEquals(1000000, hist.percentile(1.0));
+        for (long v : new long[] { 0, 31, 32, 1000, 1L << 40,
+                                   Long.MAX_VALUE }) {
+            int k = LatencyHistogram.bucket(v);
+            assertTrue(LatencyHistogram.lowest(k) <= v);
+            assertTrue(v - LatencyHistogram.lowest(k)
+                       <= LatencyHistogram.lowest(k) / 32);
+        }
+    }
+
+    @Test
+    public void testTaflBoardSizes() {
+        TaflBoard b = TaflBoard.create(9);
+        assertEquals(new Board().encodedBoard(), b.encoded());
+        int[] moves = new int[b.maxMoves()];
+        int n = b.legalMoves(moves);
+        HashSet<String> names = new HashSet<>();
+        for (int k = 0; k < n; k += 1) {
+            names.add(b.geometry().moveName(moves[k]));
+        }
+        HashSet<String> expected = new HashSet<>();
+        for (Move mv : new Board().legalMoves(Piece.BLACK)) {
+            expected.add(mv.toString());
+        }
+        assertEquals(expected, names);
+        for (int size = Geometry.MIN_SIZE; size <= Geometry.MAX_SIZE;
+             size += 2) {
+            b = TaflBoard.create(size);
+            String start = b.encoded();
+            n = b.legalMoves(new int[b.maxMoves()]);
+            assertTrue(n > 0);
+            assertEquals(n, b.perft(1, new int[1][b.maxMoves()]));
+            b.perft(3, new int[3][b.maxMoves()]);
+            assertEquals(start, b.encoded());
+        }
+    }
+
+    @Test
+    public void testTaflBoardAgreesWithBoard() {
+        Random rand = new Random(5);
+        TaflBoard tafl = TaflBoard.create(9);
+        int[] moves = new int[tafl.maxMoves()];
+        for (int g = 0; g < 300; g += 1) {
+            Board b = new Board();
+            tafl.init();
+            while (b.winner() == null && b.hasMove(b.turn())) {
+                int n = tafl.legalMoves(moves);
+                HashMap<String, Integer> names = new HashMap<>();
+                for (int k = 0; k < n; k += 1) {
+                    names.put(tafl.geometry().moveName(moves[k]), moves[k]);
+                }
+                List<Move> legal = b.legalMoves(b.turn());
+                assertEquals(legal.size(), n);
+                Move mv = legal.get(rand.nextInt(legal.size()));
+                assertTrue(tafl.isLegal(names.get(mv.toString())));
+                b.makeMove(mv);
+                tafl.makeMove(names.get(mv.toString()));
+                if (rand.nextInt(8) == 0) {
+                    b.undo();
+                    tafl.undo();
+                }
+                assertEquals(b.encodedBoard(), tafl.encoded());
+                int[] expected = new int[Evaluation.NUM_FEATURES],
+                    actual = new int[Evaluation.NUM_FEATURES];
+                Evaluation.features(b, expected);
+                Evaluation.features(tafl, actual);
+                assertArrayEquals(expected, actual);
+                assertEquals(b.winner() == null ? -1
+                             : b.winner() == Piece.WHITE
+                             ? TaflBoard.WHITE_SIDE : TaflBoard.BLACK_SIDE,
+                             tafl.winner());
+            }
+        }
+    }
+
+    @Test
+    public void testLargeBoardGame() {
+        String commands = "size 13\nE1-3\nlimit 4\nauto black ai:2\n"
+            + "dump\nquit\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream print = new PrintStream(out, true);
+        Controller control =
+            new Controller(new NullView(), null,
+                           new TextReporter(print, print),
+                           new TextPlayer(), new AI(1), false,
+                           new Scanner(commands), print);
+        control.play();
+        String text = out.toString();
+        assertEquals(13, control.size());
+        assertTrue(text.contains("wins."));
+        assertTrue(text.contains("13 - - - - B B B"));
+        assertTrue(text.contains("   a b c d e f g h i j k l m"));
+        assertTrue(control.taflBoard().moveCount() <= 8);
+        assertNotNull(control.winner());
+
+        TaflBoard b = TaflBoard.create(11);
+        Geometry geometry = b.geometry();
+        b.makeMove(geometry.move("e1-3", 0, 4));
+        b.makeMove(geometry.move("f4-c", 0, 4));
+        assertEquals(-1, geometry.move("f4-f", 0, 4));
+        assertEquals(-1, geometry.move("l1-3", 0, 4));
+        String log = "size 11\ne1-3\nf4-c\nf4-3\nk10-1\n"
+            + Replayer.CHECKPOINT + b.encoded() + " -\n";
+        try {
+            Replayer.Result result =
+                new Replayer(1).replay(null, new BufferedReader(
+                                           new StringReader(log)));
+            assertEquals(2, result.moves());
+            assertEquals(2, result.errors());
+            assertEquals(1, result.checks());
+            assertTrue(result.mismatches().isEmpty());
+        } catch (IOException excp) {
+            fail(excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testEvaluationFeatures() throws IOException {
+        int[] features = new int[Evaluation.NUM_FEATURES];
+        Evaluation.features(new Board(), features);
+        assertEquals(8, features[Evaluation.WHITE_PIECES]);
+        assertEquals(16, features[Evaluation.BLACK_PIECES]);
+        assertEquals(4, features[Evaluation.KING_EDGE_DISTANCE]);
+        assertEquals(0, features[Evaluation.KING_MOBILITY]);
+        assertEquals(0, features[Evaluation.WHITE_TO_MOVE]);
+        int[] weights = new int[Evaluation.NUM_FEATURES];
+        weights[Evaluation.BLACK_PIECES] = -7;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Evaluation(weights).write(new PrintStream(bytes), "test");
+        Evaluation read = Evaluation.read(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(-7 * 16, read.score(new Board()));
+    }
+
+    @Test
+    public void testEngineEvaluation() {
+        Controller control = new Controller(new NullReporter());
+        Player nnue = Controller.engine("ai:2:nnue")
+            .create(Piece.WHITE, control);
+        Player classic = Controller.engine("ai:2")
+            .create(Piece.BLACK, control);
+        assertTrue(nnue.evaluation().startsWith("nnue"));
+        assertEquals("classic", classic.evaluation());
+        nnue.useNetwork(false);
+        classic.useNetwork(true);
+        assertEquals("classic", nnue.evaluation());
+        assertTrue(classic.evaluation().startsWith("nnue"));
+        assertNull(Controller.engine("mcts").evaluation());
+    }
+
+    @Test
+    public void testNetworkAccumulator() {
+        Network net = Network.initial();
+        Board b = new Board();
+        b.setNetwork(net);
+        playRandomGames(b, 3, 4, board -> {
+            Board fresh = new Board();
+            fresh.setPosition(board.encodedBoard());
+            fresh.setNetwork(net);
+            assertEquals(fresh.networkScore(), board.networkScore());
+        });
+    }
+
+    @Test
+    public void testLegalMoveMasks() {
+        playRandomGames(new Board(), 1, 10, this::checkLegality);
+    }
+
+    @Test
+    public void testMobility() {
+        playRandomGames(new Board(), 2, 10, b -> {
+            for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK,
+                                            Piece.KING }) {
+                int n = b.legalMoves(side).size();
+                assertEquals(n, b.mobility(side));
+                assertEquals(n > 0, b.hasMove(side));
+            }
+        });
+        Board empty = new Board();
+        empty.setPosition("B" + "-".repeat(Square.NUM_SQUARES));
+        assertFalse(empty.hasMove(Piece.BLACK));
+        assertEquals(0, empty.mobility(Piece.WHITE));
+    }
+
+    @Test
+    public void testPackedPosition() throws IOException {
+        Board b = new Board();
+        Position start = b.position();
+        HashSet<Position> seen = new HashSet<>();
+        seen.add(start);
+        for (String mv : new String[] { "e2-d", "e3-c", "f1-3" }) {
+            b.makeMove(Move.mv(mv));
+            Position pos = b.position();
+            assertEquals(Position.parse(b.encodedBoard()), pos);
+            assertEquals(b.encodedBoard(), pos.toString());
+            assertTrue(seen.add(pos));
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            pos.write(new DataOutputStream(bytes));
+            assertEquals(Position.BYTES, bytes.size());
+            assertEquals(pos, Position.read(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+        assertEquals(Piece.WHITE, b.position().turn());
+        Board other = new Board();
+        other.setPosition(b.position());
+        assertEquals(b.encodedBoard(), other.encodedBoard());
+        b.undo();
+        b.undo();
+        b.undo();
+        assertEquals(start, b.position());
+        assertTrue(seen.contains(b.position()));
+    }
+
+    @Test
+    public void testMoveLimit() {
+        String encoded = new Board().encodedBoard();
+        for (String start : new String[] { encoded,
+                                           "W" + encoded.substring(1) }) {
+            for (int limit = 1; limit <= 12; limit += 1) {
+                Board b = new Board();
+                b.setPosition(start);
+                b.setMoveLimit(limit);
+                int lim = limit;
+                playRandomGames(b, limit, 3,
+                                board -> checkMoveLimit(board, lim));
+            }
+        }
+    }
+
+    @Test
+    public void testMetricsText() {
+        Metrics metrics = new Metrics();
+        metrics.counter("test_total", "A counter.").add(3);
+        String text = metrics.text();
+        assertFalse(text.contains("\r"));
+        assertTrue(text.endsWith("# HELP test_total A counter.\n"
+                                 + "# TYPE test_total counter\n"
+                                 + "test_total 3\n"));
+    }
+
+    @Test
+    public void testAsyncLogWriteFailure() throws InterruptedException {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        OutputStream crashing = new OutputStream() {
+            @Override
+            public void write(int b) {
+                throw new UncheckedIOException(new IOException("crash"));
+            }
+        };
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        PrintStream savedErr = System.err;
+        System.setErr(new PrintStream(err, true));
+        try {
+            for (OutputStream out : new OutputStream[] { failing, crashing }) {
+                AsyncLog log = new AsyncLog(out, null,
+                                            AsyncLog.Durability.FLUSHED, 1, 1);
+                Thread user = new Thread(() -> {
+                    for (int k = 0; k < 1000; k += 1) {
+                        log.println("line " + k);
+                    }
+                    log.close();
+                });
+                user.setDaemon(true);
+                user.start();
+                user.join(5000);
+                assertFalse("log blocked after failing", user.isAlive());
+            }
+        } finally {
+            System.setErr(savedErr);
+        }
+        assertTrue(err.toString().contains("disk full"));
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        Board b = new Board();
+        b.makeMove(Move.mv("a4-b"));
+        b.makeMove(Move.mv("e3-c"));
+        String log = "seed 1\nA4-B\ne3-c # reply\nbogus\nauto white\n"
+            + "eval nnue\ndump\nstats on\n"
+            + Replayer.CHECKPOINT + b.encodedBoard() + " -\n"
+            + "new\nd1-a\n";
+        LongAdder games =
+            Metrics.REGISTRY.gauge("tablut_games_in_progress", "");
+        long inProgress = games.sum();
+        Replayer.Result result =
+            new Replayer(1).replay(null,
+                                   new BufferedReader(new StringReader(log)));
+        assertEquals(3, result.moves());
+        assertEquals(2, result.games());
+        assertEquals(1, result.errors());
+        assertEquals(1, result.checks());
+        assertTrue(result.mismatches().isEmpty());
+        b.init();
+        b.makeMove(Move.mv("d1-a"));
+        assertEquals(b.encodedBoard(), result.finalPosition());
+        assertEquals(inProgress, games.sum());
+    }
+
+    @Test
+    public void testHeadlessCommands() {
+        Controller control = new Controller(new NullReporter());
+        control.executeCommand("stats on");
+        control.executeCommand("eval classic");
+        control.executeCommand("auto black ai:1");
+        control.executeCommand("manual white");
+        control.executeCommand("stats");
+        control.executeCommand("dump");
+        assertBadCommand(control, "auto black bogus:1");
+        assertEquals(0, control.board().moveCount());
+    }
+
+    @Test
+    public void testArena() {
+        Arena arena = new Arena("ai:1", "ai:2", 2);
+        arena.setSeed(7);
+        arena.play(4);
+        assertEquals(4, arena.games());
+        for (Piece color : new Piece[] { Piece.BLACK, Piece.WHITE }) {
+            Piece other = color.opponent();
+            for (int e = 0; e < 2; e += 1) {
+                assertEquals(2, arena.count(e, color, Arena.WIN)
+                             + arena.count(e, color, Arena.LOSS)
+                             + arena.count(e, color, Arena.DRAW));
+            }
+            assertEquals(arena.count(0, color, Arena.WIN),
+                         arena.count(1, other, Arena.LOSS));
+            assertEquals(arena.count(0, color, Arena.LOSS),
+                         arena.count(1, other, Arena.WIN));
+            assertEquals(arena.count(0, color, Arena.DRAW),
+                         arena.count(1, other, Arena.DRAW));
+        }
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        arena.report(new PrintStream(report, true));
+        assertTrue(report.toString().contains("4 games in "));
+    }
+
+    @Test
+    public void testCommandDispatch() {
+        Controller control = new Controller(new NullReporter());
+        control.executeCommand("  D1-3\t# a move, in upper case");
+        control.executeCommand("E3-g");
+        assertEquals(2, control.board().moveCount());
+        assertEquals(Piece.BLACK, control.board().get(Square.sq("d3")));
+        control.executeCommand("UNDO");
+        assertEquals(0, control.board().moveCount());
+        control.executeCommand("# nothing but a comment");
+        control.executeCommand("Seed 7 # comment");
+        control.executeCommand("LIMIT 20");
+        control.executeCommand("d1-3");
+        control.executeCommand("New");
+        assertEquals(0, control.board().moveCount());
+        assertBadCommand(control, "d1-1");
+        assertBadCommand(control, "d1-3 e3-c");
+        assertBadCommand(control, "d1-3x");
+        assertBadCommand(control, "new game");
+        assertBadCommand(control, "dump board");
+        assertBadCommand(control, "seed 1 2");
+        assertBadCommand(control, "seed x");
+        assertBadCommand(control, "stats on off");
+        assertBadCommand(control, "manual green");
+        assertBadCommand(control, "auto white ai:x");
+        assertBadCommand(control, "toggle z9");
+        assertBadCommand(control, "frobnicate");
+        assertBadCommand(control, "quitting # not quit");
+        assertEquals(0, control.board().moveCount());
+    }
+
+    /** Assert that executing CMND on CONTROL reports an error. */
+    private static void assertBadCommand(Controller control, String cmnd) {
+        try {
+            control.executeCommand(cmnd);
+            fail("accepted " + cmnd);
+        } catch (IllegalArgumentException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testRepetition() {
+        Board b = new Board();
+        for (String mv : new String[] { "a4-b", "e3-c", "b4-a", "c3-e" }) {
+            assertNull(b.winner());
+            b.makeMove(Move.mv(mv));
+        }
+        assertEquals(Piece.BLACK, b.winner());
+        assertTrue(b.repeatedPosition());
+        b.undo();
+        assertNull(b.winner());
+        assertFalse(b.repeatedPosition());
+        assertEquals(3, b.moveCount());
+
+        PositionCounts counts = new PositionCounts();
+        HashMap<Position, Integer> model = new HashMap<>();
+        Random rand = new Random(1);
+        for (int k = 0; k < 20000; k += 1) {
+            Position pos = new Position(rand.nextInt(600), 0, 0);
+            if (rand.nextBoolean()) {
+                counts.add(pos);
+                model.merge(pos, 1, Integer::sum);
+            } else {
+                counts.remove(pos);
+                model.computeIfPresent(pos, (p, n) -> n > 1 ? n - 1 : null);
+            }
+            assertEquals((int) model.getOrDefault(pos, 0), counts.count(pos));
+        }
+        assertEquals(model.size(), counts.size());
+    }
+
+    @Test
+    public void testPlayoutRepetition() {
+        Board b = new Board();
+        b.makeMove(Move.mv("a4-b"));
+        b.makeMove(Move.mv("e3-c"));
+        Board scratch = new Board();
+        for (int k = 0; k < 2; k += 1) {
+            scratch.copyForPlayout(b);
+            assertEquals(b.position(), scratch.position());
+            assertEquals(2, scratch.moveCount());
+            scratch.makeMove(Move.mv("b4-a"));
+            assertNull(scratch.winner());
+            scratch.makeMove(Move.mv("c3-e"));
+            assertEquals(Piece.BLACK, scratch.winner());
+            assertTrue(scratch.repeatedPosition());
+        }
+        assertNull(b.winner());
+        assertEquals(2, b.moveCount());
+
+        scratch.copyForPlayout(b);
+        scratch.clearUndo();
+        scratch.makeMove(Move.mv("b4-a"));
+        scratch.makeMove(Move.mv("c3-e"));
+        assertNull(scratch.winner());
+    }
+
+    @Test
+    public void testMctsThreads() {
+        Controller control = new Controller(new NullReporter());
+        for (int k = 0; k < 2; k += 1) {
+            Controller.engine("mcts:20:0:100000").create(Piece.BLACK, control)
+                .myMove();
+        }
+        long threads = mctsThreads();
+        int cores = Runtime.getRuntime().availableProcessors();
+        assertTrue(threads <= cores * (cores + 1) / 2);
+        for (int k = 0; k < 4; k += 1) {
+            Controller.engine("mcts:20:0:100000").create(Piece.BLACK, control)
+                .myMove();
+        }
+        assertEquals(threads, mctsThreads());
+    }
+
+    /** Return the number of live MCTS search threads. */
+    private static long mctsThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+            .filter(t -> t.getName().equals("mcts")).count();
+    }
+
+    @Test
+    public void testMctsFindsWin() {
+        char[] cells = new char[Square.NUM_SQUARES + 1];
+        java.util.Arrays.fill(cells, '-');
+        cells[0] = 'W';
+        for (String sq : new String[] { "c3", "e3", "d4", "a2", "i2",
+                                        "b8", "h8" }) {
+            cells[Square.sq(sq).index() + 1] = 'B';
+        }
+        for (String sq : new String[] { "g7", "f8", "e8" }) {
+            cells[Square.sq(sq).index() + 1] = 'W';
+        }
+        cells[Square.sq("d3").index() + 1] = 'K';
+        for (int threads = 1; threads <= 2; threads += 1) {
+            Controller control = new Controller(new NullReporter());
+            control.setSeed(11);
+            control.board().setPosition(new String(cells));
+            Player mcts = new MCTS(400, 0, threads).create(Piece.WHITE,
+                                                             control);
+            assertEquals("d3-1", mcts.myMove());
+        }
+
+        String[] moves = new String[2];
+        for (int run = 0; run < 2; run += 1) {
+            Controller control = new Controller(new NullReporter());
+            control.setSeed(7);
+            Player black = new MCTS(200, 0, 2).create(Piece.BLACK, control);
+            Player white = new MCTS(200, 0, 2).create(Piece.WHITE, control);
+            StringBuilder game = new StringBuilder();
+            for (Player p : new Player[] { black, white, black }) {
+                String mv = p.myMove();
+                control.board().makeMove(Move.mv(mv));
+                game.append(mv).append(' ');
+            }
+            moves[run] = game.toString();
+        }
+        assertEquals(moves[0], moves[1]);
+    }
+
+    @Test
+    public void testBoardBatch() {
+        int n = 70, f = Evaluation.NUM_FEATURES;
+        BoardBatch batch = new BoardBatch(n);
+        Board b = new Board();
+        Random rand = new Random(2);
+        int[][] expected = new int[n][f];
+        for (int k = 0; k < n; k += 1) {
+            if (b.winner() != null || !b.hasMove(b.turn())) {
+                b.init();
+            }
+            List<Move> moves = b.legalMoves(b.turn());
+            b.makeMove(moves.get(rand.nextInt(moves.size())));
+            Evaluation.features(b, expected[k]);
+            assertEquals(k, batch.add(b));
+        }
+        int[] features = new int[n * f];
+        batch.features(features);
+        int[] mobility = new int[n];
+        batch.mobility(Piece.WHITE, mobility);
+        for (int k = 0; k < n; k += 1) {
+            for (int j = 0; j < f; j += 1) {
+                assertEquals(expected[k][j], features[k * f + j]);
+            }
+            assertEquals(expected[k][Evaluation.WHITE_MOBILITY]
+                         + expected[k][Evaluation.KING_MOBILITY],
+                         mobility[k]);
+        }
+    }
+
+    /** Play a game on a GameServer over the loopback interface. */
+    @Test
+    public void testGameServer() throws IOException {
+        GameServer server =
+            new GameServer(0, 1, 1, Controller.engine("ai:1"), 60000);
+        Thread serving = new Thread(server::serve);
+        serving.setDaemon(true);
+        serving.start();
+        try (Socket client = new Socket(InetAddress.getLoopbackAddress(),
+                                        server.port())) {
+            client.setSoTimeout(10000);
+            Scanner replies = new Scanner(client.getInputStream(), "UTF-8");
+            assertTrue(replies.nextLine().startsWith("Tablut"));
+            try (Socket other = new Socket(InetAddress.getLoopbackAddress(),
+                                           server.port())) {
+                other.setSoTimeout(10000);
+                assertEquals("Error: server full",
+                             new Scanner(other.getInputStream(), "UTF-8")
+                             .nextLine());
+            }
+            PrintStream commands =
+                new PrintStream(client.getOutputStream(), true, "UTF-8");
+            commands.println("d1-3");
+            commands.println("quit");
+            String reply = null;
+            while (replies.hasNextLine()) {
+                String line = replies.nextLine();
+                if (line.contains("* ")) {
+                    reply = line.substring(line.indexOf("* ") + 2);
+                }
+            }
+            Board b = new Board();
+            b.makeMove(Move.mv("d1-3"));
+            assertNotNull("no reply from white", reply);
+            assertTrue(b.isLegal(Move.mv(reply)));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testSearchStats() {
+        SearchStats stats = new SearchStats();
+        stats.beginMove();
+        stats.endIteration(1, 10, 2, 1);
+        stats.endIteration(2, 40, 8, 6);
+        stats.endMove();
+        assertEquals(50, stats.nodes());
+        assertEquals(10, stats.cutoffs());
+        assertEquals(7, stats.firstMoveCutoffs());
+        assertEquals(1, stats.moves());
+        assertEquals(2, stats.maxDepth());
+        assertTrue(stats.lastMove().startsWith("depth 2, 50 nodes, "));
+        assertTrue(stats.lastMove().matches(".* iterations 1:\\S+ 2:\\S+"));
+        assertTrue(stats.totals().startsWith("1 moves, 50 nodes, "));
+        assertTrue(stats.totals().endsWith(" (70.0% on first move)"));
+
+        Controller control = new Controller(new NullReporter());
+        Player ai = Controller.engine("ai:3").create(Piece.BLACK, control);
+        control.executeCommand(ai.myMove());
+        control.executeCommand("e3-g");
+        control.executeCommand(ai.myMove());
+        stats = ai.stats();
+        assertEquals(2, stats.moves());
+        assertEquals(3, stats.maxDepth());
+        assertEquals(ai.nodeCount(), stats.nodes());
+        assertTrue(stats.nodes() > 0);
+        assertTrue(stats.firstMoveCutoffs() <= stats.cutoffs());
+        assertTrue(stats.lastMove().startsWith("depth 3, "));
+    }
+
+    @Test
+    public void testFlightEvents() throws IOException {
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable("tablut.Command");
+            recording.enable("tablut.Search");
+            recording.start();
+            Controller control = new Controller(new NullReporter());
+            control.executeCommand("d1-3");
+            assertBadCommand(control, "bogus");
+            Player ai =
+                Controller.engine("ai:2").create(Piece.WHITE, control);
+            control.executeCommand(ai.myMove());
+            control.executeCommand("size 11");
+            ai.myMove();
+            recording.stop();
+            File file = File.createTempFile("tablut", ".jfr");
+            file.deleteOnExit();
+            recording.dump(file.toPath());
+            events = RecordingFile.readAllEvents(file.toPath());
+        }
+        List<String> commands = new ArrayList<>();
+        int rejected = 0;
+        List<Integer> depths = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            switch (event.getEventType().getName()) {
+            case "tablut.Command":
+                commands.add(event.getString("type"));
+                rejected += event.getBoolean("rejected") ? 1 : 0;
+                break;
+            case "tablut.Search":
+                depths.add(event.getInt("depth"));
+                assertTrue(event.getLong("nodes") > 0);
+                assertNotNull(event.getString("move"));
+                break;
+            default:
+                break;
+            }
+        }
+        Collections.sort(commands);
+        assertEquals(List.of("bogus", "move", "move", "size"), commands);
+        assertEquals(1, rejected);
+        assertEquals(List.of(2, 2), depths);
+    }
+
+    @Test
+    public void testSnapshot() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-3"));
+        Snapshot before = b.snapshot();
+        b.makeMove(Move.mv("e3-g"));
+        assertEquals(1, before.moveCount());
+        assertSame(Piece.WHITE, before.turn());
+        assertSame(Piece.BLACK, before.get(Square.sq("d3")));
+        assertSame(Piece.WHITE, before.get(Square.sq("e3")));
+        assertSame(Piece.EMPTY, before.get(Square.sq("g3")));
+        assertNull(before.winner());
+        Snapshot after = b.snapshot();
+        assertEquals(2, after.moveCount());
+        assertSame(Piece.WHITE, after.get(Square.sq("g3")));
+    }
+
+    @Test
+    public void testBoardWidgetUpdate() {
+        BoardWidget widget = new BoardWidget(new LinkedBlockingQueue<>());
+        Board b = new Board();
+        Snapshot start = b.snapshot();
+        b.makeMove(Move.mv("d1-3"));
+        Snapshot first = b.snapshot();
+        b.makeMove(Move.mv("e3-g"));
+        Snapshot second = b.snapshot();
+
+        assertArrayEquals(new Square[] { Square.sq("d1"), Square.sq("d3") },
+                          BoardWidget.slide(start, first));
+        assertNull(BoardWidget.slide(start, second));
+        assertNull(BoardWidget.slide(first, first));
+        assertNull(widget.changedRegion(first, first));
+        Rectangle changed = widget.changedRegion(start, first);
+        assertTrue(changed.contains(center("d1")));
+        assertTrue(changed.contains(center("d3")));
+        assertFalse(changed.contains(center("e1")));
+        assertFalse(changed.contains(center("c2")));
+
+        assertEquals(changed, widget.update(first));
+        Rectangle dirty = widget.update(second);
+        assertTrue(dirty.contains(center("e3")));
+        assertTrue(dirty.contains(center("g3")));
+        assertTrue("interrupted slide not repainted",
+                   dirty.contains(center("d1")));
+        assertNull(widget.update(second));
+    }
+
+    /** Return the point at the center of the square named SQ in a
+     *  BoardWidget. */
+    private static Point center(String sq) {
+        Square s = Square.sq(sq);
+        int half = BoardWidget.SQUARE_SIDE / 2;
+        return new Point(BoardWidget.OFFSET + BoardWidget.MARGIN
+                         + s.col() * BoardWidget.SQUARE_SIDE + half,
+                         BoardWidget.OFFSET + half
+                         + (BoardWidget.SIZE - 1 - s.row())
+                         * BoardWidget.SQUARE_SIDE);
+    }
+
+    @Test
+    public void testBackgroundPlayer() {
+        Controller control = new Controller(new NullReporter());
+        List<Integer> depths = new ArrayList<>();
+        List<Future<?>> searches = new ArrayList<>();
+        SearchProgress progress = new SearchProgress() {
+            @Override
+            public void progress(int depth, Move best, int value,
+                                 long nodes) {
+                depths.add(depth);
+            }
+
+            @Override
+            public void searching(Future<?> search) {
+                searches.add(search);
+            }
+        };
+        Player player =
+            new BackgroundPlayer(Controller.engine("ai:2"), progress)
+            .create(Piece.BLACK, control);
+        assertTrue(control.board().isLegal(Move.mv(player.myMove())));
+        assertEquals(2, searches.size());
+        assertTrue(searches.get(0).isDone());
+        assertNull(searches.get(1));
+        assertEquals(2, (int) depths.get(depths.size() - 1));
+
+        SearchProgress quitting = new SearchProgress() {
+            @Override
+            public void progress(int depth, Move best, int value,
+                                 long nodes) {
+            }
+
+            @Override
+            public void searching(Future<?> search) {
+                if (search != null) {
+                    search.cancel(true);
+                }
+            }
+        };
+        player = new BackgroundPlayer(Controller.engine("ai:2"), quitting)
+            .create(Piece.BLACK, control);
+        assertEquals("quit", player.myMove());
+    }
+
+    /** Check that engines run by a SearchScheduler are given their share
+     *  of the clock as a deadline, and finish near it however deep they
+     *  are told to search. */
+    @Test
+    public void testSchedulerDeadline() throws InterruptedException {
+        SearchScheduler scheduler = new SearchScheduler(1);
+        Controller control = new Controller(new NullReporter());
+        long share = 100, clock = SearchScheduler.EXPECTED_MOVES * share;
+        long[] deadline = new long[1];
+        Player recorder = deadlineRecorder(control, deadline);
+        long before = System.currentTimeMillis();
+        assertEquals("d1-3", scheduler.move(recorder, clock));
+        long after = System.currentTimeMillis();
+        assertTrue(deadline[0] >= before + share);
+        assertTrue(deadline[0] <= after + share);
+
+        for (String engine : new String[] { "ai:12", "mcts:100000000:0:4" }) {
+            Player player =
+                new PooledPlayer(Controller.engine(engine), scheduler, clock)
+                .create(Piece.BLACK, control);
+            long start = System.currentTimeMillis();
+            String move = player.myMove();
+            assertTrue(control.board().isLegal(Move.mv(move)));
+            assertTrue(System.currentTimeMillis() - start < 100 * share);
+        }
+    }
+
+    @Test
+    public void testSchedulerMoveLimit() throws InterruptedException {
+        SearchScheduler scheduler = new SearchScheduler(1);
+        Controller control = new Controller(new NullReporter());
+        long[] deadline = new long[1];
+        Player recorder = deadlineRecorder(control, deadline);
+        long clock = 60000;
+        for (String size : new String[] { "9", "11" }) {
+            control.executeCommand("size " + size);
+            control.executeCommand("limit 2");
+            assertEquals(4, control.movesLeft());
+            long before = System.currentTimeMillis();
+            scheduler.move(recorder, clock);
+            long after = System.currentTimeMillis();
+            assertTrue(deadline[0] >= before + clock / 2);
+            assertTrue(deadline[0] <= after + clock / 2);
+        }
+    }
+
+    /** Return an automated player in the game controlled by CONTROL that
+     *  stores the deadline it is given (see Player.setDeadline) in
+     *  DEADLINE[0] and always moves d1-3. */
+    private static Player deadlineRecorder(Controller control,
+                                           long[] deadline) {
+        return new Player(Piece.BLACK, control) {
+            @Override
+            boolean isManual() {
+                return false;
+            }
+
+            @Override
+            Player create(Piece piece, Controller controller) {
+                return this;
+            }
+
+            @Override
+            void setDeadline(long time) {
+                deadline[0] = time;
+            }
+
+            @Override
+            String myMove() {
+                return "d1-3";
+            }
+        };
+    }
 
+    @Test
+    public void testPooledClock() {
+        SearchScheduler scheduler = new SearchScheduler(1);
+        Controller control = new Controller(new NullReporter());
+        long budget = SearchScheduler.EXPECTED_MOVES * 1000;
+        PooledPlayer player = (PooledPlayer)
+            new PooledPlayer(Controller.engine("mcts:100000000:50:1"),
+                             scheduler, budget)
+            .create(Piece.BLACK, control);
+        control.executeCommand(player.myMove());
+        control.executeCommand("e3-c");
+        long left = player.clock();
+        assertTrue(left < budget);
+        control.executeCommand("undo");
+        assertEquals(0, control.board().moveCount());
+        control.executeCommand(player.myMove());
+        assertTrue(player.clock() < left);
+        player.newGame();
+        assertEquals(budget, player.clock());
+    }
+
+    /** Play GAMES random games (seeded by SEED) on B, each from B's
+     *  position at the call, and call CHECK on B after every move and
+     *  every undo.  Moves favor captures and, for white, the king;
+     *  captures are often taken back, and other moves sometimes are.
+     *  Each undo is also checked to restore the position before it. */
+    private static void playRandomGames(Board b, long seed, int games,
+                                        Consumer<Board> check) {
+        Random rand = new Random(seed);
+        Position start = b.position();
+        for (int g = 0; g < games; g += 1) {
+            b.setPosition(start);
+            check.accept(b);
+            for (int ply = 0; ply < RANDOM_GAME_PLIES && b.winner() == null
+                     && b.hasMove(b.turn()); ply += 1) {
+                Position before = b.position();
+                int pieces = pieceCount(b);
+                b.makeMove(randomMove(b, rand));
+                check.accept(b);
+                if (rand.nextInt(pieceCount(b) < pieces ? 2 : 8) == 0) {
+                    b.undo();
+                    assertEquals(before, b.position());
+                    check.accept(b);
+                }
+            }
+        }
+    }
+
+    /** Return a random legal move on B, using RAND, that half the time is
+     *  a capture if there is one and a third of the time, for white, is
+     *  a move of the king if there is one. */
+    private static Move randomMove(Board b, Random rand) {
+        List<Move> moves = b.legalMoves(b.turn());
+        if (b.turn() == Piece.WHITE && rand.nextInt(3) == 0
+            && b.hasMove(Piece.KING)) {
+            moves = b.legalMoves(Piece.KING);
+        }
+        Collections.shuffle(moves, rand);
+        if (rand.nextBoolean()) {
+            int pieces = pieceCount(b);
+            for (Move m : moves) {
+                b.makeMove(m);
+                boolean capture = pieceCount(b) < pieces;
+                b.undo();
+                if (capture) {
+                    return m;
+                }
+            }
+        }
+        return moves.get(0);
+    }
+
+    /** Return the number of pieces on B. */
+    private static int pieceCount(Board b) {
+        int n = 0;
+        for (Square sq : Square.SQUARE_LIST) {
+            if (b.get(sq) != Piece.EMPTY) {
+                n += 1;
+            }
+        }
+        return n;
+    }
+
+    /** Check the state of B under its move limit of LIMIT moves: the
+     *  game is over with a winner at the limit, where moves are rejected,
+     *  and near it the AI's move-limit term favors the side that will
+     *  make the last move and so win at the limit. */
+    private void checkMoveLimit(Board b, int limit) {
+        int left = b.movesLeft();
+        assertEquals(2 * limit - b.moveCount(), left);
+        if (left == 0) {
+            assertNotNull(b.winner());
+            for (Move m : b.legalMoves(b.turn())) {
+                boolean rejected = false;
+                try {
+                    b.makeMove(m);
+                } catch (IllegalArgumentException excp) {
+                    rejected = true;
+                }
+                assertTrue(rejected);
+            }
+        } else {
+            Piece last = left % 2 == 1 ? b.turn() : b.turn().opponent();
+            int pressure = AI.limitPressure(b);
+            assertTrue(pressure != 0 || left > 2);
+            if (pressure != 0) {
+                assertEquals(last == Piece.WHITE, pressure > 0);
+            }
+        }
+    }
+
+    /** Check that isLegal agrees with a walk along each move of B. */
+    private void checkLegality(Board b) {
+        for (Square from : Square.SQUARE_LIST) {
+            for (int dir = 0; dir < 4; dir += 1) {
+                boolean clear = true;
+                for (int n = 1; from.rookMove(dir, n) != null; n += 1) {
+                    Square to = from.rookMove(dir, n);
+                    clear = clear && b.get(to) == Piece.EMPTY;
+                    boolean legal = clear
+                        && b.get(from).side() == b.turn()
+                        && (to != Board.THRONE || b.get(from) == Piece.KING);
+                    assertEquals(legal, b.isLegal(Move.mv(from, to)));
+                }
+            }
+        }
+    }
+}
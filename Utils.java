@@ -3,6 +3,8 @@ package tablut;
 import java.io.InputStream;
 import java.io.IOException;
 
+import jdk.jfr.FlightRecorder;
+
 /** Miscellaneous utilties.
  *  @author P. N. Hilfinger */
 
@@ -32,4 +34,13 @@ class Utils {
         return result;
     }
 
+    /** Return true iff Java Flight Recorder has been started in this
+     *  program, so that the Tablut events (CommandEvent, SearchEvent,
+     *  BoardEvent) may be recorded.  Until then, those classes are not
+     *  used: loading the first of them initializes much of JFR, which
+     *  more than doubles the startup time of a short run. */
+    static boolean flightRecording() {
+        return FlightRecorder.isInitialized();
+    }
+
 }
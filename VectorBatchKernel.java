@@ -0,0 +1,150 @@
+package tablut;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import static tablut.BoardBatch.*;
+import static tablut.Square.NUM_SQUARES;
+
+/** The bulk operations of BoardBatch using the vector API, one vector of
+ *  consecutive positions at a time; positions left over at the end of a
+ *  range go to a ScalarKernel.  This class can be loaded only when the
+ *  program is run with --add-modules jdk.incubator.vector; BoardBatch
+ *  falls back on its ScalarKernel when it cannot.
+ *  @author Dhruv Krishnaswamy
+ */
+class VectorBatchKernel extends BoardBatch.Kernel {
+
+    /** Vectors of shorts of the preferred size. */
+    private static final VectorSpecies<Short> SHORTS =
+        ShortVector.SPECIES_PREFERRED;
+
+    /** Vectors of ints of the same total size as SHORTS. */
+    private static final VectorSpecies<Integer> INTS =
+        VectorSpecies.of(int.class, SHORTS.vectorShape());
+
+    /** Lanes of SHORTS. */
+    private static final int LANES = SHORTS.length();
+
+    @Override
+    void count(BoardBatch batch, int from, int to, int code, int[] result) {
+        short[] cells = batch.cells();
+        int cap = batch.capacity(), bound = from + SHORTS.loopBound(to - from);
+        for (int j = from; j < bound; j += LANES) {
+            ShortVector acc = ShortVector.zero(SHORTS);
+            for (int k = 0; k < NUM_SQUARES; k += 1) {
+                acc = acc.add(ONE, ShortVector.fromArray(SHORTS, cells,
+                                                         k * cap + j)
+                              .eq((short) code));
+            }
+            store(acc, result, j);
+        }
+        SCALAR.count(batch, bound, to, code, result);
+    }
+
+    @Override
+    void kingEdgeDistance(BoardBatch batch, int from, int to,
+                          int[] result) {
+        int bound = from + SHORTS.loopBound(to - from);
+        ShortVector last = ShortVector.broadcast(SHORTS, Board.SIZE - 1);
+        for (int j = from; j < bound; j += LANES) {
+            ShortVector c = ShortVector.fromArray(SHORTS, batch.kingCols(), j),
+                r = ShortVector.fromArray(SHORTS, batch.kingRows(), j);
+            store(c.min(last.sub(c)).min(r).min(last.sub(r)).max((short) 0),
+                  result, j);
+        }
+        SCALAR.kingEdgeDistance(batch, bound, to, result);
+    }
+
+    @Override
+    void kingAttackers(BoardBatch batch, int from, int to,
+                       int[] adjacent, int[] near) {
+        short[] cells = batch.cells();
+        int cap = batch.capacity(), bound = from + SHORTS.loopBound(to - from);
+        for (int j = from; j < bound; j += LANES) {
+            ShortVector
+                kc = ShortVector.fromArray(SHORTS, batch.kingCols(), j),
+                kr = ShortVector.fromArray(SHORTS, batch.kingRows(), j),
+                adj = ShortVector.zero(SHORTS), nr = ShortVector.zero(SHORTS);
+            for (Square sq : Square.SQUARE_LIST) {
+                VectorMask<Short> black =
+                    ShortVector.fromArray(SHORTS, cells, sq.index() * cap + j)
+                    .eq((short) BLACK_CODE);
+                if (!black.anyTrue()) {
+                    continue;
+                }
+                ShortVector dc = kc.sub((short) sq.col()).abs(),
+                    dr = kr.sub((short) sq.row()).abs();
+                adj = adj.add(ONE, black.and(dc.add(dr).eq((short) 1)));
+                nr = nr.add(ONE, black.and(dc.compare(VectorOperators.LE, 2))
+                            .and(dr.compare(VectorOperators.LE, 2)));
+            }
+            store(adj, adjacent, j);
+            store(nr, near, j);
+        }
+        SCALAR.kingAttackers(batch, bound, to, adjacent, near);
+    }
+
+    @Override
+    void mobility(BoardBatch batch, int from, int to, int code,
+                  boolean edges, int[] result) {
+        short[] cells = batch.cells();
+        int cap = batch.capacity(), bound = from + SHORTS.loopBound(to - from);
+        for (int j = from; j < bound; j += LANES) {
+            ShortVector acc = ShortVector.zero(SHORTS);
+            for (Square sq : Square.SQUARE_LIST) {
+                VectorMask<Short> pieces =
+                    ShortVector.fromArray(SHORTS, cells, sq.index() * cap + j)
+                    .eq((short) code);
+                if (!pieces.anyTrue()) {
+                    continue;
+                }
+                for (int dir = 0; dir < 4; dir += 1) {
+                    VectorMask<Short> open = pieces;
+                    for (int n = 1; ; n += 1) {
+                        Square t = sq.rookMove(dir, n);
+                        if (t == null) {
+                            break;
+                        }
+                        open = open.and(
+                            ShortVector.fromArray(SHORTS, cells,
+                                                  t.index() * cap + j)
+                            .eq((short) EMPTY_CODE));
+                        if (!open.anyTrue()) {
+                            break;
+                        }
+                        if (counts(t, code, edges)) {
+                            acc = acc.add(ONE, open);
+                        }
+                    }
+                }
+            }
+            store(acc, result, j);
+        }
+        SCALAR.mobility(batch, bound, to, code, edges, result);
+    }
+
+    @Override
+    String name() {
+        return "vector (" + LANES + " positions)";
+    }
+
+    /** Store the lanes of V, widened, in RESULT[J .. J+LANES-1]. */
+    private static void store(ShortVector v, int[] result, int j) {
+        for (int part = 0; part < LANES / INTS.length(); part += 1) {
+            ((IntVector) v.convertShape(VectorOperators.S2I, INTS, part))
+                .intoArray(result, j + part * INTS.length());
+        }
+    }
+
+    /** A vector of ones. */
+    private static final ShortVector ONE =
+        ShortVector.broadcast(SHORTS, (short) 1);
+
+    /** The kernel for positions left over. */
+    private static final BoardBatch.ScalarKernel SCALAR =
+        new BoardBatch.ScalarKernel();
+}
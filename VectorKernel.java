@@ -0,0 +1,77 @@
+package tablut;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** Arithmetic on Network accumulators using the vector API.  This class
+ *  can be loaded only when the program is run with --add-modules
+ *  jdk.incubator.vector; Network falls back on its ScalarKernel when it
+ *  cannot.
+ *  @author Dhruv Krishnaswamy
+ */
+class VectorKernel extends Network.Kernel {
+
+    /** Vectors of shorts of the preferred size. */
+    private static final VectorSpecies<Short> SHORTS =
+        ShortVector.SPECIES_PREFERRED;
+
+    /** Vectors of ints of the same total size as SHORTS. */
+    private static final VectorSpecies<Integer> INTS =
+        VectorSpecies.of(int.class, SHORTS.vectorShape());
+
+    @Override
+    void add(short[] acc, short[] weights, int offset) {
+        int j = 0;
+        for (; j < SHORTS.loopBound(acc.length); j += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, j)
+                .add(ShortVector.fromArray(SHORTS, weights, offset + j))
+                .intoArray(acc, j);
+        }
+        for (; j < acc.length; j += 1) {
+            acc[j] += weights[offset + j];
+        }
+    }
+
+    @Override
+    void subtract(short[] acc, short[] weights, int offset) {
+        int j = 0;
+        for (; j < SHORTS.loopBound(acc.length); j += SHORTS.length()) {
+            ShortVector.fromArray(SHORTS, acc, j)
+                .sub(ShortVector.fromArray(SHORTS, weights, offset + j))
+                .intoArray(acc, j);
+        }
+        for (; j < acc.length; j += 1) {
+            acc[j] -= weights[offset + j];
+        }
+    }
+
+    @Override
+    int output(short[] acc, short[] weights, int clip) {
+        IntVector sums = IntVector.zero(INTS);
+        int j = 0;
+        for (; j < SHORTS.loopBound(acc.length); j += SHORTS.length()) {
+            ShortVector a = ShortVector.fromArray(SHORTS, acc, j)
+                .max((short) 0).min((short) clip);
+            ShortVector w = ShortVector.fromArray(SHORTS, weights, j);
+            for (int part = 0; part < 2; part += 1) {
+                IntVector ai = (IntVector)
+                    a.convertShape(VectorOperators.S2I, INTS, part);
+                IntVector wi = (IntVector)
+                    w.convertShape(VectorOperators.S2I, INTS, part);
+                sums = sums.add(ai.mul(wi));
+            }
+        }
+        int sum = sums.reduceLanes(VectorOperators.ADD);
+        for (; j < acc.length; j += 1) {
+            sum += Math.min(Math.max(acc[j], 0), clip) * weights[j];
+        }
+        return sum;
+    }
+
+    @Override
+    String name() {
+        return "vector (" + SHORTS.length() + " shorts)";
+    }
+}